@@ -264,6 +264,22 @@ INSERT INTO `messages` (`message_id`, `sender_id`, `receiver_id`, `message_text`
 
 -- --------------------------------------------------------
 
+--
+-- Table structure for table `user_sessions`
+--
+
+CREATE TABLE `user_sessions` (
+  `token_hash` char(64) NOT NULL,
+  `user_id` int(11) NOT NULL,
+  `username` varchar(50) NOT NULL,
+  `role` varchar(20) DEFAULT NULL,
+  `full_name` varchar(100) DEFAULT NULL,
+  `created_at` bigint(20) NOT NULL,
+  `last_accessed` bigint(20) NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=latin1 COLLATE=latin1_swedish_ci;
+
+-- --------------------------------------------------------
+
 --
 -- Table structure for table `users`
 --
@@ -305,7 +321,9 @@ ALTER TABLE `activity_logs`
 --
 ALTER TABLE `documents`
   ADD PRIMARY KEY (`doc_id`),
-  ADD KEY `user_id` (`user_id`);
+  ADD KEY `user_id` (`user_id`),
+  ADD KEY `idx_documents_upload_date_doc_id` (`upload_date`,`doc_id`),
+  ADD KEY `idx_documents_file_path` (`file_path`);
 
 --
 -- Indexes for table `messages`
@@ -316,6 +334,13 @@ ALTER TABLE `messages`
   ADD KEY `idx_messages_sender_receiver` (`sender_id`,`receiver_id`),
   ADD KEY `idx_messages_sent_date` (`sent_date`);
 
+--
+-- Indexes for table `user_sessions`
+--
+ALTER TABLE `user_sessions`
+  ADD PRIMARY KEY (`token_hash`),
+  ADD KEY `idx_user_sessions_last_accessed` (`last_accessed`);
+
 --
 -- Indexes for table `users`
 --
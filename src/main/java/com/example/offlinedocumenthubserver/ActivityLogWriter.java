@@ -0,0 +1,244 @@
+package com.example.offlinedocumenthubserver;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Writes activity_logs rows off the request thread.
+// Entries go into a bounded in-memory queue; a background thread drains it and
+// writes multi-row INSERTs whenever BATCH_SIZE entries are waiting or FLUSH_INTERVAL_MS passes.
+public class ActivityLogWriter {
+    // What to do when the queue is full
+    public enum OverflowPolicy {
+        DROP_NEWEST,   // discard the entry being logged
+        DROP_OLDEST,   // discard the oldest queued entry to make room
+        WRITE_THROUGH  // write the entry synchronously on the caller's thread
+    }
+
+    private static final int QUEUE_CAPACITY = Integer.getInteger("odh.activityLog.queueCapacity", 10_000);
+    private static final int BATCH_SIZE = Integer.getInteger("odh.activityLog.batchSize", 200);
+    private static final long FLUSH_INTERVAL_MS = Long.getLong("odh.activityLog.flushIntervalMs", 1000L);
+    private static final OverflowPolicy OVERFLOW_POLICY = overflowPolicyFromConfig();
+    private static final long SHUTDOWN_TIMEOUT_MS = 10_000;
+
+    private static final BlockingQueue<LogEntry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static Thread writerThread;
+    private static volatile boolean running = false;
+    private static volatile boolean stopped = false;
+
+    // Counters
+    private static final AtomicLong queuedCount = new AtomicLong();
+    private static final AtomicLong flushedCount = new AtomicLong();
+    private static final AtomicLong droppedCount = new AtomicLong();
+    private static final AtomicLong failedCount = new AtomicLong();
+    private static final AtomicLong batchCount = new AtomicLong();
+    private static final AtomicBoolean lateEntryWarned = new AtomicBoolean();
+
+    private record LogEntry(int userId, String actionType, String details, Timestamp timestamp) {}
+
+    private static OverflowPolicy overflowPolicyFromConfig() {
+        String value = System.getProperty("odh.activityLog.overflowPolicy", OverflowPolicy.DROP_OLDEST.name());
+        try {
+            return OverflowPolicy.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("⚠️ [ACTIVITY-LOG] Unknown odh.activityLog.overflowPolicy '" + value
+                    + "' - using " + OverflowPolicy.DROP_OLDEST);
+            return OverflowPolicy.DROP_OLDEST;
+        }
+    }
+
+    public static synchronized void start() {
+        if (stopped) {
+            // No new writer thread after shutdown; log() drops late entries
+            System.err.println("⚠️ [ACTIVITY-LOG] start() after shutdown ignored");
+            return;
+        }
+        if (running) {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(ActivityLogWriter::runWriter, "activity-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        System.out.println("📝 [ACTIVITY-LOG] Async writer started (batch=" + BATCH_SIZE +
+                ", interval=" + FLUSH_INTERVAL_MS + "ms, overflow=" + OVERFLOW_POLICY + ")");
+    }
+
+    public static void log(int userId, String actionType, String details) {
+        LogEntry entry = new LogEntry(userId, actionType, details, new Timestamp(System.currentTimeMillis()));
+        if (stopped) {
+            // The database pool is closed right after the writer, so late entries cannot be written
+            dropLate();
+            return;
+        }
+        if (!running) {
+            start();
+        }
+
+        if (queue.offer(entry)) {
+            queuedCount.incrementAndGet();
+            // shutdown() may have drained the queue for the last time between the check above and the
+            // offer; then nobody else will write the entry, so it must not stay queued
+            if (stopped && queue.remove(entry)) {
+                dropLate();
+            }
+            return;
+        }
+
+        switch (OVERFLOW_POLICY) {
+            case DROP_NEWEST:
+                droppedCount.incrementAndGet();
+                break;
+            case DROP_OLDEST:
+                if (queue.poll() != null) {
+                    droppedCount.incrementAndGet();
+                }
+                if (queue.offer(entry)) {
+                    queuedCount.incrementAndGet();
+                } else {
+                    droppedCount.incrementAndGet();
+                }
+                break;
+            case WRITE_THROUGH:
+                writeBatch(List.of(entry));
+                break;
+        }
+    }
+
+    private static void dropLate() {
+        droppedCount.incrementAndGet();
+        if (lateEntryWarned.compareAndSet(false, true)) {
+            System.err.println("⚠️ [ACTIVITY-LOG] Activity logged after shutdown - dropping late entries");
+        }
+    }
+
+    private static void runWriter() {
+        List<LogEntry> batch = new ArrayList<>(BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                LogEntry first = queue.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Give the batch up to one interval to fill before writing it
+                long deadline = System.currentTimeMillis() + FLUSH_INTERVAL_MS;
+                while (batch.size() < BATCH_SIZE) {
+                    queue.drainTo(batch, BATCH_SIZE - batch.size());
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (batch.size() >= BATCH_SIZE || remaining <= 0 || !running) {
+                        break;
+                    }
+                    LogEntry next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                writeBatch(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("❌ [ACTIVITY-LOG] Writer error: " + e.getMessage());
+                batch.clear();
+            }
+        }
+    }
+
+    private static void writeBatch(List<LogEntry> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        StringBuilder sql = new StringBuilder("INSERT INTO activity_logs (user_id, action_type, action_details, timestamp) VALUES ");
+        for (int i = 0; i < batch.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+        }
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (LogEntry entry : batch) {
+                // Use NULL for system actions (userId <= 0), otherwise the actual user ID
+                if (entry.userId() <= 0) {
+                    ps.setNull(index++, Types.INTEGER);
+                } else {
+                    ps.setInt(index++, entry.userId());
+                }
+                ps.setString(index++, entry.actionType());
+                ps.setString(index++, entry.details());
+                ps.setTimestamp(index++, entry.timestamp());
+            }
+            ps.executeUpdate();
+            flushedCount.addAndGet(batch.size());
+            batchCount.incrementAndGet();
+        } catch (SQLException e) {
+            failedCount.addAndGet(batch.size());
+            System.err.println("Failed to log activity batch (" + batch.size() + " entries): " + e.getMessage());
+        }
+    }
+
+    // Stop the writer and flush whatever is still queued
+    public static void shutdown() {
+        Thread thread;
+        synchronized (ActivityLogWriter.class) {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            running = false;
+            thread = writerThread;
+        }
+
+        // The writer notices within one flush interval and drains the queue before exiting
+        if (thread != null) {
+            try {
+                thread.join(SHUTDOWN_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Anything left (e.g. the writer timed out) gets one last synchronous attempt
+        writeRemaining();
+        System.out.println("📝 [ACTIVITY-LOG] Writer stopped. Flushed " + flushedCount.get() + " entries, dropped " + droppedCount.get());
+    }
+
+    private static void writeRemaining() {
+        List<LogEntry> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (int i = 0; i < remaining.size(); i += BATCH_SIZE) {
+            writeBatch(remaining.subList(i, Math.min(i + BATCH_SIZE, remaining.size())));
+        }
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("running", running);
+        stats.put("overflowPolicy", OVERFLOW_POLICY.name());
+        stats.put("queueSize", queue.size());
+        stats.put("queueCapacity", QUEUE_CAPACITY);
+        stats.put("queued", queuedCount.get());
+        stats.put("flushed", flushedCount.get());
+        stats.put("dropped", droppedCount.get());
+        stats.put("failed", failedCount.get());
+        stats.put("batches", batchCount.get());
+        return stats;
+    }
+}
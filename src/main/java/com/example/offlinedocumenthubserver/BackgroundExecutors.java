@@ -0,0 +1,250 @@
+package com.example.offlinedocumenthubserver;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Named, bounded executors for work that runs outside a request.
+//
+// Each pool has its own threads and queue so one kind of work can't starve another: a Google Drive
+// OAuth flow that waits forever for a browser only ties up INIT, never the backups. Queues are
+// bounded and a full queue rejects the task (RejectedExecutionException) instead of growing without
+// limit; request handlers turn that into a "busy" answer.
+//
+// Delays and periodic jobs go through one shared scheduler thread. It only ever runs short tasks;
+// anything slow is scheduled with a target pool and the scheduler merely hands it over when due.
+public class BackgroundExecutors {
+    public enum Pool {
+        // One-off start-up work that may block for a long time (Drive OAuth)
+        INIT("odh-init", 1, 4),
+        // Backups and restores; one thread, so they never overlap
+        BACKUP("odh-backup", 1, Integer.getInteger("odh.executors.backupQueue", 4)),
+        // Sweeps, verification and other housekeeping
+        MAINTENANCE("odh-maintenance", Integer.getInteger("odh.executors.maintenanceThreads", 2),
+                Integer.getInteger("odh.executors.maintenanceQueue", 32));
+
+        final String threadName;
+        final int threads;
+        final int queueCapacity;
+
+        Pool(String threadName, int threads, int queueCapacity) {
+            this.threadName = threadName;
+            this.threads = threads;
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    private static final Map<Pool, ThreadPoolExecutor> pools = new LinkedHashMap<>();
+    private static final Map<Pool, AtomicLong> rejections = new LinkedHashMap<>();
+    private static final ScheduledThreadPoolExecutor scheduler;
+    private static final AtomicLong failedTasks = new AtomicLong();
+    // Periodic rounds dropped because the previous round of the same task hadn't finished
+    private static final AtomicLong overlapsSkipped = new AtomicLong();
+
+    static {
+        for (Pool pool : Pool.values()) {
+            AtomicLong rejected = new AtomicLong();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(pool.threads, pool.threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(pool.queueCapacity), namedDaemon(pool.threadName),
+                    (task, ex) -> {
+                        rejected.incrementAndGet();
+                        throw new RejectedExecutionException(ex.isShutdown()
+                                ? pool.threadName + " is shut down"
+                                : pool.threadName + " is busy (" + pool.queueCapacity + " tasks queued)");
+                    });
+            // Idle pools give their threads back; they are recreated on the next submit
+            executor.allowCoreThreadTimeOut(true);
+            pools.put(pool, executor);
+            rejections.put(pool, rejected);
+        }
+        scheduler = new ScheduledThreadPoolExecutor(1, namedDaemon("odh-scheduler"));
+        scheduler.setRemoveOnCancelPolicy(true);
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    private static ThreadFactory namedDaemon(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public static Future<?> submit(Pool pool, Runnable task) {
+        return pools.get(pool).submit(task);
+    }
+
+    // Runs a short task on the scheduler thread after the delay
+    public static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return scheduler.schedule(guarded("scheduled task", task), delay, unit);
+    }
+
+    // Hands the task to pool once the delay is up. One-shot tasks often reschedule themselves, so
+    // dropping one on a full pool could end a chain for good; it is retried a minute later instead.
+    // The returned handle follows those retries, so cancelling it also cancels a pending retry.
+    public static ScheduledFuture<?> schedule(Pool pool, Runnable task, long delay, TimeUnit unit) {
+        RetryingSchedule handle = new RetryingSchedule();
+        handle.next(pool, task, delay, unit);
+        return handle;
+    }
+
+    private static class RetryingSchedule implements ScheduledFuture<Object> {
+        private volatile ScheduledFuture<?> current;
+        private volatile boolean cancelled;
+
+        // Synchronized so a run that fires before the assignment can't have its retry overwritten
+        synchronized void next(Pool pool, Runnable task, long delay, TimeUnit unit) {
+            current = scheduler.schedule(() -> {
+                try {
+                    submit(pool, guarded(pool.threadName + " task", task));
+                } catch (RejectedExecutionException e) {
+                    if (scheduler.isShutdown() || cancelled) {
+                        return;
+                    }
+                    System.err.println("⚠️ [EXECUTORS] " + e.getMessage() + " - retrying scheduled task in 1 min");
+                    // Replaced before this run ends, so the handle is never done in between
+                    next(pool, task, 1, TimeUnit.MINUTES);
+                }
+            }, delay, unit);
+            // A cancel that came in while this was being set up missed the new future
+            if (cancelled) {
+                current.cancel(false);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            cancelled = true;
+            return current.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return current.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return current.isDone();
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return current.getDelay(unit);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        public Object get() throws InterruptedException, ExecutionException {
+            ScheduledFuture<?> waited;
+            do {
+                waited = current;
+                waited.get();
+            } while (waited != current);
+            return null;
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            ScheduledFuture<?> waited;
+            do {
+                waited = current;
+                waited.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } while (waited != current);
+            return null;
+        }
+    }
+
+    // Periodic job run on pool. The delay counts from the hand-off, not from the end of the run, so a
+    // round that comes due while the previous one is still queued or running is skipped rather than
+    // stacked up behind it; a round that finds the pool saturated is skipped too.
+    public static ScheduledFuture<?> scheduleWithFixedDelay(Pool pool, Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        return scheduler.scheduleWithFixedDelay(handOff(pool, task), initialDelay, delay, unit);
+    }
+
+    private static Runnable handOff(Pool pool, Runnable task) {
+        AtomicBoolean inFlight = new AtomicBoolean();
+        Runnable guardedTask = guarded(pool.threadName + " task", task);
+        return () -> {
+            if (!inFlight.compareAndSet(false, true)) {
+                overlapsSkipped.incrementAndGet();
+                return;
+            }
+            try {
+                submit(pool, () -> {
+                    try {
+                        guardedTask.run();
+                    } finally {
+                        inFlight.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inFlight.set(false);
+                System.err.println("⚠️ [EXECUTORS] Scheduled task skipped: " + e.getMessage());
+            }
+        };
+    }
+
+    // An exception escaping a periodic task would silently cancel all its future runs
+    private static Runnable guarded(String what, Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                failedTasks.incrementAndGet();
+                System.err.println("❌ [EXECUTORS] " + what + " failed: " + t);
+            }
+        };
+    }
+
+    public static void shutdown() {
+        scheduler.shutdownNow();
+        for (ThreadPoolExecutor executor : pools.values()) {
+            executor.shutdownNow();
+        }
+        System.out.println("🛑 [EXECUTORS] Background executors shut down");
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        pools.forEach((pool, executor) -> {
+            Map<String, Object> poolStats = new LinkedHashMap<>();
+            poolStats.put("threads", pool.threads);
+            poolStats.put("liveThreads", executor.getPoolSize());
+            poolStats.put("active", executor.getActiveCount());
+            poolStats.put("queued", executor.getQueue().size());
+            poolStats.put("queueCapacity", pool.queueCapacity);
+            poolStats.put("completed", executor.getCompletedTaskCount());
+            poolStats.put("rejected", rejections.get(pool).get());
+            stats.put(pool.name().toLowerCase(), poolStats);
+        });
+        Map<String, Object> schedulerStats = new LinkedHashMap<>();
+        schedulerStats.put("pending", scheduler.getQueue().size());
+        schedulerStats.put("active", scheduler.getActiveCount());
+        schedulerStats.put("completed", scheduler.getCompletedTaskCount());
+        stats.put("scheduler", schedulerStats);
+        // Scheduled and periodic tasks that threw; plain submits report through their Future instead
+        stats.put("failedTasks", failedTasks.get());
+        stats.put("overlapsSkipped", overlapsSkipped.get());
+        return stats;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.offlinedocumenthubserver;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Local record of what the backups taken so far already contain. Incremental backups compare
+// against it to find new or changed documents and rows; it is only saved after a backup succeeds.
+public class BackupState {
+    public static final Path STATE_FILE = Path.of("backup_state", "backup_state.json");
+    public static final Path PENDING_FILE = Path.of("backup_state", "pending_backup.json");
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    public static class FileEntry {
+        public long size;
+        public long lastModified;
+        public String sha256;
+        // Backup set whose archive holds this version of the file
+        public String backupSet;
+
+        public FileEntry() {}
+
+        public FileEntry(long size, long lastModified, String sha256, String backupSet) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sha256 = sha256;
+            this.backupSet = backupSet;
+        }
+    }
+
+    // A backup set that was started but did not finish; the next run continues it in the same folder
+    public static class PendingBackup {
+        public String target;
+        public String backupSet;
+        public String folderId;
+        public long startedAt;
+    }
+
+    public int sequence;
+    public String lastFullSet;
+    public int incrementalsSinceFull;
+    // Sets needed to restore the latest state, oldest (the full snapshot) first
+    public List<String> chain = new ArrayList<>();
+    // Relative path under shared_documents -> what was backed up
+    public Map<String, FileEntry> files = new TreeMap<>();
+    // Highest exported id of each append-only table
+    public Map<String, Long> watermarks = new TreeMap<>();
+    // Messages that were unread at the last backup; their is_read flag may change later
+    public TreeSet<Long> unreadMessageIds = new TreeSet<>();
+
+    public static BackupState load() {
+        if (Files.exists(STATE_FILE)) {
+            try {
+                return mapper.readValue(STATE_FILE.toFile(), BackupState.class);
+            } catch (IOException e) {
+                // A broken state file just means the next backup is a full one
+                System.err.println("⚠️ [BACKUP] Could not read " + STATE_FILE + ", starting a new backup chain: " + e.getMessage());
+            }
+        }
+        return new BackupState();
+    }
+
+    public void save() throws IOException {
+        Files.createDirectories(STATE_FILE.getParent());
+        Path temp = STATE_FILE.resolveSibling(STATE_FILE.getFileName() + ".tmp");
+        mapper.writeValue(temp.toFile(), this);
+        Files.move(temp, STATE_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static PendingBackup loadPending() {
+        if (Files.exists(PENDING_FILE)) {
+            try {
+                return mapper.readValue(PENDING_FILE.toFile(), PendingBackup.class);
+            } catch (IOException e) {
+                System.err.println("⚠️ [BACKUP] Could not read " + PENDING_FILE + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    public static void savePending(PendingBackup pending) throws IOException {
+        Files.createDirectories(PENDING_FILE.getParent());
+        mapper.writeValue(PENDING_FILE.toFile(), pending);
+    }
+
+    public static void clearPending() throws IOException {
+        Files.deleteIfExists(PENDING_FILE);
+    }
+
+    public static byte[] toJson(Object value) throws IOException {
+        return mapper.writeValueAsBytes(value);
+    }
+}
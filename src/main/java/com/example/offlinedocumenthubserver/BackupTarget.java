@@ -0,0 +1,87 @@
+package com.example.offlinedocumenthubserver;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Where backup sets are written. GoogleDriveService builds the backup artifacts and hands them to a
+// target, so the same backup can go to Google Drive, a local directory / NAS mount, or an in-process
+// mock used to measure backup throughput without a network.
+// Selected with -Dodh.backup.target=drive|local|mock (default drive).
+public interface BackupTarget {
+
+    interface UploadListener {
+        void onBytesUploaded(long bytesUploaded);
+    }
+
+    // The target held a partial upload of this artifact from an interrupted run, but the regenerated
+    // content differs from it. The partial upload has been dropped; the caller regenerates the artifact
+    // and uploads it again from the start.
+    class ResumeMismatchException extends java.io.IOException {
+        private static final long serialVersionUID = 1L;
+
+        public ResumeMismatchException(String message) {
+            super(message);
+        }
+    }
+
+    // Short identifier, e.g. "google-drive"
+    String getName();
+
+    // Human-readable location of the backup sets (folder name, directory path...)
+    String getLocation();
+
+    // Initialized and able to accept backups (credentials loaded, root folder present...)
+    boolean isReady();
+
+    // Cheap connectivity probe used before automatic backups
+    boolean isReachable();
+
+    // Creates the folder of one backup set and returns its id for the upload calls
+    String createBackupFolder(String folderName) throws Exception;
+
+    // Whether a folder returned by createBackupFolder still exists; an interrupted backup set is only
+    // continued if it does
+    boolean hasBackupFolder(String folderId);
+
+    // Stores one artifact in a backup folder. length is -1 when the size is not known up front
+    // (streamed artifacts). Returns the number of bytes stored. Storing a name that already exists in
+    // the folder (a resumed backup set) replaces the earlier artifact.
+    long upload(String folderId, String fileName, String mimeType, InputStream content, long length,
+                UploadListener listener) throws Exception;
+
+    // Opens an artifact of a backup folder for reading (used by restores)
+    InputStream download(String folderId, String fileName) throws Exception;
+
+    // Opens an artifact positioned at offset; at least length bytes can be read from it. Lets the verify
+    // job read single entries of a large archive. Targets that can fetch a byte range override this.
+    default InputStream download(String folderId, String fileName, long offset, long length) throws Exception {
+        InputStream in = download(folderId, fileName);
+        try {
+            in.skipNBytes(offset);
+            return in;
+        } catch (Exception e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    // Size of an artifact in a backup folder, or -1 if it is not there
+    long artifactSize(String folderId, String fileName) throws Exception;
+
+    // Backup sets, newest first, each with id, name, createdTime and parentFolder
+    List<Map<String, String>> listBackups() throws Exception;
+
+    static BackupTarget fromConfig() {
+        String kind = System.getProperty("odh.backup.target", "drive").toLowerCase(Locale.ROOT);
+        System.out.println("🔧 [BACKUP] Backup target: " + kind);
+        return switch (kind) {
+            case "local", "nas" -> new LocalBackupTarget(System.getProperty("odh.backup.localDir", "local_backups"));
+            case "mock" -> new MockBackupTarget(
+                    Long.getLong("odh.backup.mock.latencyMs", 50),
+                    Long.getLong("odh.backup.mock.throughputKBps", 10 * 1024));
+            default -> new DriveBackupTarget();
+        };
+    }
+}
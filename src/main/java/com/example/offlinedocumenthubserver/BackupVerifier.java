@@ -0,0 +1,478 @@
+package com.example.offlinedocumenthubserver;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static com.example.offlinedocumenthubserver.RESTServer.googleDriveService;
+import static com.example.offlinedocumenthubserver.RESTServer.sendAdminNotification;
+
+// Background check that stored backups are still intact, without downloading them again.
+// For the newest backup set and the chain it builds on it checks that every artifact listed in the
+// manifests is present with its recorded size (small ones are re-hashed whole), reads the central
+// directory of every documents archive to find files that should be in it but aren't, and re-hashes a
+// random sample of archived documents. Each sampled entry is fetched on its own with a ranged read,
+// inflated and compared against the CRC-32 in the archive and the SHA-256 in the manifest inventory.
+public class BackupVerifier {
+    private static final int SAMPLE_SIZE = Integer.getInteger("odh.backup.verifySample", 32);
+    private static final int THREADS = Integer.getInteger("odh.backup.verifyThreads", 4);
+    private static final long FULL_HASH_BYTES = Long.getLong("odh.backup.verifyFullHashBytes", 1024L * 1024);
+    private static final long DELAY_MINUTES = Long.getLong("odh.backup.verifyDelayMinutes", 60);
+    private static final long INTERVAL_HOURS = Long.getLong("odh.backup.verifyIntervalHours", 24);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final AtomicBoolean running = new AtomicBoolean();
+    private static final AtomicLong runs = new AtomicLong();
+    private static final AtomicLong problemRuns = new AtomicLong();
+    private static final AtomicLong bytesRead = new AtomicLong();
+    private static volatile Map<String, Object> lastReport = null;
+    private static ScheduledFuture<?> schedule;
+
+    public static synchronized void start() {
+        if (schedule != null || INTERVAL_HOURS <= 0) {
+            return;
+        }
+        schedule = BackgroundExecutors.scheduleWithFixedDelay(BackgroundExecutors.Pool.MAINTENANCE,
+                BackupVerifier::runScheduled, DELAY_MINUTES, INTERVAL_HOURS * 60, TimeUnit.MINUTES);
+        System.out.println("🔍 [VERIFY] Backup verification every " + INTERVAL_HOURS + " h, sampling " + SAMPLE_SIZE + " documents");
+    }
+
+    public static synchronized void shutdown() {
+        if (schedule != null) {
+            schedule.cancel(false);
+            schedule = null;
+        }
+    }
+
+    private static void runScheduled() {
+        try {
+            if (googleDriveService == null || !googleDriveService.getTarget().isReady()
+                    || googleDriveService.isBackupRunning() || RestoreEngine.isRestoreRunning()) {
+                System.out.println("⏳ [VERIFY] Backup target busy or not ready - skipping this round");
+                return;
+            }
+            verify(googleDriveService.getTarget(), null);
+        } catch (Exception e) {
+            System.err.println("❌ [VERIFY] Verification failed: " + e.getMessage());
+            sendAdminNotification("Backup Verification Error",
+                    "The scheduled backup verification could not run: " + e.getMessage());
+        }
+    }
+
+    public static boolean isRunning() {
+        return running.get();
+    }
+
+    // Verifies backupSet (a set name or folder id; null for the newest set) and the sets it builds on
+    public static Map<String, Object> verify(BackupTarget target, String backupSet) throws Exception {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A verification is already running");
+        }
+        try {
+            Map<String, Object> report = run(target, backupSet);
+            lastReport = report;
+            runs.incrementAndGet();
+            if (!Boolean.TRUE.equals(report.get("ok"))) {
+                problemRuns.incrementAndGet();
+                sendAdminNotification("Backup Verification Failed",
+                        "Backup " + report.get("backupSet") + " on " + target.getName() + " has problems:\n"
+                                + String.join("\n", problemsOf(report)) + "\nRun a new full backup (?mode=full) to replace it.");
+            }
+            return report;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> problemsOf(Map<String, Object> report) {
+        List<String> problems = new ArrayList<>();
+        problems.addAll((List<String>) report.get("missingArtifacts"));
+        problems.addAll((List<String>) report.get("corruptArtifacts"));
+        problems.addAll((List<String>) report.get("missingFiles"));
+        problems.addAll((List<String>) report.get("corruptFiles"));
+        return problems.size() > 20 ? problems.subList(0, 20) : problems;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> run(BackupTarget target, String backupSet) throws Exception {
+        long started = System.currentTimeMillis();
+        List<Map<String, String>> backups = target.listBackups();
+        if (backups.isEmpty()) {
+            throw new IllegalStateException("No backups on " + target.getName());
+        }
+        Map<String, String> folderIds = new HashMap<>();
+        String requested = null;
+        for (Map<String, String> backup : backups) {
+            folderIds.put(backup.get("name"), backup.get("id"));
+            if (backup.get("name").equals(backupSet) || backup.get("id").equals(backupSet)) {
+                requested = backup.get("name");
+            }
+        }
+        if (backupSet == null) {
+            // The newest set that finished: a failed or interrupted run leaves a folder without a manifest
+            for (Map<String, String> backup : backups) {
+                if (target.artifactSize(backup.get("id"), "backup_manifest.json") >= 0) {
+                    requested = backup.get("name");
+                    break;
+                }
+                System.out.println("⚠️ [VERIFY] Skipping " + backup.get("name") + ": no backup_manifest.json (unfinished backup)");
+            }
+            if (requested == null) {
+                throw new IllegalStateException("No completed backups on " + target.getName());
+            }
+        }
+        if (requested == null) {
+            throw new IllegalArgumentException("Backup set not found on " + target.getName() + ": " + backupSet);
+        }
+        System.out.println("🔍 [VERIFY] Checking " + requested + " on " + target.getName() + "...");
+
+        ConcurrentLinkedQueue<String> missingArtifacts = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<String> corruptArtifacts = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<String> missingFiles = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<String> corruptFiles = new ConcurrentLinkedQueue<>();
+        AtomicInteger artifactsChecked = new AtomicInteger();
+        AtomicInteger filesVerified = new AtomicInteger();
+        long readBefore = bytesRead.get();
+
+        Map<String, Object> latest = readManifest(target, folderIds.get(requested));
+        List<String> chain = (List<String>) latest.getOrDefault("restoreChain", List.of(requested));
+        Map<String, Map<String, Object>> manifests = new LinkedHashMap<>();
+        for (String set : chain) {
+            if (!folderIds.containsKey(set)) {
+                missingArtifacts.add(set + ": backup set missing");
+            } else {
+                manifests.put(set, set.equals(requested) ? latest : readManifest(target, folderIds.get(set)));
+            }
+        }
+
+        Map<String, Map<String, Object>> inventory = (Map<String, Map<String, Object>>)
+                ((Map<String, Object>) latest.getOrDefault("documents", Map.of())).getOrDefault("files", Map.of());
+        List<String> sample = new ArrayList<>(inventory.keySet());
+        Collections.shuffle(sample);
+        sample = sample.subList(0, Math.min(SAMPLE_SIZE, sample.size()));
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS, r -> {
+            Thread thread = new Thread(r, "backup-verify-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+
+            // Every artifact is there with the recorded size; small ones are re-hashed completely
+            for (Map.Entry<String, Map<String, Object>> set : manifests.entrySet()) {
+                String folderId = folderIds.get(set.getKey());
+                Map<String, Map<String, Object>> artifacts =
+                        (Map<String, Map<String, Object>>) set.getValue().getOrDefault("artifacts", Map.of());
+                artifacts.forEach((name, artifact) -> tasks.add(pool.submit(() -> {
+                    String label = set.getKey() + "/" + name;
+                    long expectedSize = ((Number) artifact.get("size")).longValue();
+                    long size = target.artifactSize(folderId, name);
+                    if (size < 0) {
+                        missingArtifacts.add(label);
+                    } else if (size != expectedSize) {
+                        corruptArtifacts.add(label + ": size " + size + ", expected " + expectedSize);
+                    } else if (size <= FULL_HASH_BYTES) {
+                        String sha256;
+                        try (InputStream in = target.download(folderId, name)) {
+                            sha256 = sha256Of(in);
+                        }
+                        bytesRead.addAndGet(size);
+                        if (!sha256.equals(artifact.get("sha256"))) {
+                            corruptArtifacts.add(label + ": SHA-256 mismatch");
+                        }
+                    }
+                    artifactsChecked.incrementAndGet();
+                    return null;
+                })));
+            }
+
+            // Each archive's central directory must list every file the set archived
+            Map<String, Map<String, CentralEntry>> directories = new HashMap<>();
+            for (Map.Entry<String, Map<String, Object>> set : manifests.entrySet()) {
+                Map<String, Object> documents = (Map<String, Object>) set.getValue().getOrDefault("documents", Map.of());
+                String archive = (String) documents.get("archive");
+                if (archive == null) {
+                    continue;
+                }
+                String folderId = folderIds.get(set.getKey());
+                long size = target.artifactSize(folderId, archive);
+                if (size < 0) {
+                    missingArtifacts.add(set.getKey() + "/" + archive);
+                    continue;
+                }
+                Map<String, CentralEntry> directory;
+                try {
+                    directory = readCentralDirectory(target, folderId, archive, size);
+                } catch (IOException e) {
+                    corruptArtifacts.add(set.getKey() + "/" + archive + ": unreadable ZIP directory (" + e.getMessage() + ")");
+                    continue;
+                }
+                directories.put(set.getKey(), directory);
+                for (String path : (List<String>) documents.getOrDefault("changedFiles", List.of())) {
+                    if (!directory.containsKey(path)) {
+                        missingFiles.add(path + ": not in " + set.getKey() + "/" + archive);
+                    }
+                }
+            }
+
+            // A random sample of documents is inflated from its archive and re-hashed
+            for (String path : sample) {
+                Map<String, Object> expected = inventory.get(path);
+                String set = (String) expected.get("backupSet");
+                Map<String, CentralEntry> directory = directories.get(set);
+                CentralEntry entry = directory != null ? directory.get(path) : null;
+                if (entry == null) {
+                    // Already reported as a missing file or archive
+                    continue;
+                }
+                String archive = (String) ((Map<String, Object>) manifests.get(set).get("documents")).get("archive");
+                String folderId = folderIds.get(set);
+                tasks.add(pool.submit(() -> {
+                    try {
+                        String problem = checkEntry(target, folderId, archive, entry, expected);
+                        if (problem != null) {
+                            corruptFiles.add(path + ": " + problem);
+                        } else {
+                            filesVerified.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        corruptFiles.add(path + ": " + e.getMessage());
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (java.util.concurrent.ExecutionException e) {
+                    corruptArtifacts.add("check failed: " + e.getCause().getMessage());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        boolean ok = missingArtifacts.isEmpty() && corruptArtifacts.isEmpty() && missingFiles.isEmpty() && corruptFiles.isEmpty();
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("checkedAt", new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()));
+        report.put("backupSet", requested);
+        report.put("restoreChain", chain);
+        report.put("ok", ok);
+        report.put("artifactsChecked", artifactsChecked.get());
+        report.put("documents", inventory.size());
+        report.put("sampled", sample.size());
+        report.put("verified", filesVerified.get());
+        report.put("missingArtifacts", new ArrayList<>(missingArtifacts));
+        report.put("corruptArtifacts", new ArrayList<>(corruptArtifacts));
+        report.put("missingFiles", new ArrayList<>(missingFiles));
+        report.put("corruptFiles", new ArrayList<>(corruptFiles));
+        report.put("bytesRead", bytesRead.get() - readBefore);
+        report.put("elapsedMs", System.currentTimeMillis() - started);
+
+        if (ok) {
+            System.out.println("✅ [VERIFY] " + requested + ": " + artifactsChecked.get() + " artifacts and "
+                    + filesVerified.get() + "/" + sample.size() + " sampled documents OK ("
+                    + report.get("bytesRead") + " bytes read)");
+        } else {
+            System.err.println("❌ [VERIFY] " + requested + " has problems:");
+            problemsOf(report).forEach(problem -> System.err.println("❌ [VERIFY]   " + problem));
+        }
+        return report;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readManifest(BackupTarget target, String folderId) throws Exception {
+        try (InputStream in = target.download(folderId, "backup_manifest.json")) {
+            return mapper.readValue(in, Map.class);
+        }
+    }
+
+    // ==================== ZIP ACCESS BY RANGE ====================
+
+    private record CentralEntry(String name, int method, long crc, long compressedSize, long size, long localHeaderOffset) {}
+
+    private static byte[] readRange(BackupTarget target, String folderId, String fileName, long offset, int length) throws Exception {
+        try (InputStream in = target.download(folderId, fileName, offset, length)) {
+            byte[] data = in.readNBytes(length);
+            bytesRead.addAndGet(data.length);
+            if (data.length < length) {
+                throw new IOException("archive ends early at " + (offset + data.length));
+            }
+            return data;
+        }
+    }
+
+    // Reads only the end of the archive: the (ZIP64) end records, then the central directory they point at
+    private static Map<String, CentralEntry> readCentralDirectory(BackupTarget target, String folderId, String archive,
+                                                                  long archiveSize) throws Exception {
+        int tailLength = (int) Math.min(archiveSize, 22 + 0xFFFF + 20);
+        ByteBuffer tail = ByteBuffer.wrap(readRange(target, folderId, archive, archiveSize - tailLength, tailLength))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        int eocd = -1;
+        for (int i = tailLength - 22; i >= 0; i--) {
+            if (tail.getInt(i) == 0x06054b50) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new IOException("no end of central directory record");
+        }
+
+        long entries = tail.getShort(eocd + 10) & 0xFFFF;
+        long directorySize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long directoryOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (eocd >= 20 && tail.getInt(eocd - 20) == 0x07064b50) {
+            long zip64Offset = tail.getLong(eocd - 20 + 8);
+            ByteBuffer zip64 = ByteBuffer.wrap(readRange(target, folderId, archive, zip64Offset, 56)).order(ByteOrder.LITTLE_ENDIAN);
+            if (zip64.getInt(0) != 0x06064b50) {
+                throw new IOException("bad ZIP64 end record");
+            }
+            entries = zip64.getLong(32);
+            directorySize = zip64.getLong(40);
+            directoryOffset = zip64.getLong(48);
+        }
+        if (directorySize > Integer.MAX_VALUE) {
+            throw new IOException("central directory too large");
+        }
+
+        ByteBuffer directory = ByteBuffer.wrap(readRange(target, folderId, archive, directoryOffset, (int) directorySize))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        Map<String, CentralEntry> result = new HashMap<>();
+        int pos = 0;
+        for (long i = 0; i < entries; i++) {
+            if (directory.getInt(pos) != 0x02014b50) {
+                throw new IOException("bad central directory entry " + i);
+            }
+            int method = directory.getShort(pos + 10) & 0xFFFF;
+            long crc = directory.getInt(pos + 16) & 0xFFFFFFFFL;
+            long compressedSize = directory.getInt(pos + 20) & 0xFFFFFFFFL;
+            long size = directory.getInt(pos + 24) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort(pos + 28) & 0xFFFF;
+            int extraLength = directory.getShort(pos + 30) & 0xFFFF;
+            int commentLength = directory.getShort(pos + 32) & 0xFFFF;
+            long offset = directory.getInt(pos + 42) & 0xFFFFFFFFL;
+            String name = new String(directory.array(), pos + 46, nameLength, StandardCharsets.UTF_8);
+
+            // ZIP64 extra field: 64-bit values for exactly the fields that hold 0xFFFFFFFF
+            int extra = pos + 46 + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = directory.getShort(extra) & 0xFFFF;
+                int length = directory.getShort(extra + 2) & 0xFFFF;
+                if (id == 0x0001) {
+                    int field = extra + 4;
+                    if (size == 0xFFFFFFFFL) { size = directory.getLong(field); field += 8; }
+                    if (compressedSize == 0xFFFFFFFFL) { compressedSize = directory.getLong(field); field += 8; }
+                    if (offset == 0xFFFFFFFFL) { offset = directory.getLong(field); }
+                }
+                extra += 4 + length;
+            }
+
+            result.put(name, new CentralEntry(name, method, crc, compressedSize, size, offset));
+            pos += 46 + nameLength + extraLength + commentLength;
+        }
+        return result;
+    }
+
+    // Returns a description of what is wrong with the entry, or null if it matches
+    private static String checkEntry(BackupTarget target, String folderId, String archive, CentralEntry entry,
+                                     Map<String, Object> expected) throws Exception {
+        ByteBuffer header = ByteBuffer.wrap(readRange(target, folderId, archive, entry.localHeaderOffset(), 30))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(0) != 0x04034b50) {
+            return "no local header at offset " + entry.localHeaderOffset();
+        }
+        long dataOffset = entry.localHeaderOffset() + 30 + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+
+        CRC32 crc = new CRC32();
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        long size = 0;
+        Inflater inflater = new Inflater(true);
+        try (InputStream raw = target.download(folderId, archive, dataOffset, entry.compressedSize());
+             InputStream data = entry.method() == 8 ? new InflaterInputStream(raw, inflater, 64 * 1024) : raw) {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while (size < entry.size() && (n = data.read(buffer, 0, (int) Math.min(buffer.length, entry.size() - size))) >= 0) {
+                crc.update(buffer, 0, n);
+                digest.update(buffer, 0, n);
+                size += n;
+            }
+        } finally {
+            inflater.end();
+        }
+        bytesRead.addAndGet(entry.compressedSize());
+
+        if (size != entry.size()) {
+            return "inflated to " + size + " bytes, expected " + entry.size();
+        }
+        if (crc.getValue() != entry.crc()) {
+            return "CRC-32 mismatch";
+        }
+        if (expected.get("size") != null && ((Number) expected.get("size")).longValue() != size) {
+            return "size " + size + " differs from the manifest";
+        }
+        if (expected.get("sha256") != null && !expected.get("sha256").equals(HexFormat.of().formatHex(digest.digest()))) {
+            return "SHA-256 mismatch";
+        }
+        return null;
+    }
+
+    private static String sha256Of(InputStream in) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            digest.update(buffer, 0, n);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static Map<String, Object> getLastReport() {
+        return lastReport;
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("running", running.get());
+        stats.put("runs", runs.get());
+        stats.put("runsWithProblems", problemRuns.get());
+        stats.put("bytesRead", bytesRead.get());
+        Map<String, Object> report = lastReport;
+        if (report != null) {
+            stats.put("lastCheckedAt", report.get("checkedAt"));
+            stats.put("lastBackupSet", report.get("backupSet"));
+            stats.put("lastOk", report.get("ok"));
+        }
+        return stats;
+    }
+}
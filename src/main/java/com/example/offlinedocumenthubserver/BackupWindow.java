@@ -0,0 +1,123 @@
+package com.example.offlinedocumenthubserver;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+
+// The minutes in which an automatic backup may start, written as a cron expression:
+// "minute hour day-of-month month day-of-week", each field *, a value, a range a-b, a list a,b,c
+// or a step */n or a-b/n. Day of week is 0-7 with 0 and 7 both Sunday. As in cron, when both day
+// fields are restricted a day matches if either does. "* 1-5 * * *" allows 01:00-05:59 every day.
+public class BackupWindow {
+    private final String expression;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet daysOfMonth;
+    private final BitSet months;
+    private final BitSet daysOfWeek;
+    private final boolean dayOfMonthRestricted;
+    private final boolean dayOfWeekRestricted;
+
+    public BackupWindow(String expression) {
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Backup window needs 5 fields (minute hour day month weekday): " + expression);
+        }
+        this.expression = expression.trim();
+        this.minutes = parse(fields[0], 0, 59);
+        this.hours = parse(fields[1], 0, 23);
+        this.daysOfMonth = parse(fields[2], 1, 31);
+        this.months = parse(fields[3], 1, 12);
+        this.daysOfWeek = parse(fields[4], 0, 7);
+        if (daysOfWeek.get(7)) {
+            daysOfWeek.set(0);
+        }
+        this.dayOfMonthRestricted = !fields[2].equals("*");
+        this.dayOfWeekRestricted = !fields[4].equals("*");
+    }
+
+    private static BitSet parse(String field, int min, int max) {
+        BitSet values = new BitSet(max + 1);
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = Integer.parseInt(part.substring(slash + 1));
+                part = part.substring(0, slash);
+            }
+
+            int from;
+            int to;
+            if (part.equals("*")) {
+                from = min;
+                to = max;
+            } else if (part.indexOf('-') > 0) {
+                from = Integer.parseInt(part.substring(0, part.indexOf('-')));
+                to = Integer.parseInt(part.substring(part.indexOf('-') + 1));
+            } else {
+                from = Integer.parseInt(part);
+                to = slash >= 0 ? max : from;
+            }
+            if (from < min || to > max || from > to || step < 1) {
+                throw new IllegalArgumentException("Bad backup window field '" + field + "' (allowed " + min + "-" + max + ")");
+            }
+            for (int v = from; v <= to; v += step) {
+                values.set(v);
+            }
+        }
+        return values;
+    }
+
+    public boolean matches(LocalDateTime time) {
+        return minutes.get(time.getMinute()) && hours.get(time.getHour()) && dayMatches(time);
+    }
+
+    private boolean dayMatches(LocalDateTime time) {
+        if (!months.get(time.getMonthValue())) {
+            return false;
+        }
+        boolean dom = daysOfMonth.get(time.getDayOfMonth());
+        boolean dow = daysOfWeek.get(time.getDayOfWeek().getValue() % 7);
+        if (dayOfMonthRestricted && dayOfWeekRestricted) {
+            return dom || dow;
+        }
+        return dom && dow;
+    }
+
+    // First minute at or after time that lies inside the window, or null if there is none within a year
+    public LocalDateTime nextAllowed(LocalDateTime time) {
+        LocalDateTime t = time.truncatedTo(ChronoUnit.MINUTES);
+        if (t.isBefore(time)) {
+            t = t.plusMinutes(1);
+        }
+        LocalDateTime limit = t.plusYears(1);
+        while (t.isBefore(limit)) {
+            if (!dayMatches(t)) {
+                t = t.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!hours.get(t.getHour())) {
+                t = t.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!minutes.get(t.getMinute())) {
+                t = t.plusMinutes(1);
+            } else {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    // How many whole minutes the window stays open from time (0 when time is outside it)
+    public long minutesOpenFrom(LocalDateTime time, long cap) {
+        LocalDateTime t = time.truncatedTo(ChronoUnit.MINUTES);
+        long open = 0;
+        while (open < cap && matches(t)) {
+            open++;
+            t = t.plusMinutes(1);
+        }
+        return open;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -0,0 +1,335 @@
+package com.example.offlinedocumenthubserver;
+
+import io.javalin.Javalin;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Command-line benchmarks for the performance work, run against real data without a database:
+//
+//   java -cp <classpath> com.example.offlinedocumenthubserver.Benchmark archive <folder> [runs]
+//       Archives every file under <folder> with a single-threaded ZipOutputStream (the old backup path)
+//       and with ParallelArchiver, and prints time, throughput and the speedup. Output is discarded, so
+//       only reading and compressing is measured. Tune the archiver with the usual -Dodh.backup.* flags.
+//
+//   java -cp <classpath> com.example.offlinedocumenthubserver.Benchmark download <file> [seconds] [clients]
+//       Serves <file> through FileResponder from a local Javalin instance in each mode (stream, direct,
+//       mapped) and downloads it in a loop with [clients] concurrent connections for [seconds] per mode.
+//       Prints the client-side throughput and the server-side CPU time per GB for each mode.
+//
+//   java -cp <classpath> com.example.offlinedocumenthubserver.Benchmark load [seconds] [slowClients] [apiClients]
+//       Runs a local Javalin instance on virtual threads, then on platform threads (odh.http.maxThreads),
+//       with [slowClients] connections holding slow downloads open while [apiClients] call a short API
+//       endpoint in a loop. Prints the API latency percentiles as the clients saw them, next to the
+//       numbers HttpExecution recorded on the server.
+public class Benchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            usage();
+            return;
+        }
+        switch (args[0].toLowerCase(Locale.ROOT)) {
+            case "archive" -> {
+                if (args.length < 2) {
+                    usage();
+                    return;
+                }
+                archive(Path.of(args[1]), args.length > 2 ? Integer.parseInt(args[2]) : 3);
+            }
+            case "download" -> {
+                if (args.length < 2) {
+                    usage();
+                    return;
+                }
+                download(Path.of(args[1]), args.length > 2 ? Integer.parseInt(args[2]) : 20,
+                        args.length > 3 ? Integer.parseInt(args[3]) : 8);
+            }
+            case "load" -> load(args.length > 1 ? Integer.parseInt(args[1]) : 20,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 400,
+                    args.length > 3 ? Integer.parseInt(args[3]) : 8);
+            default -> usage();
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage: Benchmark archive <folder> [runs]");
+        System.out.println("       Benchmark download <file> [seconds] [clients]");
+        System.out.println("       Benchmark load [seconds] [slowClients] [apiClients]");
+    }
+
+    // ==================== ARCHIVE ====================
+
+    private static void archive(Path folder, int runs) throws IOException {
+        List<ParallelArchiver.Entry> entries = new ArrayList<>();
+        long totalBytes = 0;
+        try (Stream<Path> files = Files.walk(folder)) {
+            for (Path path : files.filter(Files::isRegularFile).sorted().toList()) {
+                entries.add(new ParallelArchiver.Entry(folder.relativize(path).toString().replace(File.separatorChar, '/'),
+                        path.toFile()));
+                totalBytes += Files.size(path);
+            }
+        }
+        if (entries.isEmpty()) {
+            System.out.println("❌ [BENCH] No files under " + folder);
+            return;
+        }
+        System.out.println("📦 [BENCH] " + entries.size() + " files, " + mb(totalBytes) + " MB, " + runs + " runs each");
+
+        // One untimed pass of each warms the JIT and brings the files into the page cache for both
+        sequentialZip(entries);
+        ParallelArchiver.write(entries, OutputStream.nullOutputStream(), null);
+
+        long sequentialBest = Long.MAX_VALUE;
+        long parallelBest = Long.MAX_VALUE;
+        ParallelArchiver.Stats parallel = null;
+        for (int run = 1; run <= runs; run++) {
+            long started = System.nanoTime();
+            long sequentialOut = sequentialZip(entries);
+            long sequentialMs = (System.nanoTime() - started) / 1_000_000;
+            sequentialBest = Math.min(sequentialBest, sequentialMs);
+
+            parallel = ParallelArchiver.write(entries, OutputStream.nullOutputStream(), null);
+            parallelBest = Math.min(parallelBest, parallel.elapsedMs());
+
+            System.out.println("⏱️ [BENCH] run " + run + ": ZipOutputStream " + sequentialMs + " ms (" + mb(sequentialOut)
+                    + " MB out), ParallelArchiver " + parallel.elapsedMs() + " ms (" + mb(parallel.bytesOut()) + " MB out, "
+                    + parallel.storedEntries() + " stored)");
+        }
+        System.out.println("✅ [BENCH] best ZipOutputStream " + sequentialBest + " ms (" + rate(totalBytes, sequentialBest)
+                + " MB/s), best ParallelArchiver " + parallelBest + " ms (" + rate(totalBytes, parallelBest) + " MB/s, "
+                + parallel.threads() + " threads), speedup " + String.format(Locale.ROOT, "%.2fx", (double) sequentialBest / Math.max(1, parallelBest)));
+    }
+
+    // The archive the backup used to build: one thread, every entry deflated
+    private static long sequentialZip(List<ParallelArchiver.Entry> entries) throws IOException {
+        CountingNullStream counter = new CountingNullStream();
+        try (ZipOutputStream zos = new ZipOutputStream(counter)) {
+            zos.setLevel(Integer.getInteger("odh.backup.compressionLevel", Deflater.DEFAULT_COMPRESSION));
+            for (ParallelArchiver.Entry entry : entries) {
+                zos.putNextEntry(new ZipEntry(entry.name()));
+                Files.copy(entry.file().toPath(), zos);
+                zos.closeEntry();
+            }
+        }
+        return counter.count;
+    }
+
+    // ==================== DOWNLOAD ====================
+
+    private static void download(Path file, int seconds, int clients) throws Exception {
+        long size = Files.size(file);
+        long threshold = Long.getLong("odh.download.zeroCopyThreshold", 256 * 1024L);
+        if (size < threshold) {
+            System.out.println("⚠️ [BENCH] " + file + " is below odh.download.zeroCopyThreshold (" + threshold
+                    + " bytes); every mode would fall back to stream");
+        }
+        // Platform threads: the JVM measures no per-thread CPU time on virtual threads
+        Javalin app = Javalin.create(config -> config.jetty.server(() -> new Server(new QueuedThreadPool(Math.max(8, clients * 2)))))
+                .get("/bench/{mode}", ctx -> FileResponder.serve(ctx, file.toFile(), null,
+                file.getFileName().toString(), FileResponder.Mode.valueOf(ctx.pathParam("mode").toUpperCase(Locale.ROOT))));
+        app.start("127.0.0.1", 0);
+        System.out.println("📥 [BENCH] " + mb(size) + " MB file, " + clients + " clients, " + seconds + " s per mode");
+        try {
+            for (FileResponder.Mode mode : FileResponder.Mode.values()) {
+                String url = "http://127.0.0.1:" + app.port() + "/bench/" + mode.name().toLowerCase(Locale.ROOT);
+                // Short untimed run so the JIT and the page cache are warm for every mode alike
+                fetchLoop(url, clients, 2_000);
+
+                Map<String, Object> before = FileResponder.statsOf(mode);
+                long started = System.nanoTime();
+                long[] fetched = fetchLoop(url, clients, seconds * 1000L);
+                double elapsed = (System.nanoTime() - started) / 1_000_000_000.0;
+                Map<String, Object> after = FileResponder.statsOf(mode);
+
+                double cpuMs = cpuMs(after) - cpuMs(before);
+                double gigabytes = ((long) after.get("cpuMeasuredBytes") - (long) before.get("cpuMeasuredBytes"))
+                        / (1024.0 * 1024.0 * 1024.0);
+                System.out.println("⏱️ [BENCH] " + mode.name().toLowerCase(Locale.ROOT) + ": " + fetched[0] + " downloads, "
+                        + String.format(Locale.ROOT, "%.1f MB/s, %.0f ms CPU per GB on the server",
+                        fetched[1] / (1024.0 * 1024.0) / elapsed, gigabytes == 0 ? 0.0 : cpuMs / gigabytes));
+            }
+        } finally {
+            app.stop();
+        }
+    }
+
+    // Downloads url in a loop on several threads until durationMs has passed; returns {downloads, bytes}
+    private static long[] fetchLoop(String url, int clients, long durationMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + durationMs;
+        AtomicLong downloads = new AtomicLong();
+        AtomicLong bytes = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            Thread thread = new Thread(() -> {
+                while (System.currentTimeMillis() < deadline) {
+                    try {
+                        HttpURLConnection connection = (HttpURLConnection) URI.create(url).toURL().openConnection();
+                        try (InputStream in = connection.getInputStream()) {
+                            bytes.addAndGet(in.transferTo(OutputStream.nullOutputStream()));
+                        }
+                        downloads.incrementAndGet();
+                    } catch (IOException e) {
+                        System.err.println("❌ [BENCH] Download failed: " + e.getMessage());
+                        return;
+                    }
+                }
+            }, "bench-client-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return new long[] {downloads.get(), bytes.get()};
+    }
+
+    // FileResponder reports CPU per GB; the total is needed to subtract the warm-up
+    private static double cpuMs(Map<String, Object> modeStats) {
+        Object perGB = modeStats.get("cpuMsPerGB");
+        return perGB == null ? 0 : (double) perGB * ((long) modeStats.get("cpuMeasuredBytes") / (1024.0 * 1024.0 * 1024.0));
+    }
+
+    // ==================== LOAD ====================
+
+    // Stand-in for one JDBC round trip of an ordinary API call
+    private static final long API_WORK_MS = 5;
+    // A slow download: the handler's writes block for this long per chunk, as with a client on a slow link
+    private static final int SLOW_CHUNK_BYTES = 16 * 1024;
+    private static final long SLOW_CHUNK_DELAY_MS = 100;
+    private static final int SLOW_CHUNKS = 20;
+
+    private static void load(int seconds, int slowClients, int apiClients) throws Exception {
+        System.out.println("🧵 [BENCH] " + slowClients + " slow downloads + " + apiClients + " API clients, " + seconds + " s per mode");
+        // Virtual first: platform mode switches Javalin's helper executors off Loom for the whole JVM
+        for (HttpExecution.Mode mode : new HttpExecution.Mode[] {HttpExecution.Mode.VIRTUAL, HttpExecution.Mode.PLATFORM}) {
+            Javalin app = Javalin.create(config -> HttpExecution.configure(config, mode));
+            HttpExecution.installMetrics(app);
+            app.get("/api/ping", ctx -> {
+                Thread.sleep(API_WORK_MS);
+                ctx.result("ok");
+            });
+            app.get("/api/documents/{id}/download", ctx -> {
+                byte[] chunk = new byte[SLOW_CHUNK_BYTES];
+                ctx.contentType("application/octet-stream");
+                OutputStream out = ctx.res().getOutputStream();
+                for (int i = 0; i < SLOW_CHUNKS; i++) {
+                    out.write(chunk);
+                    out.flush();
+                    Thread.sleep(SLOW_CHUNK_DELAY_MS);
+                }
+            });
+            app.start("127.0.0.1", 0);
+            String base = "http://127.0.0.1:" + app.port();
+            try {
+                // Short untimed run to warm up, then count only the measured one
+                loadRun(base, slowClients, apiClients, 2_000);
+                HttpExecution.resetStats();
+                long[] latencies = loadRun(base, slowClients, apiClients, seconds * 1000L);
+
+                @SuppressWarnings("unchecked")
+                Map<String, Object> server = (Map<String, Object>) HttpExecution.getStats().get("api");
+                System.out.println("⏱️ [BENCH] " + mode.name().toLowerCase(Locale.ROOT) + ": " + latencies.length + " API calls, client p50 "
+                        + percentileMs(latencies, 0.50) + " ms, p95 " + percentileMs(latencies, 0.95) + " ms, p99 "
+                        + percentileMs(latencies, 0.99) + " ms, max " + percentileMs(latencies, 1.0) + " ms | server p99 "
+                        + server.get("p99Ms") + " ms");
+            } finally {
+                app.stop();
+            }
+        }
+    }
+
+    // Keeps the slow downloads going and calls the API in a loop; returns the API latencies in microseconds
+    private static long[] loadRun(String base, int slowClients, int apiClients, long durationMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + durationMs;
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        AtomicLong failures = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < slowClients + apiClients; i++) {
+            boolean slow = i < slowClients;
+            String url = base + (slow ? "/api/documents/" + i + "/download" : "/api/ping");
+            Thread thread = new Thread(() -> {
+                while (System.currentTimeMillis() < deadline) {
+                    long started = System.nanoTime();
+                    try {
+                        HttpURLConnection connection = (HttpURLConnection) URI.create(url).toURL().openConnection();
+                        connection.setConnectTimeout(30_000);
+                        connection.setReadTimeout(60_000);
+                        try (InputStream in = connection.getInputStream()) {
+                            in.transferTo(OutputStream.nullOutputStream());
+                        }
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                        continue;
+                    }
+                    if (!slow) {
+                        latencies.add((System.nanoTime() - started) / 1000);
+                    }
+                }
+            }, "bench-" + (slow ? "slow-" : "api-") + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failures.get() > 0) {
+            System.out.println("⚠️ [BENCH] " + failures.get() + " requests failed");
+        }
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static String percentileMs(long[] sortedMicros, double q) {
+        if (sortedMicros.length == 0) {
+            return "-";
+        }
+        int index = (int) Math.min(sortedMicros.length - 1, Math.max(0, Math.ceil(q * sortedMicros.length) - 1));
+        return String.format(Locale.ROOT, "%.1f", sortedMicros[index] / 1000.0);
+    }
+
+    // ==================== HELPERS ====================
+
+    private static String mb(long bytes) {
+        return String.format(Locale.ROOT, "%.1f", bytes / (1024.0 * 1024.0));
+    }
+
+    private static String rate(long bytes, long ms) {
+        return String.format(Locale.ROOT, "%.1f", ms == 0 ? 0 : (bytes / (1024.0 * 1024.0)) / (ms / 1000.0));
+    }
+
+    private static class CountingNullStream extends OutputStream {
+        long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
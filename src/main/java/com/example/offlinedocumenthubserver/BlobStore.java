@@ -0,0 +1,123 @@
+package com.example.offlinedocumenthubserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Content-addressed storage for uploaded documents.
+// Each distinct file is stored once as shared_documents/blobs/ab/cd/<sha256><ext>, where ab/cd are
+// the first two byte pairs of the hash. documents.file_path points at the blob, so the reference
+// count of a blob is the number of documents rows with that file_path. A blob is deleted only
+// when the last of those rows goes away.
+public class BlobStore {
+    public static final Path BLOB_DIR = Path.of("shared_documents", "blobs");
+
+    // Adding a reference and dropping the last one must not interleave for the same blob
+    private static final Object[] LOCKS = new Object[64];
+
+    static {
+        for (int i = 0; i < LOCKS.length; i++) {
+            LOCKS[i] = new Object();
+        }
+    }
+
+    private static final AtomicLong storedCount = new AtomicLong();
+    private static final AtomicLong dedupCount = new AtomicLong();
+    private static final AtomicLong bytesSaved = new AtomicLong();
+    private static final AtomicLong deletedCount = new AtomicLong();
+
+    public static Object lockFor(String sha256) {
+        return LOCKS[Integer.parseInt(sha256.substring(0, 2), 16) % LOCKS.length];
+    }
+
+    public static Path pathFor(String sha256, String extension) {
+        String ext = extension == null ? "" : extension.toLowerCase(Locale.ROOT);
+        return BLOB_DIR.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256 + ext);
+    }
+
+    public static boolean isBlob(String filePath) {
+        return filePath != null && Path.of(filePath).normalize().startsWith(BLOB_DIR);
+    }
+
+    // Puts a fully written temp file into the store and returns the blob path. If the same content
+    // is already stored the temp file is dropped. Callers hold lockFor(sha256) until the documents
+    // row referencing the blob is written.
+    public static Path store(Path tempFile, String sha256, String extension) throws IOException {
+        Path blob = pathFor(sha256, extension);
+        if (Files.exists(blob)) {
+            long size = Files.size(tempFile);
+            Files.delete(tempFile);
+            dedupCount.incrementAndGet();
+            bytesSaved.addAndGet(size);
+            return blob;
+        }
+
+        Files.createDirectories(blob.getParent());
+        try {
+            Files.move(tempFile, blob, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Different file system (e.g. a custom upload dir); fall back to a plain move
+            Files.move(tempFile, blob, StandardCopyOption.REPLACE_EXISTING);
+        }
+        HttpCaching.rememberFileHash(blob.toFile(), sha256);
+        storedCount.incrementAndGet();
+        return blob;
+    }
+
+    // Drops the blob at filePath if no documents row references it any more
+    public static boolean release(String filePath) throws SQLException {
+        if (!isBlob(filePath)) {
+            return false;
+        }
+        String sha256 = hashOf(filePath);
+        synchronized (lockFor(sha256)) {
+            if (countReferences(filePath) > 0) {
+                return false;
+            }
+            File file = new File(filePath);
+            HttpCaching.forgetFile(file);
+            if (file.delete()) {
+                deletedCount.incrementAndGet();
+                System.out.println("🗑️ [BLOBS] Removed unreferenced blob " + file.getName());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public static int countReferences(String filePath) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM documents WHERE file_path = ?";
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, filePath);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    private static String hashOf(String filePath) {
+        String name = Path.of(filePath).getFileName().toString();
+        int dot = name.indexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("stored", storedCount.get());
+        stats.put("deduplicated", dedupCount.get());
+        stats.put("bytesSaved", bytesSaved.get());
+        stats.put("deleted", deletedCount.get());
+        return stats;
+    }
+}
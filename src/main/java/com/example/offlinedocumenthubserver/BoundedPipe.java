@@ -0,0 +1,161 @@
+package com.example.offlinedocumenthubserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Connects a producer thread (e.g. a ZIP or SQL writer) to a consumer thread (the uploader) through
+// a fixed number of in-flight blocks, so neither side needs the whole artifact in memory or on disk.
+// A failure on either side is reported to the other one instead of leaving it blocked.
+public class BoundedPipe {
+    private static final byte[] EOF = new byte[0];
+
+    private final BlockingQueue<byte[]> blocks;
+    private final int blockSize;
+    private final AtomicLong bytesTransferred = new AtomicLong();
+    private volatile Throwable producerError;
+    private volatile Throwable consumerError;
+
+    private final OutputStream output;
+    private final InputStream input;
+
+    public BoundedPipe(int blockSize, int maxBlocks) {
+        this.blockSize = blockSize;
+        this.blocks = new ArrayBlockingQueue<>(maxBlocks);
+        // Created last: the streams size their buffers from blockSize
+        this.output = new PipeOutputStream();
+        this.input = new PipeInputStream();
+    }
+
+    public OutputStream getOutputStream() { return output; }
+    public InputStream getInputStream() { return input; }
+    public long getBytesTransferred() { return bytesTransferred.get(); }
+
+    // Called by the producer when it fails; the consumer's next read throws
+    public void failProducer(Throwable error) {
+        producerError = error;
+        blocks.clear();
+        blocks.offer(EOF);
+    }
+
+    // Called by the consumer when it gives up; the producer's next write throws
+    public void failConsumer(Throwable error) {
+        consumerError = error;
+        blocks.clear();
+    }
+
+    private class PipeOutputStream extends OutputStream {
+        private byte[] current = new byte[blockSize];
+        private int count = 0;
+        private boolean closed = false;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == current.length) {
+                flushBlock();
+            }
+            current[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == current.length) {
+                    flushBlock();
+                }
+                int n = Math.min(len, current.length - count);
+                System.arraycopy(b, off, current, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            byte[] block = count == current.length ? current : java.util.Arrays.copyOf(current, count);
+            put(block);
+            current = new byte[blockSize];
+            count = 0;
+        }
+
+        private void put(byte[] block) throws IOException {
+            try {
+                // Poll in short steps so a failed consumer is noticed even when the queue stays full
+                while (!blocks.offer(block, 200, TimeUnit.MILLISECONDS)) {
+                    checkConsumer();
+                }
+                checkConsumer();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while writing to pipe", e);
+            }
+        }
+
+        private void checkConsumer() throws IOException {
+            if (consumerError != null) {
+                throw new IOException("Upload failed: " + consumerError.getMessage(), consumerError);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            flushBlock();
+            put(EOF);
+        }
+    }
+
+    private class PipeInputStream extends InputStream {
+        private byte[] current;
+        private int pos = 0;
+        private boolean finished = false;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (current == null || pos == current.length) {
+                if (finished) {
+                    return -1;
+                }
+                try {
+                    current = blocks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while reading from pipe", e);
+                }
+                pos = 0;
+                if (producerError != null) {
+                    throw new IOException("Backup producer failed: " + producerError.getMessage(), producerError);
+                }
+                if (current == EOF) {
+                    finished = true;
+                    return -1;
+                }
+            }
+            int n = Math.min(len, current.length - pos);
+            System.arraycopy(current, pos, b, off, n);
+            pos += n;
+            bytesTransferred.addAndGet(n);
+            return n;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.example.offlinedocumenthubserver;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Small bounded JDBC connection pool.
+// Callers get a proxy Connection; calling close() on it hands the physical connection
+// back to the pool instead of closing the socket, so try-with-resources code works unchanged.
+public class ConnectionPool {
+    // Skip the validation round trip for connections that were in use very recently
+    private static final long VALIDATION_BYPASS_MS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long maxWaitMs;
+    private final long idleTimeoutMs;
+    // Callers allowed to queue for a permit; anyone beyond this fails fast instead of piling up
+    private final int maxWaiters;
+
+    // Idle connections, most recently returned first (LIFO keeps hot connections warm)
+    private final LinkedBlockingDeque<PooledEntry> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+
+    // Metrics
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicInteger peakWaiting = new AtomicInteger();
+
+    public ConnectionPool(String url, String user, String password,
+                          int minSize, int maxSize, long maxWaitMs, long idleTimeoutMs, int maxWaiters) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        if (maxWaiters < 0) {
+            throw new IllegalArgumentException("Invalid waiter limit: " + maxWaiters);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.maxWaitMs = maxWaitMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.maxWaiters = maxWaiters;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMs / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdleConnections, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is shut down");
+        }
+
+        long start = System.nanoTime();
+        acquirePermit();
+        recordWait(System.nanoTime() - start);
+
+        try {
+            PooledEntry entry;
+            while ((entry = idle.pollFirst()) != null) {
+                if (isUsable(entry)) {
+                    return entry.borrow();
+                }
+                validationFailures.incrementAndGet();
+                discard(entry);
+            }
+            return openEntry().borrow();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // The permits bound how many callers touch the database at once; the waiter limit bounds the
+    // queue behind them. With virtual-thread request handling there is no worker pool capping
+    // concurrency any more, so without it a burst of slow clients would each sit out the full
+    // maxWaitMs and the backlog would only grow. Rejecting early lets the handler answer right away.
+    private void acquirePermit() throws SQLException {
+        try {
+            // Zero-timeout tryAcquire honours fairness, so this never jumps ahead of queued callers
+            if (permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+            int queued = waiting.incrementAndGet();
+            try {
+                if (queued > maxWaiters) {
+                    rejectedCount.incrementAndGet();
+                    throw new SQLTransientConnectionException("Database busy: " + maxWaiters
+                            + " requests already waiting for a connection (pool size " + maxSize + ")");
+                }
+                peakWaiting.accumulateAndGet(queued, Math::max);
+                if (!permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+                    timeoutCount.incrementAndGet();
+                    throw new SQLException("Timed out after " + maxWaitMs + " ms waiting for a database connection (pool size " + maxSize + ")");
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+    }
+
+    private void recordWait(long waitNanos) {
+        borrowCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    private boolean isUsable(PooledEntry entry) {
+        if (System.currentTimeMillis() - entry.lastReturned < VALIDATION_BYPASS_MS) {
+            return true;
+        }
+        try {
+            return entry.raw.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledEntry openEntry() throws SQLException {
+        Connection raw = DriverManager.getConnection(url, user, password);
+        totalConnections.incrementAndGet();
+        createdCount.incrementAndGet();
+        return new PooledEntry(raw);
+    }
+
+    private void discard(PooledEntry entry) {
+        totalConnections.decrementAndGet();
+        try {
+            entry.raw.close();
+        } catch (SQLException e) {
+            System.err.println("⚠️ [DB-POOL] Error closing connection: " + e.getMessage());
+        }
+    }
+
+    private void release(PooledEntry entry) {
+        try {
+            if (closed || entry.broken || !resetState(entry)) {
+                discard(entry);
+            } else {
+                entry.lastReturned = System.currentTimeMillis();
+                idle.offerFirst(entry);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    // Undo anything a caller changed so the next borrower gets a clean connection
+    private boolean resetState(PooledEntry entry) {
+        try {
+            if (entry.autoCommitChanged) {
+                if (!entry.raw.getAutoCommit()) {
+                    entry.raw.rollback();
+                    entry.raw.setAutoCommit(true);
+                }
+            }
+            if (entry.readOnlyChanged) {
+                entry.raw.setReadOnly(false);
+            }
+            if (entry.isolationChanged) {
+                entry.raw.setTransactionIsolation(entry.defaultIsolation);
+            }
+            entry.raw.clearWarnings();
+            entry.autoCommitChanged = false;
+            entry.readOnlyChanged = false;
+            entry.isolationChanged = false;
+            return true;
+        } catch (SQLException e) {
+            System.err.println("⚠️ [DB-POOL] Could not reset connection, discarding: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void evictIdleConnections() {
+        try {
+            long now = System.currentTimeMillis();
+            // Oldest idle connections sit at the tail of the deque
+            Iterator<PooledEntry> it = idle.descendingIterator();
+            while (it.hasNext() && totalConnections.get() > minSize) {
+                PooledEntry entry = it.next();
+                if (now - entry.lastReturned > idleTimeoutMs && idle.remove(entry)) {
+                    evictedCount.incrementAndGet();
+                    discard(entry);
+                }
+            }
+
+            // Top back up to the minimum so the first requests after a quiet period stay fast
+            while (!closed && totalConnections.get() < minSize) {
+                idle.offerLast(openEntry());
+            }
+        } catch (Exception e) {
+            System.err.println("⚠️ [DB-POOL] Idle maintenance failed: " + e.getMessage());
+        }
+    }
+
+    public void shutdown() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            discard(entry);
+        }
+        System.out.println("🛑 [DB-POOL] Connection pool shut down");
+    }
+
+    public Map<String, Object> getStats() {
+        long borrows = borrowCount.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("minSize", minSize);
+        stats.put("maxSize", maxSize);
+        stats.put("totalConnections", totalConnections.get());
+        stats.put("idleConnections", idle.size());
+        stats.put("activeConnections", maxSize - permits.availablePermits());
+        stats.put("waitingThreads", waiting.get());
+        stats.put("peakWaitingThreads", peakWaiting.get());
+        stats.put("maxWaiters", maxWaiters);
+        stats.put("rejectedCount", rejectedCount.get());
+        stats.put("borrowCount", borrows);
+        stats.put("createdCount", createdCount.get());
+        stats.put("evictedCount", evictedCount.get());
+        stats.put("validationFailures", validationFailures.get());
+        stats.put("timeoutCount", timeoutCount.get());
+        stats.put("avgWaitMs", borrows == 0 ? 0.0 : totalWaitNanos.get() / 1_000_000.0 / borrows);
+        stats.put("maxWaitMs", maxWaitNanos.get() / 1_000_000.0);
+        return stats;
+    }
+
+    // ============ POOLED CONNECTION ============
+    private class PooledEntry {
+        private final Connection raw;
+        private final int defaultIsolation;
+        private volatile long lastReturned = System.currentTimeMillis();
+        private boolean broken;
+        private boolean autoCommitChanged;
+        private boolean readOnlyChanged;
+        private boolean isolationChanged;
+
+        PooledEntry(Connection raw) throws SQLException {
+            this.raw = raw;
+            this.defaultIsolation = raw.getTransactionIsolation();
+        }
+
+        Connection borrow() {
+            broken = false;
+            return (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Handle(this));
+        }
+    }
+
+    // One handle per borrow, so a stale reference can't close someone else's lease
+    private class Handle implements InvocationHandler {
+        private final PooledEntry entry;
+        private boolean released = false;
+
+        Handle(PooledEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        release(entry);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || entry.raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + entry.raw + "]";
+                default:
+                    break;
+            }
+
+            if (released) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+
+            switch (name) {
+                case "setAutoCommit": entry.autoCommitChanged = true; break;
+                case "setReadOnly": entry.readOnlyChanged = true; break;
+                case "setTransactionIsolation": entry.isolationChanged = true; break;
+                default: break;
+            }
+
+            try {
+                return method.invoke(entry.raw, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                // SQLState class 08 = connection exception; don't hand this connection out again
+                if (cause instanceof SQLException sqlEx
+                        && sqlEx.getSQLState() != null && sqlEx.getSQLState().startsWith("08")) {
+                    entry.broken = true;
+                }
+                throw cause;
+            }
+        }
+    }
+}
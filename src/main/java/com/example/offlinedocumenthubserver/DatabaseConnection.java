@@ -20,20 +20,70 @@
 package com.example.offlinedocumenthubserver;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Map;
 
 public class DatabaseConnection {
     private static final String URL = "jdbc:mysql://localhost:3306/odh_db";
     private static final String USER = "root";
     private static final String PASSWORD = "";
 
+    // Pool settings, overridable with -Dodh.db.pool.* system properties
+    private static final int POOL_MIN_SIZE = Integer.getInteger("odh.db.pool.minSize", 2);
+    private static final int POOL_MAX_SIZE = Integer.getInteger("odh.db.pool.maxSize", 20);
+    private static final long POOL_MAX_WAIT_MS = Long.getLong("odh.db.pool.maxWaitMs", 10_000L);
+    private static final long POOL_IDLE_TIMEOUT_MS = Long.getLong("odh.db.pool.idleTimeoutMs", 5 * 60 * 1000L);
+    // Requests allowed to queue for a connection before new ones are turned away immediately
+    private static final int POOL_MAX_WAITERS = Integer.getInteger("odh.db.pool.maxWaiters", POOL_MAX_SIZE * 10);
+
+    private static volatile ConnectionPool pool;
+    // Set by shutdown(); connections are refused afterwards instead of quietly building a new pool
+    private static volatile boolean closed;
+
     public static Connection getConnection() throws SQLException {
-        try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            return DriverManager.getConnection(URL, USER, PASSWORD);
-        } catch (ClassNotFoundException e) {
-            throw new SQLException("MySQL JDBC Driver not found", e);
+        return getPool().getConnection();
+    }
+
+    private static ConnectionPool getPool() throws SQLException {
+        ConnectionPool current = pool;
+        if (current == null) {
+            synchronized (DatabaseConnection.class) {
+                if (closed) {
+                    throw new SQLException("Database connection pool has been shut down");
+                }
+                current = pool;
+                if (current == null) {
+                    try {
+                        Class.forName("com.mysql.cj.jdbc.Driver");
+                    } catch (ClassNotFoundException e) {
+                        throw new SQLException("MySQL JDBC Driver not found", e);
+                    }
+                    current = new ConnectionPool(URL, USER, PASSWORD,
+                            POOL_MIN_SIZE, POOL_MAX_SIZE, POOL_MAX_WAIT_MS, POOL_IDLE_TIMEOUT_MS, POOL_MAX_WAITERS);
+                    pool = current;
+                    System.out.println("🔌 [DB-POOL] Connection pool ready (min=" + POOL_MIN_SIZE + ", max=" + POOL_MAX_SIZE
+                            + ", maxWaiters=" + POOL_MAX_WAITERS + ")");
+                }
+            }
+        }
+        return current;
+    }
+
+    public static Map<String, Object> getPoolStats() {
+        ConnectionPool current = pool;
+        if (current != null) {
+            return current.getStats();
+        }
+        return Map.of("status", closed ? "Shut down" : "Not started");
+    }
+
+    public static void shutdown() {
+        synchronized (DatabaseConnection.class) {
+            closed = true;
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
         }
     }
 }
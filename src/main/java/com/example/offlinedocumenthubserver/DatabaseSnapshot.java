@@ -0,0 +1,126 @@
+package com.example.offlinedocumenthubserver;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// A point-in-time view of the database for the backup export, without stopping writes.
+// Every connection runs a REPEATABLE READ transaction started WITH CONSISTENT SNAPSHOT, so all reads see
+// the data as of the moment the transaction began. InnoDB snapshots can't be shared between sessions,
+// so for parallel export the snapshots are lined up instead: FLUSH TABLES WITH READ LOCK holds writes
+// for the few milliseconds it takes to start a snapshot on each connection, after which all of them see
+// the same state. Without the RELOAD privilege (or when the lock can't be had quickly) it falls back to
+// a single snapshot connection.
+public class DatabaseSnapshot implements AutoCloseable {
+    private static final int LOCK_WAIT_SECONDS = Integer.getInteger("odh.backup.snapshotLockWaitSeconds", 5);
+
+    private final List<Connection> connections;
+    private final List<Integer> originalIsolation;
+    private final boolean aligned;
+
+    private DatabaseSnapshot(List<Connection> connections, List<Integer> originalIsolation, boolean aligned) {
+        this.connections = connections;
+        this.originalIsolation = originalIsolation;
+        this.aligned = aligned;
+    }
+
+    // Opens up to wanted connections that all see the same snapshot; may return fewer (one)
+    public static DatabaseSnapshot open(int wanted) throws SQLException {
+        if (wanted > 1) {
+            try {
+                return openAligned(wanted);
+            } catch (SQLException e) {
+                System.err.println("⚠️ [BACKUP] Could not line up parallel snapshots (" + e.getMessage() + "), exporting on one connection");
+            }
+        }
+
+        Connection conn = DatabaseConnection.getConnection();
+        try {
+            int isolation = begin(conn);
+            return new DatabaseSnapshot(List.of(conn), List.of(isolation), false);
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+    }
+
+    private static DatabaseSnapshot openAligned(int wanted) throws SQLException {
+        List<Connection> opened = new ArrayList<>();
+        List<Integer> isolation = new ArrayList<>();
+        try {
+            for (int i = 0; i < wanted; i++) {
+                opened.add(DatabaseConnection.getConnection());
+            }
+            try (Connection control = DatabaseConnection.getConnection();
+                 Statement stmt = control.createStatement()) {
+                stmt.execute("SET SESSION lock_wait_timeout = " + LOCK_WAIT_SECONDS);
+                try {
+                    long started = System.nanoTime();
+                    stmt.execute("FLUSH TABLES WITH READ LOCK");
+                    try {
+                        for (Connection conn : opened) {
+                            isolation.add(begin(conn));
+                        }
+                    } finally {
+                        stmt.execute("UNLOCK TABLES");
+                    }
+                    System.out.println("📸 [BACKUP] " + wanted + " snapshot connections aligned, writes held for "
+                            + (System.nanoTime() - started) / 1_000_000 + " ms");
+                } finally {
+                    stmt.execute("SET SESSION lock_wait_timeout = DEFAULT");
+                }
+            }
+            return new DatabaseSnapshot(opened, isolation, true);
+        } catch (SQLException e) {
+            for (int i = 0; i < opened.size(); i++) {
+                end(opened.get(i), i < isolation.size() ? isolation.get(i) : null);
+            }
+            throw e;
+        }
+    }
+
+    private static int begin(Connection conn) throws SQLException {
+        int original = conn.getTransactionIsolation();
+        conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT, READ ONLY");
+        }
+        return original;
+    }
+
+    private static void end(Connection conn, Integer originalIsolation) {
+        try {
+            if (originalIsolation != null) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("COMMIT");
+                }
+                conn.setTransactionIsolation(originalIsolation);
+            }
+        } catch (SQLException e) {
+            System.err.println("⚠️ [BACKUP] Could not end snapshot transaction: " + e.getMessage());
+        } finally {
+            try {
+                conn.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    public List<Connection> getConnections() {
+        return connections;
+    }
+
+    // True when several connections share the same point in time
+    public boolean isAligned() {
+        return aligned;
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0; i < connections.size(); i++) {
+            end(connections.get(i), originalIsolation.get(i));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.offlinedocumenthubserver;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Read-through cache for the full document list.
+// Holds the list together with its already-serialized JSON for the current version.
+// Any write to the documents table must call invalidate(), which bumps the version.
+public class DocumentCache {
+
+    // Loads the document list and serializes it; called on a cache miss
+    public interface Loader {
+        List<Document> load() throws Exception;
+    }
+
+    public interface Serializer {
+        byte[] serialize(List<Document> documents) throws Exception;
+    }
+
+    // One immutable cached version of the list
+    public static final class Snapshot {
+        private final long version;
+        private final List<Document> documents;
+        private final byte[] json;
+        private final String etag;
+        private final long lastModified;
+        private final long loadedAt;
+
+        private Snapshot(long version, List<Document> documents, byte[] json, long lastModified) {
+            this.version = version;
+            this.documents = documents;
+            this.json = json;
+            this.etag = HttpCaching.contentEtag(json);
+            this.lastModified = lastModified;
+            this.loadedAt = System.currentTimeMillis();
+        }
+
+        public long getVersion() { return version; }
+        public List<Document> getDocuments() { return documents; }
+        public byte[] getJson() { return json; }
+        public String getEtag() { return etag; }
+        public long getLastModified() { return lastModified; }
+        public long getLoadedAt() { return loadedAt; }
+    }
+
+    private static final AtomicLong version = new AtomicLong(1);
+    private static volatile Snapshot current;
+    // When the list last changed (server start counts as a change)
+    private static volatile long lastChangedAt = System.currentTimeMillis();
+    private static final Object loadLock = new Object();
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong loads = new AtomicLong();
+    private static final AtomicLong invalidations = new AtomicLong();
+
+    public static Snapshot get(Loader loader, Serializer serializer) throws Exception {
+        Snapshot snapshot = current;
+        if (snapshot != null && snapshot.version == version.get()) {
+            hits.incrementAndGet();
+            return snapshot;
+        }
+
+        misses.incrementAndGet();
+        // Only one thread reloads; the others wait and reuse its result
+        synchronized (loadLock) {
+            long loadVersion = version.get();
+            long changedAt = lastChangedAt;
+            snapshot = current;
+            if (snapshot != null && snapshot.version == loadVersion) {
+                return snapshot;
+            }
+
+            List<Document> documents = List.copyOf(loader.load());
+            Snapshot loaded = new Snapshot(loadVersion, documents, serializer.serialize(documents), changedAt);
+            loads.incrementAndGet();
+
+            // Don't publish if a write happened while we were loading
+            if (version.get() == loadVersion) {
+                current = loaded;
+            }
+            return loaded;
+        }
+    }
+
+    public static void invalidate() {
+        lastChangedAt = System.currentTimeMillis();
+        version.incrementAndGet();
+        current = null;
+        invalidations.incrementAndGet();
+    }
+
+    public static long getVersion() {
+        return version.get();
+    }
+
+    public static Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+        Snapshot snapshot = current;
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("version", version.get());
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", total == 0 ? 0.0 : (double) hitCount / total);
+        stats.put("loads", loads.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("cached", snapshot != null);
+        stats.put("cachedDocuments", snapshot != null ? snapshot.documents.size() : 0);
+        stats.put("cachedBytes", snapshot != null ? snapshot.json.length : 0);
+        stats.put("cachedAt", snapshot != null ? snapshot.loadedAt : 0);
+        return stats;
+    }
+}
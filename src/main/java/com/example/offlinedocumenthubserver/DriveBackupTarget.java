@@ -0,0 +1,269 @@
+package com.example.offlinedocumenthubserver;
+
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.extensions.java6.auth.oauth2.AuthorizationCodeInstalledApp;
+import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
+import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
+import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
+import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.util.store.FileDataStoreFactory;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.DriveScopes;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Backup sets as folders under OfflineDocumentHub_Backups in the authorized user's Google Drive
+public class DriveBackupTarget implements BackupTarget {
+    private static final String APPLICATION_NAME = "Offline Document Hub";
+    private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
+    private static final String CLIENT_SECRETS_FILE_PATH = "/client_secret.json";
+    private static final String TOKENS_DIRECTORY_PATH = "tokens";
+    private static final String PARENT_BACKUP_FOLDER_NAME = "OfflineDocumentHub_Backups";
+
+    private Drive driveService;
+    private String parentFolderId;
+    private DriveResumableUpload uploader;
+    // Backup folders created by this process; any other folder is a resumed set that may hold older copies
+    private final Set<String> createdFolders = ConcurrentHashMap.newKeySet();
+
+    public DriveBackupTarget() {
+        System.out.println("🔧 [INIT] Starting Google Drive backup target initialization (User OAuth Flow)...");
+
+        try {
+            final NetHttpTransport HTTP_TRANSPORT = GoogleNetHttpTransport.newTrustedTransport();
+
+            // Authorize as a user.
+            Credential credential = authorize(HTTP_TRANSPORT);
+
+            // Build the Drive service
+            System.out.println("🔧 [INIT] Building Drive service...");
+            driveService = new Drive.Builder(HTTP_TRANSPORT, JSON_FACTORY, credential)
+                    .setApplicationName(APPLICATION_NAME)
+                    .build();
+            uploader = new DriveResumableUpload(driveService.getRequestFactory(), JSON_FACTORY);
+            System.out.println("✅ [INIT] Google Drive service initialized successfully!");
+
+            // Initialize parent backup folder
+            initializeParentFolder();
+
+            // Quick API test
+            System.out.println("🔧 [INIT] Testing API connection...");
+            System.out.println("✅ [INIT] API connection test successful! User: " + driveService.about().get().setFields("user").execute().getUser().getEmailAddress());
+            System.out.println("✅ [INIT] Ready to perform backups!");
+
+        } catch (Exception e) {
+            System.err.println("❌ [INIT] Initialization failed: " + e.getMessage());
+            e.printStackTrace();
+            driveService = null;
+        }
+    }
+
+    private Credential authorize(final NetHttpTransport HTTP_TRANSPORT) throws IOException {
+        System.out.println("🔧 [AUTH] Loading client secrets from: " + CLIENT_SECRETS_FILE_PATH);
+        InputStream in = DriveBackupTarget.class.getResourceAsStream(CLIENT_SECRETS_FILE_PATH);
+        if (in == null) {
+            throw new FileNotFoundException("Resource not found: " + CLIENT_SECRETS_FILE_PATH);
+        }
+
+        GoogleClientSecrets clientSecrets = GoogleClientSecrets.load(JSON_FACTORY, new InputStreamReader(in));
+        System.out.println("✅ [AUTH] Client secrets loaded successfully.");
+
+        GoogleAuthorizationCodeFlow flow = new GoogleAuthorizationCodeFlow.Builder(
+                HTTP_TRANSPORT, JSON_FACTORY, clientSecrets, Collections.singleton(DriveScopes.DRIVE))
+                .setDataStoreFactory(new FileDataStoreFactory(new java.io.File(TOKENS_DIRECTORY_PATH)))
+                .setAccessType("offline")
+                .build();
+
+        LocalServerReceiver receiver = new LocalServerReceiver.Builder().setPort(8888).build();
+        return new AuthorizationCodeInstalledApp(flow, receiver).authorize("defaultUser");
+    }
+
+    private void initializeParentFolder() throws Exception {
+        System.out.println("🔧 [FOLDER] Looking for parent backup folder: " + PARENT_BACKUP_FOLDER_NAME);
+
+        String query = "mimeType='application/vnd.google-apps.folder' and name='" + PARENT_BACKUP_FOLDER_NAME + "' and 'root' in parents and trashed=false";
+        FileList result = driveService.files().list()
+                .setQ(query)
+                .setSpaces("drive")
+                .setFields("files(id, name)")
+                .execute();
+
+        if (result.getFiles().isEmpty()) {
+            System.out.println("📁 [FOLDER] Parent folder not found, creating new one...");
+            File folderMetadata = new File();
+            folderMetadata.setName(PARENT_BACKUP_FOLDER_NAME);
+            folderMetadata.setMimeType("application/vnd.google-apps.folder");
+            folderMetadata.setDescription("Offline Document Hub Backup Storage");
+
+            File parentFolder = driveService.files().create(folderMetadata)
+                    .setFields("id, name")
+                    .execute();
+
+            parentFolderId = parentFolder.getId();
+            System.out.println("✅ [FOLDER] Parent folder created: " + PARENT_BACKUP_FOLDER_NAME + " (ID: " + parentFolderId + ")");
+        } else {
+            parentFolderId = result.getFiles().get(0).getId();
+            System.out.println("✅ [FOLDER] Found existing parent folder: " + PARENT_BACKUP_FOLDER_NAME + " (ID: " + parentFolderId + ")");
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "google-drive";
+    }
+
+    @Override
+    public String getLocation() {
+        return PARENT_BACKUP_FOLDER_NAME;
+    }
+
+    @Override
+    public boolean isReady() {
+        return driveService != null && parentFolderId != null;
+    }
+
+    @Override
+    public boolean isReachable() {
+        // Any HTTP answer from the Drive API host means the network path is up
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("https://www.googleapis.com/drive/v3/about").openConnection();
+            connection.setConnectTimeout(5000);
+            connection.setReadTimeout(5000);
+            connection.setRequestMethod("HEAD");
+            return connection.getResponseCode() > 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    @Override
+    public String createBackupFolder(String folderName) throws Exception {
+        File folderMetadata = new File();
+        folderMetadata.setName(folderName);
+        folderMetadata.setMimeType("application/vnd.google-apps.folder");
+        folderMetadata.setParents(Collections.singletonList(parentFolderId));
+
+        File backupFolder = driveService.files().create(folderMetadata)
+                .setFields("id, name")
+                .execute();
+        createdFolders.add(backupFolder.getId());
+        return backupFolder.getId();
+    }
+
+    @Override
+    public long upload(String folderId, String fileName, String mimeType, InputStream content, long length,
+                       UploadListener listener) throws Exception {
+        File uploaded = uploader.upload(folderId, fileName, mimeType, content, length, listener);
+
+        if (!createdFolders.contains(folderId)) {
+            // Resumed backup set: drop copies of this artifact left by the interrupted run
+            String query = "name='" + fileName.replace("'", "\\'") + "' and '" + folderId + "' in parents and trashed=false";
+            for (File old : driveService.files().list().setQ(query).setFields("files(id)").execute().getFiles()) {
+                if (!old.getId().equals(uploaded.getId())) {
+                    driveService.files().delete(old.getId()).execute();
+                }
+            }
+        }
+        return uploaded.getSize() != null ? uploaded.getSize() : Math.max(length, 0);
+    }
+
+    @Override
+    public boolean hasBackupFolder(String folderId) {
+        try {
+            File folder = driveService.files().get(folderId).setFields("id, trashed").execute();
+            return !Boolean.TRUE.equals(folder.getTrashed());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public InputStream download(String folderId, String fileName) throws Exception {
+        return driveService.files().get(requireArtifact(folderId, fileName).getId()).executeMediaAsInputStream();
+    }
+
+    @Override
+    public InputStream download(String folderId, String fileName, long offset, long length) throws Exception {
+        Drive.Files.Get get = driveService.files().get(requireArtifact(folderId, fileName).getId());
+        get.getRequestHeaders().setRange("bytes=" + offset + "-" + (offset + Math.max(length, 1) - 1));
+        return get.executeMediaAsInputStream();
+    }
+
+    @Override
+    public long artifactSize(String folderId, String fileName) throws Exception {
+        File artifact = findArtifact(folderId, fileName);
+        return artifact == null ? -1 : artifact.getSize() != null ? artifact.getSize() : 0;
+    }
+
+    // Newest file of that name in the backup folder, or null
+    private File findArtifact(String folderId, String fileName) throws IOException {
+        String query = "name='" + fileName.replace("'", "\\'") + "' and '" + folderId + "' in parents and trashed=false";
+        List<File> files = driveService.files().list()
+                .setQ(query)
+                .setFields("files(id, name, size)")
+                .setOrderBy("modifiedTime desc")
+                .execute()
+                .getFiles();
+        return files.isEmpty() ? null : files.get(0);
+    }
+
+    private File requireArtifact(String folderId, String fileName) throws IOException {
+        File artifact = findArtifact(folderId, fileName);
+        if (artifact == null) {
+            throw new FileNotFoundException(fileName + " not found in backup folder " + folderId);
+        }
+        return artifact;
+    }
+
+    @Override
+    public List<Map<String, String>> listBackups() throws Exception {
+        List<Map<String, String>> backups = new ArrayList<>();
+
+        if (driveService == null) {
+            throw new Exception("Google Drive service not initialized");
+        }
+
+        String query = "mimeType='application/vnd.google-apps.folder' and name contains 'DocumentHub_Backup_' and '" + parentFolderId + "' in parents and trashed=false";
+        // Follow every result page: restores and verification look up the older sets of a chain here
+        String pageToken = null;
+        do {
+            FileList result = driveService.files().list()
+                    .setQ(query)
+                    .setSpaces("drive")
+                    .setFields("nextPageToken, files(id, name, createdTime)")
+                    .setOrderBy("createdTime desc")
+                    .setPageSize(1000)
+                    .setPageToken(pageToken)
+                    .execute();
+
+            for (File file : result.getFiles()) {
+                Map<String, String> backup = new HashMap<>();
+                backup.put("id", file.getId());
+                backup.put("name", file.getName());
+                backup.put("createdTime", file.getCreatedTime().toString());
+                backup.put("parentFolder", PARENT_BACKUP_FOLDER_NAME);
+                backups.add(backup);
+            }
+            pageToken = result.getNextPageToken();
+        } while (pageToken != null);
+
+        return backups;
+    }
+}
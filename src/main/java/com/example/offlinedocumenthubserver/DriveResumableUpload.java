@@ -0,0 +1,542 @@
+package com.example.offlinedocumenthubserver;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.api.client.http.AbstractHttpContent;
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.json.JsonHttpContent;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.JsonObjectParser;
+import com.google.api.services.drive.model.File;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Drive resumable upload sessions, driven chunk by chunk.
+// - Each chunk is kept in memory until Drive confirms it, so a failed chunk is resent after an
+//   exponential backoff without restarting the file.
+// - Session URIs and the SHA-256 of the confirmed prefix are journaled under backup_state/, so after a
+//   restart the same artifact continues where it stopped, provided the regenerated bytes match.
+// - An optional bandwidth cap (odh.backup.maxUploadKBps, optionally only during odh.backup.throttleHours,
+//   e.g. "7-16") paces the bytes as they are written to the socket.
+public class DriveResumableUpload {
+    private static final String UPLOAD_URL = "https://www.googleapis.com/upload/drive/v3/files?uploadType=resumable&fields=id,name,size";
+    private static final Path JOURNAL_FILE = Path.of("backup_state", "drive_upload_sessions.json");
+
+    // Drive requires chunks in multiples of 256 KB
+    private static final int CHUNK_UNIT = 256 * 1024;
+    public static final int CHUNK_SIZE = Math.max(1, Integer.getInteger("odh.backup.uploadChunkSize", 8 * 1024 * 1024) / CHUNK_UNIT) * CHUNK_UNIT;
+    private static final int MAX_RETRIES = Integer.getInteger("odh.backup.uploadRetries", 8);
+    private static final long MAX_BACKOFF_MS = 64_000;
+    private static final long MAX_BYTES_PER_SECOND = Long.getLong("odh.backup.maxUploadKBps", 0) * 1024;
+    private static final String THROTTLE_HOURS = System.getProperty("odh.backup.throttleHours", "");
+    // Drive keeps an unfinished session for a week; older journal entries are useless
+    private static final long SESSION_LIFETIME_MS = 6L * 24 * 60 * 60 * 1000;
+    private static final int THROTTLE_SLICE = 64 * 1024;
+
+    private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private static final Object journalLock = new Object();
+    // Shared by all uploads so the cap holds for the whole server
+    private static final Object throttleLock = new Object();
+    private static long nextSendNanos = 0;
+
+    private static final AtomicLong chunksSent = new AtomicLong();
+    private static final AtomicLong chunkRetries = new AtomicLong();
+    private static final AtomicLong uploadsResumed = new AtomicLong();
+    private static final AtomicLong resumeMismatches = new AtomicLong();
+    private static final AtomicLong throttledMs = new AtomicLong();
+
+    public static class JournalEntry {
+        public String sessionUri;
+        public long committedBytes;
+        public String prefixSha256;
+        public long createdAt;
+        public long updatedAt;
+    }
+
+    private final HttpRequestFactory requestFactory;
+    private final JsonFactory jsonFactory;
+    private final String uploadUrl;
+
+    public DriveResumableUpload(HttpRequestFactory requestFactory, JsonFactory jsonFactory) {
+        this(requestFactory, jsonFactory, UPLOAD_URL);
+    }
+
+    // uploadUrl can point at a Drive-compatible endpoint other than Google's (e.g. a local test server)
+    public DriveResumableUpload(HttpRequestFactory requestFactory, JsonFactory jsonFactory, String uploadUrl) {
+        this.requestFactory = requestFactory;
+        this.jsonFactory = jsonFactory;
+        this.uploadUrl = uploadUrl;
+    }
+
+    public File upload(String folderId, String fileName, String mimeType, InputStream content, long length,
+                       BackupTarget.UploadListener listener) throws IOException {
+        String key = folderId + "/" + fileName;
+        MessageDigest prefix = sha256();
+        long committed = 0;
+        String sessionUri = null;
+
+        JournalEntry previous = journalGet(key);
+        if (previous != null) {
+            long serverCommitted = queryCommitted(previous.sessionUri);
+            if (serverCommitted >= 0 && serverCommitted == previous.committedBytes) {
+                // Only continue if the regenerated artifact starts with exactly the bytes Drive already has
+                if (!skipAndHash(content, serverCommitted, prefix)
+                        || !HexFormat.of().formatHex(digestSoFar(prefix)).equals(previous.prefixSha256)) {
+                    resumeMismatches.incrementAndGet();
+                    cancel(previous.sessionUri);
+                    journalRemove(key);
+                    throw new BackupTarget.ResumeMismatchException(fileName + " changed since the interrupted upload; starting it over");
+                }
+                sessionUri = previous.sessionUri;
+                committed = serverCommitted;
+                uploadsResumed.incrementAndGet();
+                System.out.println("♻️ [UPLOAD] Resuming " + fileName + " at " + (committed / (1024 * 1024)) + " MB");
+            } else {
+                cancel(previous.sessionUri);
+                journalRemove(key);
+            }
+        }
+
+        if (sessionUri == null) {
+            sessionUri = startSession(folderId, fileName, mimeType, length);
+            journalPut(key, sessionUri, 0, HexFormat.of().formatHex(digestSoFar(prefix)));
+        }
+
+        byte[] buffer = new byte[CHUNK_SIZE];
+        // buffer holds stream bytes [bufferStart, bufferStart + buffered)
+        long bufferStart = committed;
+        int buffered = 0;
+        boolean eof = false;
+
+        while (true) {
+            while (!eof && buffered < buffer.length) {
+                int n = content.read(buffer, buffered, buffer.length - buffered);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    buffered += n;
+                }
+            }
+
+            long total = eof ? bufferStart + buffered : -1;
+            int offset = (int) (committed - bufferStart);
+            Result result = sendChunk(sessionUri, buffer, offset, buffered - offset, committed, total, mimeType);
+
+            if (result.file != null) {
+                journalRemove(key);
+                return result.file;
+            }
+
+            // Drive may confirm less than was sent; the rest stays in the buffer and goes out again
+            long newCommitted = result.committed;
+            if (newCommitted < bufferStart || newCommitted > bufferStart + buffered) {
+                throw new IOException("Drive reported an unexpected upload offset " + newCommitted + " for " + fileName);
+            }
+            prefix.update(buffer, offset, (int) (newCommitted - committed));
+            committed = newCommitted;
+            journalPut(key, sessionUri, committed, HexFormat.of().formatHex(digestSoFar(prefix)));
+            if (listener != null) {
+                listener.onBytesUploaded(committed);
+            }
+
+            int keep = (int) (bufferStart + buffered - committed);
+            System.arraycopy(buffer, buffered - keep, buffer, 0, keep);
+            bufferStart = committed;
+            buffered = keep;
+
+            if (eof && buffered == 0) {
+                // Everything confirmed but no final response yet; ask for it
+                Result done = sendChunk(sessionUri, buffer, 0, 0, committed, committed, mimeType);
+                if (done.file == null) {
+                    throw new IOException("Drive did not complete the upload of " + fileName);
+                }
+                journalRemove(key);
+                return done.file;
+            }
+        }
+    }
+
+    private record Result(long committed, File file) {}
+
+    // Errors that retrying cannot fix (rejected request, expired session)
+    private static class FatalUploadException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        FatalUploadException(String message) {
+            super(message);
+        }
+    }
+
+    private String startSession(String folderId, String fileName, String mimeType, long length) throws IOException {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("name", fileName);
+        metadata.put("parents", List.of(folderId));
+
+        IOException last = null;
+        for (int attempt = 0; attempt <= MAX_RETRIES; attempt++) {
+            if (attempt > 0) {
+                backoff(attempt, last);
+            }
+            try {
+                HttpRequest request = requestFactory.buildPostRequest(new GenericUrl(uploadUrl), new JsonHttpContent(jsonFactory, metadata));
+                request.getHeaders().set("X-Upload-Content-Type", mimeType);
+                if (length >= 0) {
+                    request.getHeaders().set("X-Upload-Content-Length", length);
+                }
+                request.setThrowExceptionOnExecuteError(false);
+                HttpResponse response = request.execute();
+                try {
+                    int status = response.getStatusCode();
+                    if (status == 200 && response.getHeaders().getLocation() != null) {
+                        return response.getHeaders().getLocation();
+                    }
+                    String message = "Starting upload of " + fileName + " failed: HTTP " + status + " " + response.getStatusMessage();
+                    if (!isRetryable(status)) {
+                        throw new FatalUploadException(message);
+                    }
+                    last = new IOException(message);
+                } finally {
+                    response.disconnect();
+                }
+            } catch (FatalUploadException e) {
+                throw e;
+            } catch (IOException e) {
+                last = e;
+            }
+        }
+        throw last;
+    }
+
+    // Sends buffer[offset, offset+length) as the bytes starting at position, retrying with backoff.
+    // After a failure the session is asked how much it already has before anything is resent.
+    private Result sendChunk(String sessionUri, byte[] buffer, int offset, int length, long position,
+                             long total, String mimeType) throws IOException {
+        IOException last = null;
+        for (int attempt = 0; attempt <= MAX_RETRIES; attempt++) {
+            if (attempt > 0) {
+                chunkRetries.incrementAndGet();
+                backoff(attempt, last);
+                long confirmed = queryCommitted(sessionUri);
+                if (confirmed == Long.MAX_VALUE) {
+                    return new Result(total, finishedFile(sessionUri));
+                }
+                if (confirmed < 0) {
+                    last = new IOException("Upload session status unavailable");
+                    continue;
+                }
+                if (confirmed > position) {
+                    // Part of the chunk arrived before the failure
+                    return new Result(confirmed, null);
+                }
+            }
+            try {
+                HttpRequest request = requestFactory.buildPutRequest(new GenericUrl(sessionUri),
+                        length == 0 ? new ByteArrayContent(mimeType, new byte[0]) : new ThrottledContent(mimeType, buffer, offset, length));
+                String totalText = total >= 0 ? String.valueOf(total) : "*";
+                request.getHeaders().setContentRange(length == 0
+                        ? "bytes */" + totalText
+                        : "bytes " + position + "-" + (position + length - 1) + "/" + totalText);
+                request.setThrowExceptionOnExecuteError(false);
+                request.setFollowRedirects(false);
+                request.setParser(new JsonObjectParser(jsonFactory));
+                HttpResponse response = request.execute();
+                try {
+                    int status = response.getStatusCode();
+                    if (status == 200 || status == 201) {
+                        chunksSent.incrementAndGet();
+                        return new Result(total, response.parseAs(File.class));
+                    }
+                    if (status == 308) {
+                        chunksSent.incrementAndGet();
+                        return new Result(committedFromRange(response.getHeaders().getRange()), null);
+                    }
+                    if (status == 404 || status == 410) {
+                        throw new FatalUploadException("Upload session expired: HTTP " + status);
+                    }
+                    String message = "Chunk upload failed: HTTP " + status + " " + response.getStatusMessage();
+                    if (!isRetryable(status)) {
+                        throw new FatalUploadException(message);
+                    }
+                    last = new IOException(message);
+                } finally {
+                    response.disconnect();
+                }
+            } catch (FatalUploadException e) {
+                throw e;
+            } catch (IOException e) {
+                last = e;
+            }
+        }
+        throw new IOException("Giving up after " + MAX_RETRIES + " retries: " + (last != null ? last.getMessage() : ""), last);
+    }
+
+    // Bytes the session has confirmed, Long.MAX_VALUE if it is already complete, -1 if unknown or expired
+    private long queryCommitted(String sessionUri) {
+        try {
+            HttpRequest request = requestFactory.buildPutRequest(new GenericUrl(sessionUri), new ByteArrayContent(null, new byte[0]));
+            request.getHeaders().setContentRange("bytes */*");
+            request.setThrowExceptionOnExecuteError(false);
+            request.setFollowRedirects(false);
+            HttpResponse response = request.execute();
+            try {
+                int status = response.getStatusCode();
+                if (status == 308) {
+                    return committedFromRange(response.getHeaders().getRange());
+                }
+                if (status == 200 || status == 201) {
+                    return Long.MAX_VALUE;
+                }
+                return -1;
+            } finally {
+                response.disconnect();
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private File finishedFile(String sessionUri) throws IOException {
+        HttpRequest request = requestFactory.buildPutRequest(new GenericUrl(sessionUri), new ByteArrayContent(null, new byte[0]));
+        request.getHeaders().setContentRange("bytes */*");
+        request.setParser(new JsonObjectParser(jsonFactory));
+        HttpResponse response = request.execute();
+        try {
+            return response.parseAs(File.class);
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    private void cancel(String sessionUri) {
+        try {
+            HttpRequest request = requestFactory.buildDeleteRequest(new GenericUrl(sessionUri));
+            request.setThrowExceptionOnExecuteError(false);
+            request.execute().disconnect();
+        } catch (IOException e) {
+            // The session expires on its own
+        }
+    }
+
+    private static long committedFromRange(String range) {
+        // "bytes=0-1048575" -> 1048576; no header means nothing was stored yet
+        if (range == null || !range.contains("-")) {
+            return 0;
+        }
+        return Long.parseLong(range.substring(range.lastIndexOf('-') + 1).trim()) + 1;
+    }
+
+    private static boolean isRetryable(int status) {
+        return status == 408 || status == 429 || status >= 500;
+    }
+
+    private static void backoff(int attempt, IOException cause) throws IOException {
+        long delay = Math.min(MAX_BACKOFF_MS, 1000L << Math.min(attempt - 1, 16))
+                + ThreadLocalRandom.current().nextLong(1000);
+        System.err.println("⚠️ [UPLOAD] " + (cause != null ? cause.getMessage() : "Upload error") + " - retry " + attempt
+                + "/" + MAX_RETRIES + " in " + delay + " ms");
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to retry upload", e);
+        }
+    }
+
+    // Reads exactly count bytes into the digest; false if the stream is shorter
+    private static boolean skipAndHash(InputStream content, long count, MessageDigest digest) throws IOException {
+        byte[] buffer = new byte[256 * 1024];
+        long remaining = count;
+        while (remaining > 0) {
+            int n = content.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (n < 0) {
+                return false;
+            }
+            digest.update(buffer, 0, n);
+            remaining -= n;
+        }
+        return true;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] digestSoFar(MessageDigest digest) {
+        try {
+            return ((MessageDigest) digest.clone()).digest();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // ============ BANDWIDTH CAP ============
+
+    private static long currentLimit() {
+        if (MAX_BYTES_PER_SECOND <= 0) {
+            return 0;
+        }
+        if (THROTTLE_HOURS.isBlank()) {
+            return MAX_BYTES_PER_SECOND;
+        }
+        String[] hours = THROTTLE_HOURS.split("-");
+        int from = Integer.parseInt(hours[0].trim());
+        int to = Integer.parseInt(hours[1].trim());
+        int now = LocalTime.now().getHour();
+        boolean inWindow = from <= to ? now >= from && now < to : now >= from || now < to;
+        return inWindow ? MAX_BYTES_PER_SECOND : 0;
+    }
+
+    private static void throttle(int bytes) throws IOException {
+        long limit = currentLimit();
+        if (limit <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (throttleLock) {
+            long now = System.nanoTime();
+            long start = Math.max(nextSendNanos, now);
+            nextSendNanos = start + bytes * 1_000_000_000L / limit;
+            waitNanos = start - now;
+        }
+        if (waitNanos > 0) {
+            throttledMs.addAndGet(waitNanos / 1_000_000);
+            try {
+                Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while throttling upload", e);
+            }
+        }
+    }
+
+    // Chunk body written in small slices so the cap smooths the traffic instead of allowing 8 MB bursts
+    private static class ThrottledContent extends AbstractHttpContent {
+        private final byte[] buffer;
+        private final int offset;
+        private final int length;
+
+        ThrottledContent(String mimeType, byte[] buffer, int offset, int length) {
+            super(mimeType);
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public boolean retrySupported() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            for (int pos = 0; pos < length; pos += THROTTLE_SLICE) {
+                int n = Math.min(THROTTLE_SLICE, length - pos);
+                throttle(n);
+                out.write(buffer, offset + pos, n);
+            }
+            out.flush();
+        }
+    }
+
+    // ============ SESSION JOURNAL ============
+
+    private static Map<String, JournalEntry> readJournal() {
+        if (!Files.exists(JOURNAL_FILE)) {
+            return new TreeMap<>();
+        }
+        try {
+            Map<String, JournalEntry> journal = mapper.readValue(JOURNAL_FILE.toFile(), new TypeReference<TreeMap<String, JournalEntry>>() {});
+            long cutoff = System.currentTimeMillis() - SESSION_LIFETIME_MS;
+            journal.values().removeIf(e -> e.createdAt < cutoff);
+            return journal;
+        } catch (IOException e) {
+            System.err.println("⚠️ [UPLOAD] Could not read " + JOURNAL_FILE + ": " + e.getMessage());
+            return new TreeMap<>();
+        }
+    }
+
+    private static void writeJournal(Map<String, JournalEntry> journal) {
+        try {
+            Files.createDirectories(JOURNAL_FILE.getParent());
+            Path temp = JOURNAL_FILE.resolveSibling(JOURNAL_FILE.getFileName() + ".tmp");
+            mapper.writeValue(temp.toFile(), journal);
+            Files.move(temp, JOURNAL_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Losing the journal only costs the ability to resume after a restart
+            System.err.println("⚠️ [UPLOAD] Could not write " + JOURNAL_FILE + ": " + e.getMessage());
+        }
+    }
+
+    private static JournalEntry journalGet(String key) {
+        synchronized (journalLock) {
+            return readJournal().get(key);
+        }
+    }
+
+    private static void journalPut(String key, String sessionUri, long committedBytes, String prefixSha256) {
+        synchronized (journalLock) {
+            Map<String, JournalEntry> journal = readJournal();
+            JournalEntry entry = journal.computeIfAbsent(key, k -> {
+                JournalEntry created = new JournalEntry();
+                created.createdAt = System.currentTimeMillis();
+                return created;
+            });
+            entry.sessionUri = sessionUri;
+            entry.committedBytes = committedBytes;
+            entry.prefixSha256 = prefixSha256;
+            entry.updatedAt = System.currentTimeMillis();
+            writeJournal(journal);
+        }
+    }
+
+    private static void journalRemove(String key) {
+        synchronized (journalLock) {
+            Map<String, JournalEntry> journal = readJournal();
+            if (journal.remove(key) != null) {
+                writeJournal(journal);
+            }
+        }
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("chunkSize", CHUNK_SIZE);
+        stats.put("chunksSent", chunksSent.get());
+        stats.put("chunkRetries", chunkRetries.get());
+        stats.put("uploadsResumed", uploadsResumed.get());
+        stats.put("resumeMismatches", resumeMismatches.get());
+        stats.put("bandwidthCapKBps", MAX_BYTES_PER_SECOND / 1024);
+        stats.put("bandwidthCapActive", currentLimit() > 0);
+        stats.put("throttledMs", throttledMs.get());
+        return stats;
+    }
+}
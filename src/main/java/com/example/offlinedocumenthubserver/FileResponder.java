@@ -0,0 +1,390 @@
+package com.example.offlinedocumenthubserver;
+
+import io.javalin.http.Context;
+import org.eclipse.jetty.server.HttpOutput;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Streams a file to the client with HTTP Range support (RFC 9110 section 14):
+// single ranges answer 206 with Content-Range, several ranges answer multipart/byteranges.
+public class FileResponder {
+    private static final String CONTENT_TYPE = "application/octet-stream";
+    // More ranges than this (after merging) is treated as abuse and the whole file is sent
+    private static final int MAX_RANGES = 16;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // How bytes get from the file to the socket
+    enum Mode { STREAM, DIRECT, MAPPED }
+
+    // Responses at least this large use the zero-copy mode; smaller ones aren't worth it
+    private static final long ZERO_COPY_THRESHOLD = Long.getLong("odh.download.zeroCopyThreshold", 256 * 1024L);
+    // Windows keeps mapped files locked until the mapping is garbage collected, which would
+    // break deleteDocument, so there the default is direct buffers instead of mmap
+    private static final Mode ZERO_COPY_MODE = zeroCopyModeFromConfig();
+    private static final long MAP_WINDOW_SIZE = 8L * 1024 * 1024;
+    private static final int DIRECT_BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_POOLED_DIRECT_BUFFERS = 32;
+    private static final Queue<ByteBuffer> directBuffers = new ConcurrentLinkedQueue<>();
+
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private static final ModeStats streamStats = new ModeStats();
+    private static final ModeStats directStats = new ModeStats();
+    private static final ModeStats mappedStats = new ModeStats();
+
+    // A requested byte range, both ends inclusive
+    record ByteRange(long start, long end) {
+        long length() { return end - start + 1; }
+        String contentRange(long total) { return "bytes " + start + "-" + end + "/" + total; }
+    }
+
+    // What was sent: status code and the first byte offset (0 for full responses)
+    public record Result(int status, long firstByte) {}
+
+    private static Mode zeroCopyModeFromConfig() {
+        Mode platformDefault = System.getProperty("os.name", "").toLowerCase().contains("win") ? Mode.DIRECT : Mode.MAPPED;
+        String value = System.getProperty("odh.download.zeroCopyMode");
+        if (value == null || value.isBlank()) {
+            return platformDefault;
+        }
+        try {
+            return Mode.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("⚠️ [DOWNLOAD] Unknown odh.download.zeroCopyMode '" + value + "' - using " + platformDefault);
+            return platformDefault;
+        }
+    }
+
+    public static Result serve(Context ctx, File file, String etag, String downloadName) throws IOException {
+        return serve(ctx, file, etag, downloadName, ZERO_COPY_MODE);
+    }
+
+    // zeroCopyMode: how large responses are sent; Benchmark passes each mode in turn
+    static Result serve(Context ctx, File file, String etag, String downloadName, Mode zeroCopyMode) throws IOException {
+        long length = file.length();
+        ctx.header("Accept-Ranges", "bytes");
+        ctx.header("Content-Disposition", "attachment; filename=\"" + downloadName + "\"");
+
+        List<ByteRange> ranges = null;
+        String rangeHeader = ctx.header("Range");
+        if (rangeHeader != null && ifRangeSatisfied(ctx.header("If-Range"), etag, file.lastModified())) {
+            ranges = parseRanges(rangeHeader, length);
+            if (ranges != null && ranges.isEmpty()) {
+                ctx.status(416);
+                ctx.header("Content-Range", "bytes */" + length);
+                return new Result(416, 0);
+            }
+        }
+
+        if (ranges == null) {
+            ctx.status(200);
+            ctx.contentType(CONTENT_TYPE);
+            ctx.header("Content-Length", String.valueOf(length));
+            sendRanges(ctx, file, List.of(new ByteRange(0, length - 1)), null, length, zeroCopyMode);
+            return new Result(200, 0);
+        }
+
+        ctx.status(206);
+        if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+            ctx.contentType(CONTENT_TYPE);
+            ctx.header("Content-Range", range.contentRange(length));
+            ctx.header("Content-Length", String.valueOf(range.length()));
+            sendRanges(ctx, file, ranges, null, length, zeroCopyMode);
+        } else {
+            String boundary = UUID.randomUUID().toString().replace("-", "");
+            ctx.contentType("multipart/byteranges; boundary=" + boundary);
+            ctx.header("Content-Length", String.valueOf(multipartLength(ranges, boundary, length)));
+            sendRanges(ctx, file, ranges, boundary, length, zeroCopyMode);
+        }
+        return new Result(206, ranges.get(0).start());
+    }
+
+    // If-Range: a strong ETag must match exactly, or a date must equal Last-Modified
+    static boolean ifRangeSatisfied(String ifRange, String etag, long lastModifiedMillis) {
+        if (ifRange == null) {
+            return true;
+        }
+        String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            return etag != null && !value.startsWith("W/") && value.equals(etag);
+        }
+        try {
+            long date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().getEpochSecond();
+            return date == lastModifiedMillis / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    // Returns null when the header should be ignored (malformed, or too many ranges),
+    // an empty list when nothing is satisfiable, otherwise the merged ranges in file order.
+    static List<ByteRange> parseRanges(String header, long length) {
+        String value = header.trim();
+        if (!value.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+
+        List<ByteRange> ranges = new ArrayList<>();
+        for (String spec : value.substring(6).split(",")) {
+            spec = spec.trim();
+            if (spec.isEmpty()) {
+                continue;
+            }
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            try {
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                long start;
+                long end;
+                if (first.isEmpty()) {
+                    // Suffix range: the last N bytes
+                    long suffix = Long.parseLong(last);
+                    if (suffix <= 0) {
+                        continue;
+                    }
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(first);
+                    end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+                    if (start < 0 || (!last.isEmpty() && Long.parseLong(last) < start)) {
+                        return null;
+                    }
+                }
+                if (start < length && start <= end) {
+                    ranges.add(new ByteRange(start, end));
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        List<ByteRange> merged = merge(ranges);
+        return merged.size() > MAX_RANGES ? null : merged;
+    }
+
+    private static List<ByteRange> merge(List<ByteRange> ranges) {
+        List<ByteRange> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingLong(ByteRange::start));
+        List<ByteRange> merged = new ArrayList<>();
+        for (ByteRange range : sorted) {
+            if (!merged.isEmpty() && range.start() <= merged.get(merged.size() - 1).end() + 1) {
+                ByteRange previous = merged.remove(merged.size() - 1);
+                merged.add(new ByteRange(previous.start(), Math.max(previous.end(), range.end())));
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
+
+    private static String partHeader(String boundary, ByteRange range, long total) {
+        return "\r\n--" + boundary + "\r\n" +
+                "Content-Type: " + CONTENT_TYPE + "\r\n" +
+                "Content-Range: " + range.contentRange(total) + "\r\n\r\n";
+    }
+
+    private static String closingBoundary(String boundary) {
+        return "\r\n--" + boundary + "--\r\n";
+    }
+
+    private static long multipartLength(List<ByteRange> ranges, String boundary, long total) {
+        long size = 0;
+        for (ByteRange range : ranges) {
+            size += partHeader(boundary, range, total).getBytes(StandardCharsets.US_ASCII).length + range.length();
+        }
+        return size + closingBoundary(boundary).getBytes(StandardCharsets.US_ASCII).length;
+    }
+
+    private static void sendRanges(Context ctx, File file, List<ByteRange> ranges, String boundary, long total,
+                                   Mode zeroCopyMode) throws IOException {
+        long bytes = 0;
+        for (ByteRange range : ranges) {
+            bytes += range.length();
+        }
+
+        OutputStream out = ctx.res().getOutputStream();
+        // Direct and mapped modes hand NIO buffers straight to Jetty's output
+        HttpOutput httpOutput = out instanceof HttpOutput jettyOutput ? jettyOutput : null;
+        Mode mode = bytes >= ZERO_COPY_THRESHOLD && httpOutput != null ? zeroCopyMode : Mode.STREAM;
+
+        long startNanos = System.nanoTime();
+        long startCpu = currentThreadCpuTime();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            for (ByteRange range : ranges) {
+                if (boundary != null) {
+                    out.write(partHeader(boundary, range, total).getBytes(StandardCharsets.US_ASCII));
+                }
+                switch (mode) {
+                    case MAPPED -> copyRangeMapped(channel, range, httpOutput);
+                    case DIRECT -> copyRangeDirect(channel, range, httpOutput);
+                    default -> copyRange(channel, range, target);
+                }
+            }
+            if (boundary != null) {
+                out.write(closingBoundary(boundary).getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        out.flush();
+        long endCpu = startCpu < 0 ? -1 : currentThreadCpuTime();
+        statsFor(mode).record(bytes, System.nanoTime() - startNanos, endCpu < 0 ? -1 : endCpu - startCpu);
+    }
+
+    // Heap path: file -> heap buffer -> Jetty's buffer -> socket
+    private static void copyRange(FileChannel channel, ByteRange range, WritableByteChannel target) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = range.start();
+        long remaining = range.length();
+        while (remaining > 0) {
+            buffer.clear();
+            if (remaining < buffer.capacity()) {
+                buffer.limit((int) remaining);
+            }
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("File shrank while it was being sent");
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            position += read;
+            remaining -= read;
+        }
+    }
+
+    // Direct path: file -> off-heap buffer -> socket, no copy through the Java heap
+    private static void copyRangeDirect(FileChannel channel, ByteRange range, HttpOutput output) throws IOException {
+        ByteBuffer buffer = directBuffers.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+        }
+        try {
+            long position = range.start();
+            long remaining = range.length();
+            while (remaining > 0) {
+                buffer.clear();
+                if (remaining < buffer.capacity()) {
+                    buffer.limit((int) remaining);
+                }
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("File shrank while it was being sent");
+                }
+                buffer.flip();
+                // Blocking write: returns once Jetty has consumed the buffer
+                output.write(buffer);
+                position += read;
+                remaining -= read;
+            }
+        } finally {
+            if (directBuffers.size() < MAX_POOLED_DIRECT_BUFFERS) {
+                directBuffers.offer(buffer);
+            }
+        }
+    }
+
+    // Mapped path: page cache -> socket. The file is mapped in windows so huge files don't need one huge mapping.
+    private static void copyRangeMapped(FileChannel channel, ByteRange range, HttpOutput output) throws IOException {
+        long position = range.start();
+        long remaining = range.length();
+        while (remaining > 0) {
+            long window = Math.min(remaining, MAP_WINDOW_SIZE);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, window);
+            output.write(mapped);
+            position += window;
+            remaining -= window;
+        }
+    }
+
+    // -1 when it can't be measured: the JVM reports no CPU time for virtual threads, which run the
+    // handlers by default (see HttpExecution)
+    private static long currentThreadCpuTime() {
+        return threadMXBean.isCurrentThreadCpuTimeSupported() ? threadMXBean.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static ModeStats statsFor(Mode mode) {
+        return switch (mode) {
+            case MAPPED -> mappedStats;
+            case DIRECT -> directStats;
+            default -> streamStats;
+        };
+    }
+
+    // Per-mode totals so the modes can be compared on real traffic (throughput and CPU per GB)
+    private static class ModeStats {
+        private final AtomicLong responses = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong wallNanos = new AtomicLong();
+        private final AtomicLong cpuNanos = new AtomicLong();
+        // Bytes of the responses whose CPU time could be measured (sent from platform threads)
+        private final AtomicLong cpuBytes = new AtomicLong();
+
+        // cpuTimeNanos is -1 when the sending thread's CPU time is unknown
+        void record(long sentBytes, long elapsedNanos, long cpuTimeNanos) {
+            responses.incrementAndGet();
+            bytes.addAndGet(sentBytes);
+            wallNanos.addAndGet(elapsedNanos);
+            if (cpuTimeNanos >= 0) {
+                cpuNanos.addAndGet(cpuTimeNanos);
+                cpuBytes.addAndGet(sentBytes);
+            }
+        }
+
+        Map<String, Object> toMap() {
+            long totalBytes = bytes.get();
+            double gigabytes = cpuBytes.get() / (1024.0 * 1024.0 * 1024.0);
+            double seconds = wallNanos.get() / 1_000_000_000.0;
+            Map<String, Object> map = new HashMap<>();
+            map.put("responses", responses.get());
+            map.put("bytes", totalBytes);
+            map.put("throughputMBps", seconds == 0 ? 0.0 : totalBytes / (1024.0 * 1024.0) / seconds);
+            // Null when no response of this mode was measurable
+            map.put("cpuMsPerGB", gigabytes == 0 ? null : cpuNanos.get() / 1_000_000.0 / gigabytes);
+            map.put("cpuMeasuredBytes", cpuBytes.get());
+            return map;
+        }
+    }
+
+    // Totals for one mode: responses, bytes, throughputMBps and cpuMsPerGB
+    static Map<String, Object> statsOf(Mode mode) {
+        return statsFor(mode).toMap();
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("zeroCopyMode", ZERO_COPY_MODE.name().toLowerCase());
+        stats.put("zeroCopyThreshold", ZERO_COPY_THRESHOLD);
+        stats.put("stream", streamStats.toMap());
+        stats.put("direct", directStats.toMap());
+        stats.put("mapped", mappedStats.toMap());
+        return stats;
+    }
+}
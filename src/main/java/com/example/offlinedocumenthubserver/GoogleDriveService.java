@@ -1,48 +1,32 @@
 package com.example.offlinedocumenthubserver;
 
-import com.google.api.client.auth.oauth2.Credential;
-import com.google.api.client.extensions.java6.auth.oauth2.AuthorizationCodeInstalledApp;
-import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
-import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
-import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
-import com.google.api.client.http.FileContent;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.JsonFactory;
-import com.google.api.client.json.gson.GsonFactory;
-import com.google.api.client.util.store.FileDataStoreFactory;
-import com.google.api.services.drive.Drive;
-import com.google.api.services.drive.DriveScopes;
-import com.google.api.services.drive.model.File;
-import com.google.api.services.drive.model.FileList;
-
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.security.GeneralSecurityException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
 
 public class GoogleDriveService {
-    private static final String APPLICATION_NAME = "Offline Document Hub";
-    private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
-    private static final String CLIENT_SECRETS_FILE_PATH = "/client_secret.json";
-    private static final String TOKENS_DIRECTORY_PATH = "tokens";
-    private static final String PARENT_BACKUP_FOLDER_NAME = "OfflineDocumentHub_Backups";
-
-    private Drive driveService;
-    private String parentFolderId;
+    // Where backup sets go (Google Drive unless configured otherwise)
+    private final BackupTarget target;
 
     // Progress tracking
     private volatile int currentProgress = 0;
     private volatile String currentStatus = "";
     private volatile boolean isBackupRunning = false;
     private volatile String currentBackupId = "";
+    // Start time of the current backup set; names its artifacts
+    private volatile Date backupTime = new Date();
+    // Bytes handed to the target during the current backup
+    private final AtomicLong uploadedBytes = new AtomicLong();
+    // Size and SHA-256 of each artifact of the current backup set, as received by the target
+    private final Map<String, Map<String, Object>> artifacts = new java.util.concurrent.ConcurrentHashMap<>();
 
     // Add progress callback interface
     public interface ProgressCallback {
@@ -56,87 +40,41 @@ public class GoogleDriveService {
     }
 
     public GoogleDriveService() {
-        System.out.println("🔧 [INIT] Starting GoogleDriveService initialization (User OAuth Flow)...");
-
-        try {
-            final NetHttpTransport HTTP_TRANSPORT = GoogleNetHttpTransport.newTrustedTransport();
-
-            // Authorize as a user.
-            Credential credential = authorize(HTTP_TRANSPORT);
-
-            // Build the Drive service
-            System.out.println("🔧 [INIT] Building Drive service...");
-            driveService = new Drive.Builder(HTTP_TRANSPORT, JSON_FACTORY, credential)
-                    .setApplicationName(APPLICATION_NAME)
-                    .build();
-            System.out.println("✅ [INIT] Google Drive service initialized successfully!");
-
-            // Initialize parent backup folder
-            initializeParentFolder();
-
-            // Quick API test
-            System.out.println("🔧 [INIT] Testing API connection...");
-            driveService.about().get().setFields("user").execute();
-            System.out.println("✅ [INIT] API connection test successful! User: " + driveService.about().get().setFields("user").execute().getUser().getEmailAddress());
-            System.out.println("✅ [INIT] Ready to perform backups!");
-
-        } catch (Exception e) {
-            System.err.println("❌ [INIT] Initialization failed: " + e.getMessage());
-            e.printStackTrace();
-            driveService = null;
-        }
+        this(BackupTarget.fromConfig());
     }
 
-    private Credential authorize(final NetHttpTransport HTTP_TRANSPORT) throws IOException {
-        System.out.println("🔧 [AUTH] Loading client secrets from: " + CLIENT_SECRETS_FILE_PATH);
-        InputStream in = GoogleDriveService.class.getResourceAsStream(CLIENT_SECRETS_FILE_PATH);
-        if (in == null) {
-            throw new FileNotFoundException("Resource not found: " + CLIENT_SECRETS_FILE_PATH);
-        }
-
-        GoogleClientSecrets clientSecrets = GoogleClientSecrets.load(JSON_FACTORY, new InputStreamReader(in));
-        System.out.println("✅ [AUTH] Client secrets loaded successfully.");
-
-        GoogleAuthorizationCodeFlow flow = new GoogleAuthorizationCodeFlow.Builder(
-                HTTP_TRANSPORT, JSON_FACTORY, clientSecrets, Collections.singleton(DriveScopes.DRIVE))
-                .setDataStoreFactory(new FileDataStoreFactory(new java.io.File(TOKENS_DIRECTORY_PATH)))
-                .setAccessType("offline")
-                .build();
-
-        LocalServerReceiver receiver = new LocalServerReceiver.Builder().setPort(8888).build();
-        return new AuthorizationCodeInstalledApp(flow, receiver).authorize("defaultUser");
+    public GoogleDriveService(BackupTarget target) {
+        this.target = target;
     }
 
-    private void initializeParentFolder() throws Exception {
-        System.out.println("🔧 [FOLDER] Looking for parent backup folder: " + PARENT_BACKUP_FOLDER_NAME);
-
-        String query = "mimeType='application/vnd.google-apps.folder' and name='" + PARENT_BACKUP_FOLDER_NAME + "' and 'root' in parents and trashed=false";
-        FileList result = driveService.files().list()
-                .setQ(query)
-                .setSpaces("drive")
-                .setFields("files(id, name)")
-                .execute();
-
-        if (result.getFiles().isEmpty()) {
-            System.out.println("📁 [FOLDER] Parent folder not found, creating new one...");
-            File folderMetadata = new File();
-            folderMetadata.setName(PARENT_BACKUP_FOLDER_NAME);
-            folderMetadata.setMimeType("application/vnd.google-apps.folder");
-            folderMetadata.setDescription("Offline Document Hub Backup Storage");
-
-            File parentFolder = driveService.files().create(folderMetadata)
-                    .setFields("id, name")
-                    .execute();
-
-            parentFolderId = parentFolder.getId();
-            System.out.println("✅ [FOLDER] Parent folder created: " + PARENT_BACKUP_FOLDER_NAME + " (ID: " + parentFolderId + ")");
-        } else {
-            parentFolderId = result.getFiles().get(0).getId();
-            System.out.println("✅ [FOLDER] Found existing parent folder: " + PARENT_BACKUP_FOLDER_NAME + " (ID: " + parentFolderId + ")");
-        }
+    public BackupTarget getTarget() {
+        return target;
     }
 
+    // A full snapshot is taken every FULL_BACKUP_EVERY runs; the runs in between only carry changes
+    private static final int FULL_BACKUP_EVERY = Integer.getInteger("odh.backup.fullEvery", 7);
+    private static final String USER_COLUMNS = "user_id, username, password_hash, role, full_name";
+    private static final String DOCUMENT_COLUMNS = "doc_id, title, file_path, uploaded_by, upload_date, user_id, file_size";
+    private static final String ACTIVITY_LOG_COLUMNS = "log_id, user_id, action_type, action_details, timestamp";
+    private static final String MESSAGE_COLUMNS = "message_id, sender_id, receiver_id, message_text, sent_date, is_read";
+    // The SQL export is gzip-compressed unless -Dodh.backup.sqlCompression=none
+    private static final boolean SQL_GZIP = !"none".equalsIgnoreCase(System.getProperty("odh.backup.sqlCompression", "gzip"));
+    // Export tables concurrently on aligned snapshot connections (falls back to one connection if not possible)
+    private static final boolean SQL_PARALLEL_TABLES = !Boolean.getBoolean("odh.backup.sequentialExport");
+    // How long an interrupted backup set is continued rather than abandoned for a new one
+    private static final long RESUME_WINDOW_MS = Long.getLong("odh.backup.resumeWindowMs", 24L * 60 * 60 * 1000);
+    // Auto-increment ids are handed out at insert, not at commit, so a row with an id below the last
+    // exported one can still commit afterwards (concurrent inserts, batched activity logs). Incrementals
+    // re-read this many ids below the watermark as upserts to pick such rows up.
+    private static final long WATERMARK_MARGIN = Long.getLong("odh.backup.watermarkMargin", 1000);
+    private static final int PIPE_BLOCK_SIZE = 256 * 1024;
+    private static final int PIPE_MAX_BLOCKS = 32;
+
 public Map<String, Object> performBackup(String backupType, String createdBy) {
+    return performBackup(backupType, createdBy, false);
+}
+
+public Map<String, Object> performBackup(String backupType, String createdBy, boolean forceFull) {
     System.out.println("\n========================================");
     System.out.println("📦 [BACKUP] Starting backup process...");
     System.out.println("📦 [BACKUP] Type: " + backupType + ", Created by: " + createdBy);
@@ -147,42 +85,76 @@ public Map<String, Object> performBackup(String backupType, String createdBy) {
     currentBackupId = UUID.randomUUID().toString();
 
     try {
-        if (driveService == null) {
-            throw new Exception("Google Drive service not initialized");
-        }
-
-        if (parentFolderId == null) {
-            throw new Exception("Parent backup folder not available");
+        if (!target.isReady()) {
+            throw new Exception("Backup target " + target.getName() + " not available (" + target.getLocation() + ")");
         }
+        uploadedBytes.set(0);
+        artifacts.clear();
+        long backupStarted = System.currentTimeMillis();
 
         updateProgress(5, "Initializing backup system...");
 
-        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+        // A set interrupted by a failure or restart is continued in its folder; artifacts named after the
+        // set's start time let uploads that were in flight resume instead of starting over
+        BackupState.PendingBackup pending = BackupState.loadPending();
+        String folderId = null;
+        if (pending != null && target.getName().equals(pending.target)
+                && System.currentTimeMillis() - pending.startedAt < RESUME_WINDOW_MS
+                && target.hasBackupFolder(pending.folderId)) {
+            folderId = pending.folderId;
+            backupTime = new Date(pending.startedAt);
+            System.out.println("♻️ [BACKUP] Continuing interrupted backup set " + pending.backupSet);
+        } else {
+            backupTime = new Date();
+        }
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(backupTime);
         String backupFolderName = "DocumentHub_Backup_" + timestamp;
 
-        updateProgress(10, "Creating backup folder in Google Drive...");
-
-        File folderMetadata = new File();
-        folderMetadata.setName(backupFolderName);
-        folderMetadata.setMimeType("application/vnd.google-apps.folder");
-        folderMetadata.setParents(Collections.singletonList(parentFolderId));
-
-        File backupFolder = driveService.files().create(folderMetadata)
-                .setFields("id, name")
-                .execute();
-
-        String folderId = backupFolder.getId();
+        // Compare against what earlier backups already hold; only changes go into an incremental set
+        BackupState previous = BackupState.load();
+        boolean full = forceFull || previous.lastFullSet == null
+                || previous.incrementalsSinceFull >= FULL_BACKUP_EVERY - 1;
+        BackupState next = full ? new BackupState() : BackupState.load();
+        next.sequence = previous.sequence + 1;
+        if (full) {
+            next.lastFullSet = backupFolderName;
+            next.incrementalsSinceFull = 0;
+            next.chain = new ArrayList<>(List.of(backupFolderName));
+        } else {
+            next.incrementalsSinceFull++;
+            next.chain.add(backupFolderName);
+        }
+        System.out.println("📦 [BACKUP] Mode: " + (full ? "FULL" : "INCREMENTAL on top of " + previous.chain.get(previous.chain.size() - 1)));
+
+        if (folderId == null) {
+            updateProgress(10, "Creating backup folder (" + target.getName() + ")...");
+            folderId = target.createBackupFolder(backupFolderName);
+
+            BackupState.PendingBackup started = new BackupState.PendingBackup();
+            started.target = target.getName();
+            started.backupSet = backupFolderName;
+            started.folderId = folderId;
+            started.startedAt = backupTime.getTime();
+            BackupState.savePending(started);
+        } else {
+            updateProgress(10, "Continuing backup set " + backupFolderName + "...");
+        }
 
-        updateProgress(20, "Starting database backup...");
-        backupDatabase(folderId, backupType, createdBy);
+        updateProgress(20, full ? "Starting full database backup..." : "Starting incremental database backup...");
+        Map<String, Object> databaseSummary = backupDatabase(folderId, backupType, createdBy, previous, next, full);
 
-        updateProgress(60, "Starting documents backup...");
-        backupDocuments(folderId);
+        updateProgress(60, full ? "Starting documents backup..." : "Looking for changed documents...");
+        Map<String, Object> documentsSummary = backupDocuments(folderId, backupFolderName, previous, next, full);
 
         updateProgress(80, "Creating backup summary...");
-        createBackupInfoFile(folderId, backupFolderName, backupType, createdBy);
+        createBackupInfoFile(folderId, backupFolderName, backupType, createdBy, full, next.chain);
+        uploadBackupManifest(folderId, backupFolderName, backupType, createdBy, full, previous, next,
+                databaseSummary, documentsSummary);
 
         updateProgress(95, "Finalizing backup...");
+        // Only now does the next backup build on this one
+        next.save();
+        BackupState.clearPending();
         // Small delay to show completion
         Thread.sleep(1000);
 
@@ -192,11 +164,27 @@ public Map<String, Object> performBackup(String backupType, String createdBy) {
         result.put("message", "Backup completed successfully");
         result.put("folderId", folderId);
         result.put("folderName", backupFolderName);
-        result.put("parentFolder", PARENT_BACKUP_FOLDER_NAME);
+        result.put("parentFolder", target.getLocation());
+        result.put("target", target.getName());
         result.put("backupType", backupType);
+        result.put("backupMode", full ? "full" : "incremental");
+        result.put("restoreChain", next.chain);
+        result.put("changedFiles", documentsSummary.get("fileCount"));
+        result.put("changedBytes", documentsSummary.get("totalSize"));
+        // Summarized into backup_history: documents the set can restore, bytes it stored on the target
+        result.put("fileCount", next.files.size());
+        result.put("totalSize", uploadedBytes.get());
         result.put("createdBy", createdBy);
         result.put("timestamp", timestamp);
 
+        // Whole-run throughput, comparable between targets (e.g. mock vs local vs Drive)
+        long elapsedMs = Math.max(1, System.currentTimeMillis() - backupStarted);
+        result.put("uploadedBytes", uploadedBytes.get());
+        result.put("elapsedMs", elapsedMs);
+        result.put("throughputMBps", Math.round(uploadedBytes.get() / (1024.0 * 1024.0) / (elapsedMs / 1000.0) * 100) / 100.0);
+        System.out.println("📊 [BACKUP] " + uploadedBytes.get() + " bytes to " + target.getName() + " in " + elapsedMs + " ms ("
+                + result.get("throughputMBps") + " MB/s)");
+
         System.out.println("\n========================================");
         System.out.println("✅ [BACKUP] BACKUP COMPLETED!");
         System.out.println("========================================\n");
@@ -219,256 +207,612 @@ public Map<String, Object> performBackup(String backupType, String createdBy) {
     }
     return result;
 }
-private void backupDatabase(String folderId, String backupType, String createdBy) throws Exception {
-    updateProgress(25, "Preparing database export...");
+    // Exports one table (plus any statements that belong with it) on the given snapshot connection
+    private interface TableTask {
+        void run(SqlExporter exporter, Connection conn, Map<String, Object> rowCounts) throws Exception;
+    }
 
-    String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-    String sqlFileName = "database_backup_" + timestamp + ".sql";
-    java.io.File tempFile = new java.io.File(sqlFileName);
+    // Writes one self-contained part of the dump; with compression each part is its own gzip member,
+    // and concatenated members form one valid .gz file
+    private interface SectionBody {
+        void write(Writer writer) throws Exception;
+    }
 
-    try (Connection conn = DatabaseConnection.getConnection();
-         PrintWriter writer = new PrintWriter(new FileWriter(tempFile))) {
+private Map<String, Object> backupDatabase(String folderId, String backupType, String createdBy,
+                                           BackupState previous, BackupState next, boolean full) throws Exception {
+    updateProgress(25, "Preparing database export...");
 
-        writer.println("-- Database Backup - " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()));
-        writer.println("-- Backup Type: " + backupType);
-        writer.println("-- Created By: " + createdBy);
-        writer.println();
+    String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(backupTime);
+    String sqlFileName = (full ? "database_backup_" : "database_delta_") + timestamp + (SQL_GZIP ? ".sql.gz" : ".sql");
+
+    // Order matters for replay: users before the rows that reference them
+    Map<String, TableTask> tasks = new LinkedHashMap<>();
+    if (full) {
+        tasks.put("users", (exporter, conn, counts) -> counts.put("users", backupTable(exporter, conn, "users", USER_COLUMNS, 0, next)));
+        tasks.put("documents", (exporter, conn, counts) -> counts.put("documents", backupTable(exporter, conn, "documents", DOCUMENT_COLUMNS, 0, next)));
+    } else {
+        // Users and documents are small and updated in place, so each delta carries their current rows
+        tasks.put("users", (exporter, conn, counts) -> counts.put("users", upsertTable(exporter, conn, "users", USER_COLUMNS)));
+        tasks.put("documents", (exporter, conn, counts) -> counts.put("documents", upsertTable(exporter, conn, "documents", DOCUMENT_COLUMNS)));
+    }
+    // Activity logs and messages only grow, so a delta holds the rows past the last exported id (minus
+    // WATERMARK_MARGIN, for rows that committed late)
+    tasks.put("activity_logs", (exporter, conn, counts) -> counts.put("activity_logs", backupTable(exporter, conn, "activity_logs",
+            ACTIVITY_LOG_COLUMNS, full ? 0 : previous.watermarks.getOrDefault("activity_logs", 0L), next)));
+    tasks.put("messages", (exporter, conn, counts) -> {
+        counts.put("messages", backupMessages(exporter, conn, full ? 0 : previous.watermarks.getOrDefault("messages", 0L), next));
+        if (!full) {
+            counts.put("messages_marked_read", backupMessageReadFlags(exporter, conn, next));
+        }
+    });
+
+    List<String> header = new ArrayList<>(List.of(
+            "Database Backup - " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(backupTime),
+            "Backup Type: " + backupType,
+            "Created By: " + createdBy,
+            full ? "Backup Mode: FULL" : "Backup Mode: INCREMENTAL"));
+    if (!full) {
+        header.add("Apply after: " + previous.chain.get(previous.chain.size() - 1));
+    }
 
-        updateProgress(30, "Exporting users table...");
-        int userCount = backupTable(conn, writer, "users", "user_id, username, password_hash, role, full_name");
-        System.out.println("💾 Exported " + userCount + " users");
+    Map<String, Object> rowCounts = new LinkedHashMap<>();
+    // Row count of every table in the snapshot, whatever part of it this set exported
+    Map<String, Long> tableRows = new java.util.concurrent.ConcurrentSkipListMap<>();
+    AtomicLong totalRows = new AtomicLong();
+    AtomicReference<String> snapshotMode = new AtomicReference<>();
+    long[] elapsedNanos = {0};
+
+    // The export is streamed straight into the upload; no .sql file is written locally
+    long sqlBytes = uploadStream(folderId, sqlFileName, SQL_GZIP ? "application/gzip" : "application/sql", 50, out -> {
+        rowCounts.clear();
+        totalRows.set(0);
+        long started = System.nanoTime();
+        // All tables are read from one point in time, so the dump never holds rows whose references are missing
+        try (DatabaseSnapshot snapshot = DatabaseSnapshot.open(SQL_PARALLEL_TABLES ? tasks.size() : 1)) {
+            writeSqlSection(out, writer -> new SqlExporter(writer).writeHeader(header.toArray(new String[0])));
+
+            if (snapshot.getConnections().size() > 1) {
+                snapshotMode.set("aligned snapshot, " + snapshot.getConnections().size() + " connections");
+                exportTablesInParallel(out, snapshot.getConnections(), tasks, rowCounts, tableRows, totalRows);
+            } else {
+                snapshotMode.set("single snapshot connection");
+                Connection conn = snapshot.getConnections().get(0);
+                writeSqlSection(out, writer -> {
+                    SqlExporter exporter = new SqlExporter(writer);
+                    int step = 0;
+                    for (Map.Entry<String, TableTask> task : tasks.entrySet()) {
+                        updateProgress(30 + 5 * step++, "Exporting " + task.getKey() + "...");
+                        task.getValue().run(exporter, conn, rowCounts);
+                        tableRows.put(task.getKey(), countRows(conn, task.getKey()));
+                    }
+                    totalRows.addAndGet(exporter.getTotalRows());
+                });
+            }
 
-        updateProgress(35, "Exporting documents table...");
-        int docCount = backupTable(conn, writer, "documents", "doc_id, title, file_path, uploaded_by, upload_date, user_id, file_size");
-        System.out.println("💾 Exported " + docCount + " documents");
+            writeSqlSection(out, writer -> new SqlExporter(writer).writeFooter());
+        }
+        elapsedNanos[0] = System.nanoTime() - started;
+    });
+
+    long rowsPerSecond = elapsedNanos[0] == 0 ? 0 : totalRows.get() * 1_000_000_000L / elapsedNanos[0];
+    rowCounts.forEach((table, count) -> System.out.println("💾 Exported " + count + " " + table + " rows"));
+    System.out.println("💾 [BACKUP] " + totalRows.get() + " rows in " + elapsedNanos[0] / 1_000_000 + " ms ("
+            + rowsPerSecond + " rows/s, " + snapshotMode.get() + ")");
+    System.out.println("☁️ Uploaded: " + sqlFileName + " (" + sqlBytes + " bytes)");
+
+    Map<String, Object> summary = new LinkedHashMap<>();
+    summary.put("file", sqlFileName);
+    summary.put("compression", SQL_GZIP ? "gzip" : "none");
+    summary.put("bytes", sqlBytes);
+    summary.put("rows", rowCounts);
+    summary.put("tableRows", tableRows);
+    summary.put("rowsPerSecond", rowsPerSecond);
+    summary.put("snapshot", snapshotMode.get());
+    return summary;
+}
 
-        updateProgress(40, "Exporting activity logs...");
-        int logCount = backupTable(conn, writer, "activity_logs", "log_id, user_id, action_type, action_details, timestamp");
-        System.out.println("💾 Exported " + logCount + " activity logs");
+    private void writeSqlSection(OutputStream out, SectionBody body) throws Exception {
+        // The section must not close the shared stream it is written into
+        OutputStream shared = new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
 
-        updateProgress(45, "Exporting messages...");
-        int messageCount = backupMessages(conn, writer);
-        System.out.println("💾 Exported " + messageCount + " messages");
+            @Override
+            public void close() throws IOException {
+                out.flush();
+            }
+        };
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                SQL_GZIP ? new GZIPOutputStream(shared, 64 * 1024) : shared, StandardCharsets.UTF_8), 256 * 1024)) {
+            body.write(writer);
+        }
+    }
 
-        writer.flush();
+    // Each table is exported (and compressed) on its own connection and thread, and the sections are
+    // appended to the dump in table order, so later tables are prepared while earlier ones upload.
+    // The first table streams through a bounded pipe. The others are spooled to temp files: a streaming
+    // result set that had to wait for the upload of the tables before it could sit idle past the
+    // server's net_write_timeout, and the whole export would fail.
+    private void exportTablesInParallel(OutputStream out, List<Connection> connections, Map<String, TableTask> tasks,
+                                        Map<String, Object> rowCounts, Map<String, Long> tableRows,
+                                        AtomicLong totalRows) throws Exception {
+        List<String> tables = new ArrayList<>(tasks.keySet());
+        BoundedPipe pipe = new BoundedPipe(PIPE_BLOCK_SIZE, PIPE_MAX_BLOCKS / 2);
+        List<java.nio.file.Path> spools = new ArrayList<>();
+        List<Map<String, Object>> counts = new ArrayList<>();
+        List<AtomicReference<Exception>> failures = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+        java.util.concurrent.atomic.AtomicBoolean abandoned = new java.util.concurrent.atomic.AtomicBoolean();
 
-        updateProgress(50, "Uploading database backup to Google Drive...");
-        File fileMetadata = new File();
-        fileMetadata.setName(sqlFileName);
-        fileMetadata.setParents(Collections.singletonList(folderId));
-        FileContent mediaContent = new FileContent("application/sql", tempFile);
+        try {
+            for (int i = 0; i < tables.size(); i++) {
+                Map<String, Object> tableCounts = new LinkedHashMap<>();
+                AtomicReference<Exception> failure = new AtomicReference<>();
+                String table = tables.get(i);
+                TableTask task = tasks.get(table);
+                Connection conn = connections.get(i);
+                java.nio.file.Path spool = i == 0 ? null : Files.createTempFile("odh-backup-" + table + "-", ".part");
+                spools.add(spool);
+                counts.add(tableCounts);
+                failures.add(failure);
+
+                Thread worker = new Thread(() -> {
+                    try {
+                        if (spool == null) {
+                            exportTable(pipe.getOutputStream(), task, conn, table, tableCounts, tableRows, totalRows);
+                            pipe.getOutputStream().close();
+                        } else {
+                            try (OutputStream file = new java.io.BufferedOutputStream(Files.newOutputStream(spool), PIPE_BLOCK_SIZE)) {
+                                // Checked per write so a failed backup doesn't keep reading the table to the end
+                                exportTable(new FilterOutputStream(file) {
+                                    @Override
+                                    public void write(byte[] b, int off, int len) throws IOException {
+                                        if (abandoned.get()) {
+                                            throw new IOException("Backup abandoned");
+                                        }
+                                        file.write(b, off, len);
+                                    }
+                                }, task, conn, table, tableCounts, tableRows, totalRows);
+                            }
+                        }
+                    } catch (Exception e) {
+                        failure.set(e);
+                        if (spool == null) {
+                            pipe.failProducer(e);
+                        }
+                    }
+                }, "backup-sql-" + table);
+                worker.setDaemon(true);
+                workers.add(worker);
+                worker.start();
+            }
 
-        driveService.files().create(fileMetadata, mediaContent)
-                .setFields("id, name")
-                .execute();
+            for (int i = 0; i < tables.size(); i++) {
+                updateProgress(30 + 5 * i, "Exporting " + tables.get(i) + "...");
+                if (spools.get(i) == null) {
+                    try (InputStream in = pipe.getInputStream()) {
+                        in.transferTo(out);
+                    }
+                }
+                workers.get(i).join();
+                if (failures.get(i).get() != null) {
+                    throw failures.get(i).get();
+                }
+                if (spools.get(i) != null) {
+                    Files.copy(spools.get(i), out);
+                }
+                rowCounts.putAll(counts.get(i));
+            }
+        } catch (Exception e) {
+            // Stop the other exporters before their connections go back to the pool
+            abandoned.set(true);
+            pipe.failConsumer(e);
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            throw e;
+        } finally {
+            for (java.nio.file.Path spool : spools) {
+                if (spool != null) {
+                    Files.deleteIfExists(spool);
+                }
+            }
+        }
+    }
 
-        System.out.println("☁️ Uploaded: " + sqlFileName);
+    private void exportTable(OutputStream out, TableTask task, Connection conn, String table,
+                             Map<String, Object> tableCounts, Map<String, Long> tableRows,
+                             AtomicLong totalRows) throws Exception {
+        writeSqlSection(out, writer -> {
+            SqlExporter exporter = new SqlExporter(writer);
+            task.run(exporter, conn, tableCounts);
+            totalRows.addAndGet(exporter.getTotalRows());
+        });
+        tableRows.put(table, countRows(conn, table));
+    }
 
-    } finally {
-        if (tempFile.exists()) tempFile.delete();
+    private static long countRows(Connection conn, String tableName) throws Exception {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM " + tableName);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
     }
-}
-    private int backupTable(Connection conn, PrintWriter writer, String tableName, String columns) throws Exception {
-        writer.println("-- " + tableName + " Table");
+
+    // Exports rows whose id (the first column) is above afterId; 0 exports the whole table
+    private long backupTable(SqlExporter exporter, Connection conn, String tableName, String columns,
+                             long afterId, BackupState next) throws Exception {
+        exporter.comment(tableName + " Table");
+        String idColumn = columns.split(",")[0].trim();
+        String sql = "SELECT " + columns + " FROM " + tableName + " WHERE " + idColumn + " > ? ORDER BY 1";
+
+        long[] maxId = {afterId};
+        long count = exporter.export(conn, tableName, columns, sql, rescanFrom(afterId), afterId > 0 ? upsertClause(columns) : null,
+                rs -> maxId[0] = Math.max(maxId[0], rs.getLong(1)));
+        synchronized (next) {
+            next.watermarks.put(tableName, maxId[0]);
+        }
+        return count;
+    }
+
+    // Writes every row as an upsert and removes rows that no longer exist
+    private long upsertTable(SqlExporter exporter, Connection conn, String tableName, String columns) throws Exception {
+        exporter.comment(tableName + " Table (current rows)");
         String sql = "SELECT " + columns + " FROM " + tableName + " ORDER BY 1";
+        List<Long> ids = new ArrayList<>();
+        long count = exporter.export(conn, tableName, columns, sql, 0, upsertClause(columns), rs -> ids.add(rs.getLong(1)));
+        exporter.deleteOutside(tableName, columns.split(",")[0].trim(), ids);
+        return count;
+    }
 
-        try (PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
+    private static String upsertClause(String columns) {
+        String[] columnArray = columns.split(",\\s*");
+        StringBuilder update = new StringBuilder("\nON DUPLICATE KEY UPDATE ");
+        for (int i = 1; i < columnArray.length; i++) {
+            if (i > 1) update.append(", ");
+            update.append(columnArray[i]).append(" = VALUES(").append(columnArray[i]).append(")");
+        }
+        return update.toString();
+    }
 
-            int count = 0;
-            ResultSetMetaData metaData = rs.getMetaData();
-            int columnCount = metaData.getColumnCount();
+    // Where an incremental starts reading; 0 (a full export) stays 0
+    private static long rescanFrom(long watermark) {
+        return watermark > 0 ? Math.max(0, watermark - WATERMARK_MARGIN) : 0;
+    }
 
-            while (rs.next()) {
-                StringBuilder sqlBuilder = new StringBuilder();
-                sqlBuilder.append("INSERT INTO ").append(tableName).append(" (");
+    private long backupMessages(SqlExporter exporter, Connection conn, long afterId, BackupState next) throws Exception {
+        exporter.comment("Messages Table");
+        String sql = "SELECT " + MESSAGE_COLUMNS + " FROM messages WHERE message_id > ? ORDER BY message_id";
+
+        long[] maxId = {afterId};
+        long count = exporter.export(conn, "messages", MESSAGE_COLUMNS, sql, rescanFrom(afterId),
+                afterId > 0 ? upsertClause(MESSAGE_COLUMNS) : null, rs -> {
+            long id = rs.getLong(1);
+            maxId[0] = Math.max(maxId[0], id);
+            if (!rs.getBoolean(6)) {
+                next.unreadMessageIds.add(id);
+            }
+        });
+        synchronized (next) {
+            next.watermarks.put("messages", maxId[0]);
+        }
+        return count;
+    }
 
-                // Build column names
-                String[] columnArray = columns.split(",\\s*");
-                for (int i = 0; i < columnArray.length; i++) {
-                    if (i > 0) sqlBuilder.append(", ");
-                    sqlBuilder.append(columnArray[i]);
+    // Messages exported as unread earlier may have been read since; carry just the flag change
+    private int backupMessageReadFlags(SqlExporter exporter, Connection conn, BackupState next) throws Exception {
+        List<Long> candidates = new ArrayList<>(next.unreadMessageIds);
+        List<Long> nowRead = new ArrayList<>();
+        for (int start = 0; start < candidates.size(); start += 500) {
+            List<Long> batch = candidates.subList(start, Math.min(start + 500, candidates.size()));
+            StringBuilder sql = new StringBuilder("SELECT message_id FROM messages WHERE is_read = 1 AND message_id IN (");
+            for (int i = 0; i < batch.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(")");
+            try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                for (int i = 0; i < batch.size(); i++) {
+                    stmt.setLong(i + 1, batch.get(i));
                 }
-                sqlBuilder.append(") VALUES (");
-
-                // Build values
-                for (int i = 1; i <= columnArray.length; i++) {
-                    if (i > 1) sqlBuilder.append(", ");
-                    Object value = rs.getObject(i);
-                    if (value == null) {
-                        sqlBuilder.append("NULL");
-                    } else if (value instanceof String) {
-                        sqlBuilder.append("'").append(escapeSql((String) value)).append("'");
-                    } else if (value instanceof java.sql.Date) {
-                        sqlBuilder.append("'").append(value).append("'");
-                    } else if (value instanceof java.sql.Timestamp) {
-                        sqlBuilder.append("'").append(value).append("'");
-                    } else {
-                        sqlBuilder.append(value);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        nowRead.add(rs.getLong(1));
                     }
                 }
-                sqlBuilder.append(");");
-
-                writer.println(sqlBuilder.toString());
-                count++;
             }
-            return count;
         }
-    }
-
-    private int backupMessages(Connection conn, PrintWriter writer) throws Exception {
-        writer.println("-- Messages Table");
-        String sql = "SELECT message_id, sender_id, receiver_id, message_text, sent_date, is_read FROM messages ORDER BY message_id";
-
-        try (PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
 
-            int count = 0;
-            while (rs.next()) {
-                writer.printf("INSERT INTO messages (message_id, sender_id, receiver_id, message_text, sent_date, is_read) VALUES (%d, %d, %d, '%s', '%s', %b);%n",
-                        rs.getInt("message_id"),
-                        rs.getInt("sender_id"),
-                        rs.getInt("receiver_id"),
-                        escapeSql(rs.getString("message_text")),
-                        rs.getTimestamp("sent_date"),
-                        rs.getBoolean("is_read"));
-                count++;
+        for (int start = 0; start < nowRead.size(); start += 500) {
+            List<Long> batch = nowRead.subList(start, Math.min(start + 500, nowRead.size()));
+            StringBuilder update = new StringBuilder("UPDATE messages SET is_read = TRUE WHERE message_id IN (");
+            for (int i = 0; i < batch.size(); i++) {
+                if (i > 0) update.append(", ");
+                update.append(batch.get(i));
             }
-            return count;
+            exporter.statement(update.append(")").toString());
         }
+        next.unreadMessageIds.removeAll(nowRead);
+        return nowRead.size();
     }
 
-    private String escapeSql(String value) {
-        if (value == null) return "";
-        return value.replace("'", "''").replace("\\", "\\\\");
-    }
-
-private void backupDocuments(String folderId) throws Exception {
+private Map<String, Object> backupDocuments(String folderId, String backupSet, BackupState previous,
+                                            BackupState next, boolean full) throws Exception {
     updateProgress(65, "Scanning documents folder...");
 
     java.io.File sharedFolder = new java.io.File("shared_documents");
+    Map<String, Object> summary = new LinkedHashMap<>();
+    summary.put("archive", null);
+    summary.put("fileCount", 0);
+    summary.put("totalSize", 0L);
+    summary.put("changedFiles", List.of());
+    summary.put("deletedFiles", List.of());
+    summary.put("files", Map.of());
 
     if (!sharedFolder.exists() || !sharedFolder.isDirectory()) {
         System.out.println("⚠️ No documents folder, skipping");
         updateProgress(70, "No documents folder found - skipping");
-        return;
+        next.files.clear();
+        return summary;
     }
 
-    java.io.File[] files = sharedFolder.listFiles();
-    if (files == null || files.length == 0) {
-        System.out.println("⚠️ No documents found, skipping");
-        updateProgress(70, "No documents found - skipping");
-        return;
+    // Blobs live in fan-out subfolders, so walk the whole tree (skipping in-progress uploads)
+    java.io.File[] files = listDocumentFiles(sharedFolder);
+
+    // A file is new or changed if its size/mtime moved and its content hash differs from the recorded one
+    Map<String, BackupState.FileEntry> current = new TreeMap<>();
+    List<java.io.File> changed = new ArrayList<>();
+    List<String> changedPaths = new ArrayList<>();
+    long changedBytes = 0;
+    for (java.io.File file : files) {
+        String relativePath = relativeDocumentPath(sharedFolder, file);
+        BackupState.FileEntry old = previous.files.get(relativePath);
+        long size = file.length();
+        long lastModified = file.lastModified();
+
+        String hash;
+        if (old != null && old.size == size && old.lastModified == lastModified && old.sha256 != null) {
+            hash = old.sha256;
+        } else {
+            hash = HttpCaching.fileSha256(file);
+        }
+
+        if (!full && old != null && hash.equals(old.sha256)) {
+            current.put(relativePath, new BackupState.FileEntry(size, lastModified, hash, old.backupSet));
+        } else {
+            current.put(relativePath, new BackupState.FileEntry(size, lastModified, hash, backupSet));
+            changed.add(file);
+            changedPaths.add(relativePath);
+            changedBytes += size;
+        }
     }
 
-    updateProgress(70, "Creating documents archive (" + files.length + " files)...");
-    String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-    String zipFileName = "documents_backup_" + timestamp + ".zip";
-    java.io.File zipFile = new java.io.File(zipFileName);
+    List<String> deleted = new ArrayList<>();
+    if (!full) {
+        for (String path : previous.files.keySet()) {
+            if (!current.containsKey(path)) {
+                deleted.add(path);
+            }
+        }
+    }
+    next.files = current;
+    summary.put("changedFiles", changedPaths);
+    summary.put("deletedFiles", deleted);
+    // Every document with its size, mtime, SHA-256 and the set whose archive holds it; restores and
+    // the verify job check archived content against it
+    summary.put("files", current);
+    summary.put("fileCount", changed.size());
+    summary.put("totalSize", changedBytes);
+
+    System.out.println("📦 [BACKUP] Documents: " + files.length + " on disk, " + changed.size() + " to archive, " + deleted.size() + " deleted");
+    if (changed.isEmpty()) {
+        updateProgress(80, full ? "No documents found - skipping" : "No document changes since last backup");
+        return summary;
+    }
 
-    try (FileOutputStream fos = new FileOutputStream(zipFile);
-         ZipOutputStream zos = new ZipOutputStream(fos)) {
+    updateProgress(70, "Creating documents archive (" + changed.size() + " files)...");
+    String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(backupTime);
+    String zipFileName = (full ? "documents_backup_" : "documents_delta_") + timestamp + ".zip";
+    summary.put("archive", zipFileName);
+
+    // The archive is compressed while it uploads; nothing is staged on local disk.
+    // Entries are deflated in parallel, already-compressed formats (PDF, DOCX, ZIP...) are stored as-is
+    List<ParallelArchiver.Entry> entries = new ArrayList<>();
+    for (java.io.File file : changed) {
+        // Keep the relative path so blobs restore to the same place documents.file_path points at
+        entries.add(new ParallelArchiver.Entry(relativeDocumentPath(sharedFolder, file), file));
+    }
+    AtomicReference<ParallelArchiver.Stats> archiveStats = new AtomicReference<>();
+    long zipBytes = uploadStream(folderId, zipFileName, "application/zip", 80, out -> {
+        archiveStats.set(ParallelArchiver.write(entries, out, (done, total) -> {
+            // Update progress for each file (if many files)
+            if (total > 10) {
+                int fileProgress = 70 + (int)((done * 10.0) / total);
+                updateProgress(fileProgress, "Archiving documents (" + done + "/" + total + ")...");
+            }
+        }));
+    });
+
+    ParallelArchiver.Stats stats = archiveStats.get();
+    System.out.println("📦 [BACKUP] Archived " + stats.entries() + " files (" + stats.storedEntries() + " stored) in "
+            + stats.elapsedMs() + " ms, " + String.format("%.1f", stats.throughputMBps()) + " MB/s on "
+            + stats.threads() + " threads, ratio " + String.format("%.2f", stats.ratio()));
+    System.out.println("☁️ Uploaded: " + zipFileName + " (" + zipBytes + " bytes)");
+    return summary;
+}
+    // Produces the content of one uploaded artifact
+    interface StreamProducer {
+        void writeTo(OutputStream out) throws Exception;
+    }
 
-        int fileCount = 0;
-        for (java.io.File file : files) {
-            if (file.isFile()) {
-                ZipEntry zipEntry = new ZipEntry(file.getName());
-                zos.putNextEntry(zipEntry);
-                Files.copy(file.toPath(), zos);
-                zos.closeEntry();
-                fileCount++;
+    // Runs the producer on its own thread and uploads what it writes through a bounded pipe, using a
+    // upload of unknown length. Building the artifact and sending it overlap, and at
+    // most PIPE_MAX_BLOCKS * PIPE_BLOCK_SIZE bytes are buffered. Returns the number of bytes uploaded.
+    private long uploadStream(String folderId, String fileName, String mimeType, int progress,
+                              StreamProducer producer) throws Exception {
+        try {
+            return uploadStreamOnce(folderId, fileName, mimeType, progress, producer);
+        } catch (BackupTarget.ResumeMismatchException e) {
+            // The interrupted upload no longer matches; rebuild the artifact from scratch
+            System.out.println("♻️ [BACKUP] " + e.getMessage());
+            return uploadStreamOnce(folderId, fileName, mimeType, progress, producer);
+        }
+    }
 
-                // Update progress for each file (if many files)
-                if (files.length > 10) {
-                    int fileProgress = 70 + (int)((fileCount * 10.0) / files.length);
-                    updateProgress(fileProgress, "Archiving documents (" + fileCount + "/" + files.length + ")...");
-                }
+    private long uploadStreamOnce(String folderId, String fileName, String mimeType, int progress,
+                                  StreamProducer producer) throws Exception {
+        BoundedPipe pipe = new BoundedPipe(PIPE_BLOCK_SIZE, PIPE_MAX_BLOCKS);
+        AtomicReference<Exception> producerFailure = new AtomicReference<>();
+
+        Thread producerThread = new Thread(() -> {
+            try {
+                // Closing sends end-of-stream, so it must only happen on success. Producers close their
+                // writers in try-with-resources even when failing, hence the close-ignoring wrapper.
+                OutputStream out = pipe.getOutputStream();
+                producer.writeTo(new FilterOutputStream(out) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                });
+                out.close();
+            } catch (Exception e) {
+                producerFailure.set(e);
+                pipe.failProducer(e);
+            }
+        }, "backup-producer");
+        producerThread.setDaemon(true);
+        producerThread.start();
+
+        java.security.MessageDigest digest = java.security.MessageDigest.getInstance("SHA-256");
+        try {
+            target.upload(folderId, fileName, mimeType, new java.security.DigestInputStream(pipe.getInputStream(), digest), -1, bytes ->
+                    updateProgress(progress, "Uploading " + fileName + " (" + (bytes / (1024 * 1024)) + " MB sent)..."));
+        } catch (Exception e) {
+            pipe.failConsumer(e);
+            producerThread.join();
+            // failConsumer makes the producer's next write fail with e as its cause; only an error the
+            // producer hit on its own (bad query, disk) explains the upload better than e does
+            Exception produced = producerFailure.get();
+            if (produced != null && !(e instanceof BackupTarget.ResumeMismatchException) && !causedBy(produced, e)) {
+                throw produced;
             }
+            throw e;
         }
-        zos.finish();
 
-        System.out.println("📦 Created ZIP: " + zipFile.length() + " bytes");
+        producerThread.join();
+        if (producerFailure.get() != null) {
+            throw producerFailure.get();
+        }
+        uploadedBytes.addAndGet(pipe.getBytesTransferred());
+        recordArtifact(fileName, pipe.getBytesTransferred(), digest.digest());
+        return pipe.getBytesTransferred();
+    }
 
-        updateProgress(80, "Uploading documents to Google Drive...");
-        File fileMetadata = new File();
-        fileMetadata.setName(zipFileName);
-        fileMetadata.setParents(Collections.singletonList(folderId));
-        FileContent mediaContent = new FileContent("application/zip", zipFile);
+    // Producers may wrap the pipe's IOException (writers, JDBC), so look down the whole chain
+    private static boolean causedBy(Throwable error, Throwable cause) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t == cause) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        driveService.files().create(fileMetadata, mediaContent)
-                .setFields("id, name")
-                .execute();
+    private static java.io.File[] listDocumentFiles(java.io.File sharedFolder) throws java.io.IOException {
+        try (java.util.stream.Stream<java.nio.file.Path> paths = Files.walk(sharedFolder.toPath())) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(p -> !p.startsWith(UploadSessionManager.UPLOAD_DIR) && !p.getFileName().toString().endsWith(".part"))
+                    .map(java.nio.file.Path::toFile)
+                    .toArray(java.io.File[]::new);
+        }
+    }
 
-        System.out.println("☁️ Uploaded: " + zipFileName);
+    private static String relativeDocumentPath(java.io.File sharedFolder, java.io.File file) {
+        return sharedFolder.toPath().relativize(file.toPath()).toString().replace('\\', '/');
+    }
 
-    } finally {
-        if (zipFile.exists()) zipFile.delete();
+    // backup_manifest.json describes one backup set and where it sits in its restore chain
+    private void uploadBackupManifest(String folderId, String backupSet, String backupType, String createdBy,
+                                      boolean full, BackupState previous, BackupState next,
+                                      Map<String, Object> databaseSummary, Map<String, Object> documentsSummary) throws Exception {
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("backupSet", backupSet);
+        manifest.put("mode", full ? "full" : "incremental");
+        manifest.put("sequence", next.sequence);
+        manifest.put("createdAt", new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()));
+        manifest.put("backupType", backupType);
+        manifest.put("createdBy", createdBy);
+        manifest.put("baseFullBackup", next.lastFullSet);
+        manifest.put("previousBackup", full ? null : previous.chain.get(previous.chain.size() - 1));
+        manifest.put("restoreChain", next.chain);
+        manifest.put("database", databaseSummary);
+        manifest.put("documents", documentsSummary);
+        manifest.put("watermarks", next.watermarks);
+        manifest.put("artifacts", new TreeMap<>(artifacts));
+
+        uploadBytes(folderId, "backup_manifest.json", "application/json", BackupState.toJson(manifest));
+
+        System.out.println("☁️ Uploaded: backup_manifest.json");
     }
-}
-    private void createBackupInfoFile(String folderId, String folderName, String backupType, String createdBy) throws Exception {
+
+    private void createBackupInfoFile(String folderId, String folderName, String backupType, String createdBy,
+                                      boolean full, List<String> restoreChain) throws Exception {
         String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
         String infoContent = "Document Hub Backup Information\n" +
                 "==============================\n" +
                 "Backup Time: " + timestamp + "\n" +
                 "Backup Folder: " + folderName + "\n" +
                 "Backup Type: " + backupType + "\n" +
+                "Backup Mode: " + (full ? "FULL" : "INCREMENTAL") + "\n" +
                 "Created By: " + createdBy + "\n" +
-                "Parent Folder: " + PARENT_BACKUP_FOLDER_NAME + "\n" +
+                "Backup Target: " + target.getName() + " (" + target.getLocation() + ")\n" +
                 "Items Included:\n" +
-                "- Database backup (SQL format) with users, documents, activity logs, and messages\n" +
-                "- All documents (ZIP format)\n" +
+                (full
+                        ? "- Database backup (gzip-compressed SQL) with users, documents, activity logs, and messages\n" +
+                          "- All documents (ZIP format)\n"
+                        : "- Database changes since the previous backup (SQL format)\n" +
+                          "- New or changed documents only (ZIP format, omitted if nothing changed)\n") +
+                "- backup_manifest.json (contents and restore chain)\n" +
                 "- This summary file\n\n" +
+                "Restore Chain (apply in this order):\n" +
+                String.join("\n", restoreChain.stream().map(name -> "  " + name).toList()) + "\n\n" +
                 "Restore Instructions:\n" +
-                "1. Download all files from this folder\n" +
-                "2. Extract documents from the ZIP file\n" +
-                "3. Run the SQL file to restore database\n" +
-                "4. Place documents in shared_documents folder";
-
-        java.io.File tempFile = java.io.File.createTempFile("backup_info", ".txt");
-        Files.write(tempFile.toPath(), infoContent.getBytes());
+                "The server can restore this set itself: POST /api/backup/restore?backupSet=" + folderName + "\n" +
+                "(add &dryRun=true to only verify it, &scope=documents or &scope=database for a partial restore)\n" +
+                "To restore by hand:\n" +
+                "1. Download all files from every folder in the restore chain\n" +
+                "2. Extract the documents ZIP files into shared_documents, oldest first\n" +
+                "3. Run the SQL files against an empty database, oldest first (gunzip -c database_*.sql.gz | mysql odh_db)\n" +
+                "4. Remove files listed under deletedFiles in each backup_manifest.json";
+
+        uploadBytes(folderId, "BACKUP_INFO.txt", "text/plain", infoContent.getBytes(StandardCharsets.UTF_8));
+        System.out.println("☁️ Uploaded: BACKUP_INFO.txt");
+    }
 
+    private void uploadBytes(String folderId, String fileName, String mimeType, byte[] content) throws Exception {
         try {
-            File fileMetadata = new File();
-            fileMetadata.setName("BACKUP_INFO.txt");
-            fileMetadata.setParents(Collections.singletonList(folderId));
-            FileContent mediaContent = new FileContent("text/plain", tempFile);
-
-            driveService.files().create(fileMetadata, mediaContent)
-                    .setFields("id, name")
-                    .execute();
-
-            System.out.println("☁️ Uploaded: BACKUP_INFO.txt");
-
-        } finally {
-            tempFile.delete();
+            target.upload(folderId, fileName, mimeType, new ByteArrayInputStream(content), content.length, null);
+        } catch (BackupTarget.ResumeMismatchException e) {
+            target.upload(folderId, fileName, mimeType, new ByteArrayInputStream(content), content.length, null);
         }
+        uploadedBytes.addAndGet(content.length);
+        recordArtifact(fileName, content.length, java.security.MessageDigest.getInstance("SHA-256").digest(content));
     }
 
-    public List<Map<String, String>> listBackups() throws Exception {
-        List<Map<String, String>> backups = new ArrayList<>();
-
-        if (driveService == null) {
-            throw new Exception("Google Drive service not initialized");
-        }
-
-        String query = "mimeType='application/vnd.google-apps.folder' and name contains 'DocumentHub_Backup_' and '" + parentFolderId + "' in parents and trashed=false";
-        FileList result = driveService.files().list()
-                .setQ(query)
-                .setSpaces("drive")
-                .setFields("files(id, name, createdTime)")
-                .setOrderBy("createdTime desc")
-                .execute();
-
-        for (File file : result.getFiles()) {
-            Map<String, String> backup = new HashMap<>();
-            backup.put("id", file.getId());
-            backup.put("name", file.getName());
-            backup.put("createdTime", file.getCreatedTime().toString());
-            backup.put("parentFolder", PARENT_BACKUP_FOLDER_NAME);
-            backups.add(backup);
-        }
+    private void recordArtifact(String fileName, long size, byte[] sha256) {
+        Map<String, Object> artifact = new LinkedHashMap<>();
+        artifact.put("size", size);
+        artifact.put("sha256", HexFormat.of().formatHex(sha256));
+        artifacts.put(fileName, artifact);
+    }
 
-        return backups;
+    public List<Map<String, String>> listBackups() throws Exception {
+        return target.listBackups();
     }
 
     // Progress tracking methods
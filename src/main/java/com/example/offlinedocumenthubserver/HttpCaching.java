@@ -0,0 +1,145 @@
+package com.example.offlinedocumenthubserver;
+
+import io.javalin.http.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Helpers for conditional GET: ETag / Last-Modified headers and 304 Not Modified responses
+public class HttpCaching {
+    // Changes on every start so version-counter ETags from a previous run never match
+    public static final String BOOT_ID = Long.toHexString(System.currentTimeMillis());
+
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME;
+
+    // SHA-256 of files, reused while size and modification time stay the same
+    private static final Map<String, FileHash> fileHashes = new ConcurrentHashMap<>();
+
+    private record FileHash(long size, long lastModified, String hash) {}
+
+    // Sets the validators on the response and answers 304 if the client's copy is current.
+    // Returns true when the caller should stop and send no body.
+    public static boolean checkNotModified(Context ctx, String etag, long lastModifiedMillis) {
+        if (etag != null) {
+            ctx.header("ETag", etag);
+        }
+        if (lastModifiedMillis > 0) {
+            ctx.header("Last-Modified", formatHttpDate(lastModifiedMillis));
+        }
+        // Let clients keep a copy but always revalidate it
+        ctx.header("Cache-Control", "no-cache");
+
+        if (isNotModified(ctx.header("If-None-Match"), ctx.header("If-Modified-Since"), etag, lastModifiedMillis)) {
+            ctx.status(304);
+            return true;
+        }
+        return false;
+    }
+
+    // For handlers that set the validators before producing the body: an error response must not
+    // carry them, or the client would keep the error body as a valid copy of that version
+    public static void clearValidators(Context ctx) {
+        ctx.res().setHeader("ETag", null);
+        ctx.res().setHeader("Last-Modified", null);
+    }
+
+    static boolean isNotModified(String ifNoneMatch, String ifModifiedSince, String etag, long lastModifiedMillis) {
+        // If-None-Match takes precedence; If-Modified-Since is only used without it
+        if (ifNoneMatch != null) {
+            return etag != null && etagMatches(ifNoneMatch, etag);
+        }
+        if (ifModifiedSince != null && lastModifiedMillis > 0) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince.trim(), HTTP_DATE).toInstant().getEpochSecond();
+                return lastModifiedMillis / 1000 <= since;
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    // Weak comparison, as RFC 9110 requires for If-None-Match
+    static boolean etagMatches(String header, String etag) {
+        String target = stripWeak(etag);
+        for (String candidate : header.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*") || stripWeak(value).equals(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    public static String formatHttpDate(long millis) {
+        return HTTP_DATE.format(Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC));
+    }
+
+    public static String versionEtag(String collection, long version) {
+        return "\"" + collection + "-" + BOOT_ID + "-" + version + "\"";
+    }
+
+    public static String contentEtag(byte[] content) {
+        return "\"" + HexFormat.of().formatHex(sha256().digest(content), 0, 16) + "\"";
+    }
+
+    public static String fileEtag(File file) throws IOException {
+        return "\"" + fileSha256(file).substring(0, 32) + "\"";
+    }
+
+    public static String fileSha256(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+
+        FileHash cached = fileHashes.get(key);
+        if (cached != null && cached.size() == size && cached.lastModified() == lastModified) {
+            return cached.hash();
+        }
+
+        MessageDigest digest = sha256();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        String hash = HexFormat.of().formatHex(digest.digest());
+        fileHashes.put(key, new FileHash(size, lastModified, hash));
+        return hash;
+    }
+
+    // For callers that already hashed the content while writing it
+    public static void rememberFileHash(File file, String sha256) {
+        fileHashes.put(file.getAbsolutePath(), new FileHash(file.length(), file.lastModified(), sha256));
+    }
+
+    public static void forgetFile(File file) {
+        fileHashes.remove(file.getAbsolutePath());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
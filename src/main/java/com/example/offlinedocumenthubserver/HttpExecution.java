@@ -0,0 +1,209 @@
+package com.example.offlinedocumenthubserver;
+
+import io.javalin.Javalin;
+import io.javalin.config.JavalinConfig;
+import io.javalin.http.Context;
+import io.javalin.util.ConcurrencyUtil;
+import io.javalin.util.LoomUtil;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Decides which threads run the HTTP handlers and keeps latency numbers for them.
+//
+// PLATFORM: a bounded Jetty QueuedThreadPool. The pool size is the concurrency limit; a slow client
+//           holds a worker for the whole exchange, so a few hundred of them can stall everyone else.
+// VIRTUAL:  one virtual thread per request. Slow clients cost a parked continuation instead of a
+//           worker, so thousands of them are fine, but nothing limits concurrency at the HTTP layer
+//           any more. The database pool's waiter limit (odh.db.pool.maxWaiters) takes over that job.
+//
+// Left unset, Javalin picks virtual threads whenever the JVM offers them; setting odh.http.threads
+// makes the choice explicit so the two modes can be compared under the same load
+// (Benchmark load runs both against the same client-side load and prints their p99).
+public class HttpExecution {
+    enum Mode { PLATFORM, VIRTUAL }
+
+    private static final String MODE_SETTING = System.getProperty("odh.http.threads", "auto");
+    private static final int MAX_THREADS = Integer.getInteger("odh.http.maxThreads", 250);
+    private static final int MIN_THREADS = Integer.getInteger("odh.http.minThreads", 8);
+
+    private static final String START_ATTRIBUTE = "odh.requestStartNanos";
+
+    private static volatile Mode mode = Mode.PLATFORM;
+
+    // Latency histogram: bucket i covers up to BASE_MICROS * 2^(i / STEPS_PER_DOUBLING) microseconds,
+    // so each bucket is ~19% wider than the last and percentiles are accurate to about that much
+    private static final long BASE_MICROS = 100;
+    private static final int STEPS_PER_DOUBLING = 4;
+    private static final int BUCKETS = 80;
+
+    // Timed from the first before-handler, so in PLATFORM mode the wait in Jetty's queue for a free
+    // worker is not included (Jetty reads and stamps a request only once a worker has picked it up).
+    // Compare modes with Benchmark load, which measures on the client side, as well as these numbers.
+    // Downloads and chunk uploads run as long as the client's bandwidth allows; keeping them apart
+    // stops a few large transfers from drowning out the latency of ordinary API calls
+    private static final Histogram apiLatency = new Histogram();
+    private static final Histogram transferLatency = new Histogram();
+    private static final AtomicInteger inFlight = new AtomicInteger();
+    private static final AtomicInteger peakInFlight = new AtomicInteger();
+
+    // Must run inside Javalin.create, before the server is built
+    public static void configure(JavalinConfig config) {
+        configure(config, resolveMode());
+    }
+
+    // Benchmark picks the mode directly to run both under the same load
+    static void configure(JavalinConfig config, Mode threadMode) {
+        mode = threadMode;
+        ThreadPool threadPool;
+        if (mode == Mode.VIRTUAL) {
+            threadPool = LoomUtil.INSTANCE.getThreadPool("odh-http");
+        } else {
+            // Keep Javalin's own helper executors on platform threads too
+            ConcurrencyUtil.INSTANCE.setUseLoom(false);
+            QueuedThreadPool queued = new QueuedThreadPool(MAX_THREADS, Math.min(MIN_THREADS, MAX_THREADS));
+            queued.setName("odh-http");
+            threadPool = queued;
+        }
+        config.jetty.server(() -> new Server(threadPool));
+        System.out.println("🧵 [HTTP] Request handlers run on " + (mode == Mode.VIRTUAL
+                ? "virtual threads"
+                : "platform threads (max " + MAX_THREADS + ")"));
+    }
+
+    private static Mode resolveMode() {
+        boolean loom = ConcurrencyUtil.isLoomAvailable();
+        switch (MODE_SETTING.trim().toLowerCase()) {
+            case "platform":
+                return Mode.PLATFORM;
+            case "virtual":
+                if (!loom) {
+                    System.err.println("⚠️ [HTTP] Virtual threads requested but not available on this JVM, using platform threads");
+                    return Mode.PLATFORM;
+                }
+                return Mode.VIRTUAL;
+            case "auto":
+                return loom ? Mode.VIRTUAL : Mode.PLATFORM;
+            default:
+                System.err.println("⚠️ [HTTP] Unknown odh.http.threads value '" + MODE_SETTING + "', using platform threads");
+                return Mode.PLATFORM;
+        }
+    }
+
+    public static void installMetrics(Javalin app) {
+        app.before(ctx -> {
+            ctx.attribute(START_ATTRIBUTE, System.nanoTime());
+            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        });
+        // After-handlers run even when the endpoint threw, so every request that got a start mark is closed off
+        app.after(ctx -> {
+            Long start = ctx.attribute(START_ATTRIBUTE);
+            if (start == null) {
+                return;
+            }
+            inFlight.decrementAndGet();
+            long micros = (System.nanoTime() - start) / 1000;
+            (isTransfer(ctx) ? transferLatency : apiLatency).record(micros);
+        });
+    }
+
+    private static boolean isTransfer(Context ctx) {
+        String path = ctx.path();
+        return path.endsWith("/download")
+                || path.contains("/chunks/")
+                || ("POST".equals(ctx.method().name()) && path.equals("/api/documents"));
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("mode", mode.name().toLowerCase());
+        stats.put("maxThreads", mode == Mode.VIRTUAL ? "unbounded" : MAX_THREADS);
+        stats.put("inFlight", inFlight.get());
+        stats.put("peakInFlight", peakInFlight.get());
+        stats.put("api", apiLatency.snapshot());
+        stats.put("transfers", transferLatency.snapshot());
+        return stats;
+    }
+
+    // Clears the latency numbers, so each Benchmark run reports only its own requests
+    static void resetStats() {
+        apiLatency.reset();
+        transferLatency.reset();
+        peakInFlight.set(inFlight.get());
+    }
+
+    private static class Histogram {
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong sumMicros = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        void record(long micros) {
+            counts.incrementAndGet(bucketFor(micros));
+            total.incrementAndGet();
+            sumMicros.addAndGet(micros);
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts.set(i, 0);
+            }
+            total.set(0);
+            sumMicros.set(0);
+            maxMicros.set(0);
+        }
+
+        private static int bucketFor(long micros) {
+            if (micros <= BASE_MICROS) {
+                return 0;
+            }
+            double steps = Math.log((double) micros / BASE_MICROS) / Math.log(2) * STEPS_PER_DOUBLING;
+            return (int) Math.min(BUCKETS - 1, Math.ceil(steps));
+        }
+
+        private static double upperBoundMs(int bucket) {
+            return BASE_MICROS * Math.pow(2, (double) bucket / STEPS_PER_DOUBLING) / 1000.0;
+        }
+
+        Map<String, Object> snapshot() {
+            long[] copy = new long[BUCKETS];
+            long n = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                copy[i] = counts.get(i);
+                n += copy[i];
+            }
+            Map<String, Object> snap = new HashMap<>();
+            snap.put("count", total.get());
+            snap.put("avgMs", n == 0 ? 0.0 : sumMicros.get() / 1000.0 / total.get());
+            snap.put("p50Ms", percentile(copy, n, 0.50));
+            snap.put("p95Ms", percentile(copy, n, 0.95));
+            snap.put("p99Ms", percentile(copy, n, 0.99));
+            snap.put("maxMs", maxMicros.get() / 1000.0);
+            return snap;
+        }
+
+        private double percentile(long[] copy, long n, double q) {
+            if (n == 0) {
+                return 0.0;
+            }
+            long rank = (long) Math.ceil(q * n);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += copy[i];
+                if (seen >= rank) {
+                    // A bucket bound can overshoot what was actually seen; the last bucket is open-ended anyway
+                    double maxMs = maxMicros.get() / 1000.0;
+                    return i == BUCKETS - 1 ? maxMs : Math.min(maxMs, Math.round(upperBoundMs(i) * 100) / 100.0);
+                }
+            }
+            return maxMicros.get() / 1000.0;
+        }
+    }
+}
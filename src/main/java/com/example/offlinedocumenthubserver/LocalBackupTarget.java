@@ -0,0 +1,125 @@
+package com.example.offlinedocumenthubserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// Backup sets as plain folders in a local directory, e.g. a second disk or a NAS share mounted on the
+// server. Same layout as on Drive: <root>/DocumentHub_Backup_<timestamp>/<artifacts>.
+public class LocalBackupTarget implements BackupTarget {
+    private final Path root;
+
+    public LocalBackupTarget(String directory) {
+        this.root = Path.of(directory).toAbsolutePath().normalize();
+        try {
+            Files.createDirectories(root);
+            System.out.println("✅ [INIT] Local backup target ready: " + root);
+        } catch (IOException e) {
+            // A NAS that is not mounted yet may appear later; isReady() keeps checking
+            System.err.println("⚠️ [INIT] Local backup directory not available: " + root + " (" + e.getMessage() + ")");
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "local";
+    }
+
+    @Override
+    public String getLocation() {
+        return root.toString();
+    }
+
+    @Override
+    public boolean isReady() {
+        return Files.isDirectory(root) && Files.isWritable(root);
+    }
+
+    @Override
+    public boolean isReachable() {
+        return isReady();
+    }
+
+    @Override
+    public String createBackupFolder(String folderName) throws Exception {
+        Path folder = root.resolve(folderName);
+        Files.createDirectories(folder);
+        return folder.toString();
+    }
+
+    @Override
+    public boolean hasBackupFolder(String folderId) {
+        return Files.isDirectory(Path.of(folderId));
+    }
+
+    @Override
+    public long upload(String folderId, String fileName, String mimeType, InputStream content, long length,
+                       UploadListener listener) throws Exception {
+        Path folder = Path.of(folderId);
+        Path target = folder.resolve(fileName);
+        // Written under a temp name so an interrupted backup never leaves a truncated artifact behind
+        Path temp = folder.resolve(fileName + ".part");
+        long written = 0;
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            byte[] buffer = new byte[256 * 1024];
+            int n;
+            while ((n = content.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+                written += n;
+                if (listener != null) {
+                    listener.onBytesUploaded(written);
+                }
+            }
+        } catch (Exception e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    @Override
+    public InputStream download(String folderId, String fileName) throws Exception {
+        return Files.newInputStream(Path.of(folderId).resolve(fileName));
+    }
+
+    @Override
+    public long artifactSize(String folderId, String fileName) throws Exception {
+        Path artifact = Path.of(folderId).resolve(fileName);
+        return Files.isRegularFile(artifact) ? Files.size(artifact) : -1;
+    }
+
+    @Override
+    public List<Map<String, String>> listBackups() throws Exception {
+        List<Map<String, String>> backups = new ArrayList<>();
+        if (!Files.isDirectory(root)) {
+            return backups;
+        }
+        try (Stream<Path> folders = Files.list(root)) {
+            List<Path> sorted = folders
+                    .filter(Files::isDirectory)
+                    .filter(p -> p.getFileName().toString().startsWith("DocumentHub_Backup_"))
+                    .sorted(Comparator.comparing((Path p) -> p.getFileName().toString()).reversed())
+                    .toList();
+            for (Path folder : sorted) {
+                Map<String, String> backup = new HashMap<>();
+                backup.put("id", folder.toString());
+                backup.put("name", folder.getFileName().toString());
+                backup.put("createdTime", Files.readAttributes(folder, BasicFileAttributes.class).creationTime().toString());
+                backup.put("parentFolder", root.toString());
+                backups.add(backup);
+            }
+        }
+        return backups;
+    }
+}
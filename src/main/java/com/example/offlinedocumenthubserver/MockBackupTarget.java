@@ -0,0 +1,171 @@
+package com.example.offlinedocumenthubserver;
+
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// In-process stand-in for a remote backup service. Every call waits latencyMs and uploads are paced
+// to throughputKBps, so backup runs can be timed offline with a known, repeatable "network".
+// Only the size and SHA-256 of each artifact are kept (plus the content of small files such as
+// backup_manifest.json), so multi-GB backups don't fill the heap.
+public class MockBackupTarget implements BackupTarget {
+    private static final int KEEP_CONTENT_BYTES = 1024 * 1024;
+
+    public static class StoredArtifact {
+        public final long size;
+        public final String sha256;
+        public final byte[] content;
+
+        StoredArtifact(long size, String sha256, byte[] content) {
+            this.size = size;
+            this.sha256 = sha256;
+            this.content = content;
+        }
+    }
+
+    private final long latencyMs;
+    private final long throughputBytesPerSecond;
+    // folder id -> folder name, in creation order
+    private final Map<String, String> folders = new LinkedHashMap<>();
+    private final Map<String, String> folderCreated = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, StoredArtifact>> artifacts = new ConcurrentHashMap<>();
+
+    public MockBackupTarget(long latencyMs, long throughputKBps) {
+        this.latencyMs = Math.max(0, latencyMs);
+        this.throughputBytesPerSecond = Math.max(0, throughputKBps) * 1024;
+        System.out.println("✅ [INIT] Mock backup target: " + latencyMs + " ms latency, "
+                + (throughputKBps > 0 ? throughputKBps + " KB/s" : "unlimited"));
+    }
+
+    @Override
+    public String getName() {
+        return "mock";
+    }
+
+    @Override
+    public String getLocation() {
+        return "memory";
+    }
+
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    @Override
+    public boolean isReachable() {
+        return true;
+    }
+
+    @Override
+    public String createBackupFolder(String folderName) throws Exception {
+        simulateLatency();
+        String id = UUID.randomUUID().toString();
+        synchronized (folders) {
+            folders.put(id, folderName);
+        }
+        folderCreated.put(id, Instant.now().toString());
+        artifacts.put(id, new ConcurrentHashMap<>());
+        return id;
+    }
+
+    @Override
+    public boolean hasBackupFolder(String folderId) {
+        return artifacts.containsKey(folderId);
+    }
+
+    @Override
+    public long upload(String folderId, String fileName, String mimeType, InputStream content, long length,
+                       UploadListener listener) throws Exception {
+        Map<String, StoredArtifact> folder = artifacts.get(folderId);
+        if (folder == null) {
+            throw new IllegalArgumentException("Unknown backup folder: " + folderId);
+        }
+        simulateLatency();
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        java.io.ByteArrayOutputStream kept = new java.io.ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        long received = 0;
+        long started = System.nanoTime();
+        int n;
+        while ((n = content.read(buffer)) >= 0) {
+            digest.update(buffer, 0, n);
+            if (received + n <= KEEP_CONTENT_BYTES) {
+                kept.write(buffer, 0, n);
+            }
+            received += n;
+
+            // Sleep until the simulated link would have carried this many bytes
+            if (throughputBytesPerSecond > 0) {
+                long dueNanos = received * 1_000_000_000L / throughputBytesPerSecond;
+                long aheadMs = (dueNanos - (System.nanoTime() - started)) / 1_000_000;
+                if (aheadMs > 0) {
+                    Thread.sleep(aheadMs);
+                }
+            }
+            if (listener != null) {
+                listener.onBytesUploaded(received);
+            }
+        }
+
+        byte[] small = received <= KEEP_CONTENT_BYTES ? kept.toByteArray() : null;
+        folder.put(fileName, new StoredArtifact(received, HexFormat.of().formatHex(digest.digest()), small));
+        return received;
+    }
+
+    @Override
+    public InputStream download(String folderId, String fileName) throws Exception {
+        simulateLatency();
+        StoredArtifact artifact = getArtifacts(folderId).get(fileName);
+        if (artifact == null) {
+            throw new java.io.FileNotFoundException(fileName + " not in backup folder " + folderId);
+        }
+        if (artifact.content == null) {
+            throw new java.io.IOException(fileName + " is larger than " + KEEP_CONTENT_BYTES + " bytes; the mock target only kept its hash");
+        }
+        return new java.io.ByteArrayInputStream(artifact.content);
+    }
+
+    @Override
+    public long artifactSize(String folderId, String fileName) {
+        StoredArtifact artifact = getArtifacts(folderId).get(fileName);
+        return artifact != null ? artifact.size : -1;
+    }
+
+    @Override
+    public List<Map<String, String>> listBackups() throws Exception {
+        simulateLatency();
+        List<Map<String, String>> backups = new ArrayList<>();
+        synchronized (folders) {
+            folders.forEach((id, name) -> {
+                Map<String, String> backup = new HashMap<>();
+                backup.put("id", id);
+                backup.put("name", name);
+                backup.put("createdTime", folderCreated.get(id));
+                backup.put("parentFolder", getLocation());
+                backups.add(0, backup);
+            });
+        }
+        return backups;
+    }
+
+    // What a backup folder received; lets callers check the artifacts of a timed run
+    public Map<String, StoredArtifact> getArtifacts(String folderId) {
+        return artifacts.getOrDefault(folderId, Map.of());
+    }
+
+    private void simulateLatency() throws InterruptedException {
+        if (latencyMs > 0) {
+            Thread.sleep(latencyMs);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.offlinedocumenthubserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Minimal streaming multipart/form-data reader (RFC 7578).
+// Parts are read one after another straight from the request body, so a file part can be
+// written to disk while it arrives instead of being buffered by the servlet container first.
+public class MultipartStream {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_BYTES = 8 * 1024;
+
+    private final InputStream in;
+    // "\r\n--boundary": every delimiter, including the first, is matched with its leading CRLF
+    private final byte[] delimiter;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int pos = 0;
+    private int limit = 0;
+    private boolean eof = false;
+    private boolean finished = false;
+    private PartInputStream currentBody;
+
+    public static class Part {
+        private final String name;
+        private final String filename;
+        private final String contentType;
+        private final InputStream body;
+
+        Part(String name, String filename, String contentType, InputStream body) {
+            this.name = name;
+            this.filename = filename;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        public String getName() { return name; }
+        public String getFilename() { return filename; }
+        public String getContentType() { return contentType; }
+        public boolean isFile() { return filename != null; }
+        public InputStream getBody() { return body; }
+
+        // For small text fields only
+        public String readString(int maxBytes) throws IOException {
+            byte[] bytes = body.readNBytes(maxBytes + 1);
+            if (bytes.length > maxBytes) {
+                throw new IOException("Form field '" + name + "' is too long");
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    public MultipartStream(InputStream in, String boundary) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.US_ASCII);
+        // Pretend the body starts with CRLF so the first boundary looks like all the others
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        limit = 2;
+    }
+
+    // Extracts the boundary parameter from a multipart/form-data Content-Type, or null
+    public static String boundaryOf(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/form-data")) {
+            return null;
+        }
+        for (String param : contentType.split(";")) {
+            String trimmed = param.trim();
+            if (trimmed.toLowerCase(Locale.ROOT).startsWith("boundary=")) {
+                String value = trimmed.substring(9).trim();
+                if (value.startsWith("\"") && value.endsWith("\"") && value.length() >= 2) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value.isEmpty() ? null : value;
+            }
+        }
+        return null;
+    }
+
+    // Returns the next part, or null after the closing boundary. Unread data of the previous part is skipped.
+    public Part nextPart() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (currentBody == null) {
+            // Skip the preamble up to the first boundary
+            new PartInputStream().transferTo(OutputStream.nullOutputStream());
+        } else {
+            currentBody.transferTo(OutputStream.nullOutputStream());
+        }
+
+        // After a delimiter comes either "--" (end of body) or CRLF (another part)
+        if (!ensure(2)) {
+            throw new IOException("Unexpected end of multipart body");
+        }
+        if (buffer[pos] == '-' && buffer[pos + 1] == '-') {
+            finished = true;
+            return null;
+        }
+        skipLine();
+
+        Map<String, String> headers = readHeaders();
+        String disposition = headers.getOrDefault("content-disposition", "");
+        String name = dispositionParam(disposition, "name");
+        String filename = dispositionParam(disposition, "filename");
+        currentBody = new PartInputStream();
+        return new Part(name, filename, headers.get("content-type"), currentBody);
+    }
+
+    private Map<String, String> readHeaders() throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        int total = 0;
+        while (true) {
+            String line = readLine();
+            total += line.length() + 2;
+            if (total > MAX_HEADER_BYTES) {
+                throw new IOException("Multipart headers too large");
+            }
+            if (line.isEmpty()) {
+                return headers;
+            }
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+    }
+
+    private static String dispositionParam(String disposition, String param) {
+        for (String piece : disposition.split(";")) {
+            String trimmed = piece.trim();
+            int eq = trimmed.indexOf('=');
+            if (eq > 0 && trimmed.substring(0, eq).trim().equalsIgnoreCase(param)) {
+                String value = trimmed.substring(eq + 1).trim();
+                if (value.startsWith("\"") && value.endsWith("\"") && value.length() >= 2) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            if (!ensure(1)) {
+                throw new IOException("Unexpected end of multipart headers");
+            }
+            byte b = buffer[pos++];
+            if (b == '\n') {
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+            line.write(b);
+            if (line.size() > MAX_HEADER_BYTES) {
+                throw new IOException("Multipart header line too long");
+            }
+        }
+    }
+
+    private void skipLine() throws IOException {
+        // Transport padding (spaces/tabs) may precede the CRLF
+        readLine();
+    }
+
+    // Makes sure at least n bytes are buffered; false if the stream ends first
+    private boolean ensure(int n) throws IOException {
+        while (limit - pos < n) {
+            if (eof) {
+                return false;
+            }
+            fill();
+        }
+        return true;
+    }
+
+    private void fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    private int indexOfDelimiter() {
+        int last = limit - delimiter.length;
+        outer:
+        for (int i = pos; i <= last; i++) {
+            for (int j = 0; j < delimiter.length; j++) {
+                if (buffer[i + j] != delimiter[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    // Body of one part: ends right before the next delimiter
+    private class PartInputStream extends InputStream {
+        private boolean done = false;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (done) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                if (limit - pos < delimiter.length && !eof) {
+                    fill();
+                    continue;
+                }
+                int index = indexOfDelimiter();
+                if (index == pos) {
+                    pos += delimiter.length;
+                    done = true;
+                    return -1;
+                }
+                // Bytes that can't be the start of a delimiter are safe to hand out
+                int safe = index >= 0 ? index - pos : limit - pos - (delimiter.length - 1);
+                if (safe <= 0) {
+                    if (eof) {
+                        throw new IOException("Multipart body ended without a closing boundary");
+                    }
+                    fill();
+                    continue;
+                }
+                int n = Math.min(len, safe);
+                System.arraycopy(buffer, pos, b, off, n);
+                pos += n;
+                return n;
+            }
+        }
+    }
+}
@@ -0,0 +1,540 @@
+package com.example.offlinedocumenthubserver;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// Writes a ZIP archive whose entries are compressed on several threads at once.
+// Every file is cut into blocks that are deflated independently on a fork-join pool (each block primed
+// with the previous 32 KB as dictionary, so the ratio stays close to single-threaded deflate) and the
+// results are written out in order as one ordinary deflate stream per entry. Per-block CRCs are combined,
+// so a deflated file is read once. Formats that are already compressed are stored as-is; their CRC has to
+// be in the local header (ZipInputStream rejects stored entries with a data descriptor), so it is computed
+// on the pool ahead of the writer. A stored file up to one block is kept from that pass and written from
+// memory; a larger one is read a second time when it is copied, usually from the page cache by then.
+// The output is a standard ZIP (with ZIP64 records when needed) readable by ZipFile, ZipInputStream and unzip.
+public class ParallelArchiver {
+    private static final int BLOCK_SIZE = Integer.getInteger("odh.backup.archiveBlockSize", 1024 * 1024);
+    private static final int THREADS = Integer.getInteger("odh.backup.archiveThreads", Runtime.getRuntime().availableProcessors());
+    private static final int LEVEL = Integer.getInteger("odh.backup.compressionLevel", Deflater.DEFAULT_COMPRESSION);
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    // Blocks compressed ahead of the writer; bounds memory to about IN_FLIGHT * BLOCK_SIZE
+    private static final int IN_FLIGHT = Math.max(4, THREADS * 3);
+
+    // Extensions whose content is already compressed; deflating them again costs CPU for nothing
+    private static final Set<String> STORED_EXTENSIONS = Set.of(
+            "pdf", "docx", "xlsx", "pptx", "odt", "ods", "odp", "zip", "gz", "7z", "rar",
+            "jpg", "jpeg", "png", "gif", "webp", "mp3", "mp4", "m4a", "avi", "mkv", "mov");
+
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+
+    private static ForkJoinPool pool;
+
+    public record Entry(String name, File file) {}
+
+    public interface ProgressListener {
+        void onEntryWritten(int entriesDone, int entriesTotal);
+    }
+
+    public record Stats(int entries, int storedEntries, long bytesIn, long bytesOut, long elapsedMs, int threads) {
+        public double throughputMBps() {
+            return elapsedMs == 0 ? 0 : (bytesIn / (1024.0 * 1024.0)) / (elapsedMs / 1000.0);
+        }
+
+        public double ratio() {
+            return bytesIn == 0 ? 1.0 : (double) bytesOut / bytesIn;
+        }
+    }
+
+    private static volatile Stats lastStats;
+
+    private static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(THREADS);
+        }
+        return pool;
+    }
+
+    public static boolean isStored(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && STORED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    // One piece of work handed to the pool: a deflated block, or the CRC of a stored file (with its
+    // content when it fits in one block)
+    private record BlockResult(byte[] compressed, long crc, long length) {}
+
+    private record Unit(int entryIndex, Future<BlockResult> result) {}
+
+    private record CentralEntry(byte[] name, boolean stored, long dosTime, long crc,
+                                long compressedSize, long size, long offset) {}
+
+    public static Stats write(List<Entry> entries, OutputStream target, ProgressListener listener) throws IOException {
+        long started = System.currentTimeMillis();
+        CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(target, 256 * 1024));
+        ForkJoinPool executor = pool();
+
+        // Plan the units for every entry up front; they are submitted to the pool in a sliding window
+        List<List<Callable<BlockResult>>> plans = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        for (Entry entry : entries) {
+            long size = entry.file().length();
+            sizes.add(size);
+            List<Callable<BlockResult>> units = new ArrayList<>();
+            if (isStored(entry.name())) {
+                units.add(() -> crcOf(entry.file(), size));
+            } else {
+                long blocks = Math.max(1, (size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+                for (long b = 0; b < blocks; b++) {
+                    long offset = b * BLOCK_SIZE;
+                    int length = (int) Math.min(BLOCK_SIZE, size - offset);
+                    boolean last = b == blocks - 1;
+                    units.add(() -> deflateBlock(entry.file(), offset, length, last));
+                }
+            }
+            plans.add(units);
+        }
+
+        Deque<Unit> window = new ArrayDeque<>();
+        // Next unit to submit: {entry index, unit index within the entry}
+        int[] cursor = {0, 0};
+        List<CentralEntry> central = new ArrayList<>();
+        long bytesIn = 0;
+        int storedCount = 0;
+
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                // Keep the pool busy with upcoming blocks, including those of later entries
+                refill(executor, plans, window, cursor);
+
+                Entry entry = entries.get(i);
+                long size = sizes.get(i);
+                byte[] name = entry.name().getBytes(StandardCharsets.UTF_8);
+                long dosTime = dosTime(entry.file().lastModified());
+                boolean stored = isStored(entry.name());
+                long offset = out.count;
+
+                if (stored) {
+                    BlockResult crc = await(window.pollFirst());
+                    writeLocalHeader(out, name, true, dosTime, crc.crc(), size);
+                    if (crc.compressed() != null) {
+                        out.write(crc.compressed());
+                    } else {
+                        copyFile(entry.file(), size, out);
+                    }
+                    central.add(new CentralEntry(name, true, dosTime, crc.crc(), size, size, offset));
+                    storedCount++;
+                } else {
+                    writeLocalHeader(out, name, false, dosTime, 0, size);
+                    long crc = 0;
+                    long compressedSize = 0;
+                    int units = plans.get(i).size();
+                    for (int u = 0; u < units; u++) {
+                        // Refill as we go so large files keep every thread busy
+                        refill(executor, plans, window, cursor);
+                        BlockResult block = await(window.pollFirst());
+                        out.write(block.compressed());
+                        compressedSize += block.compressed().length;
+                        crc = crc32Combine(crc, block.crc(), block.length());
+                    }
+                    writeDataDescriptor(out, crc, compressedSize, size);
+                    central.add(new CentralEntry(name, false, dosTime, crc, compressedSize, size, offset));
+                }
+                bytesIn += size;
+
+                if (listener != null) {
+                    listener.onEntryWritten(i + 1, entries.size());
+                }
+            }
+
+            writeCentralDirectory(out, central);
+            out.flush();
+        } finally {
+            // On failure, don't leave queued blocks running
+            for (Unit unit : window) {
+                unit.result().cancel(true);
+            }
+        }
+
+        Stats stats = new Stats(entries.size(), storedCount, bytesIn, out.count, System.currentTimeMillis() - started, THREADS);
+        lastStats = stats;
+        return stats;
+    }
+
+    private static void refill(ForkJoinPool executor, List<List<Callable<BlockResult>>> plans,
+                               Deque<Unit> window, int[] cursor) {
+        while (window.size() < IN_FLIGHT && cursor[0] < plans.size()) {
+            List<Callable<BlockResult>> units = plans.get(cursor[0]);
+            window.addLast(new Unit(cursor[0], executor.submit(units.get(cursor[1]))));
+            if (++cursor[1] == units.size()) {
+                cursor[0]++;
+                cursor[1] = 0;
+            }
+        }
+    }
+
+    private static BlockResult await(Unit unit) throws IOException {
+        try {
+            return unit.result().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while archiving", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Archiving failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    private static BlockResult deflateBlock(File file, long offset, int length, boolean last) throws IOException {
+        byte[] input = new byte[length];
+        byte[] dictionary = null;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            readFully(channel, ByteBuffer.wrap(input), offset, file);
+            if (offset > 0) {
+                int dictionaryLength = (int) Math.min(DICTIONARY_SIZE, offset);
+                dictionary = new byte[dictionaryLength];
+                readFully(channel, ByteBuffer.wrap(dictionary), offset - dictionaryLength, file);
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(input);
+
+        Deflater deflater = new Deflater(LEVEL, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(input);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, length / 2));
+            byte[] buffer = new byte[64 * 1024];
+            if (last) {
+                // The final block closes the deflate stream
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, n);
+                }
+            } else {
+                // A sync flush ends the block on a byte boundary so the next block can simply follow it
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, n);
+                } while (n == buffer.length || !deflater.needsInput());
+            }
+            return new BlockResult(compressed.toByteArray(), crc.getValue(), length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static BlockResult crcOf(File file, long size) throws IOException {
+        if (size <= BLOCK_SIZE) {
+            byte[] content = new byte[(int) size];
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                readFully(channel, ByteBuffer.wrap(content), 0, file);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            return new BlockResult(content, crc.getValue(), size);
+        }
+        CRC32 crc = new CRC32();
+        long remaining = size;
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            byte[] buffer = new byte[256 * 1024];
+            while (remaining > 0) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    throw new IOException(file.getName() + " changed while it was being archived");
+                }
+                crc.update(buffer, 0, n);
+                remaining -= n;
+            }
+        }
+        return new BlockResult(null, crc.getValue(), size);
+    }
+
+    private static void copyFile(File file, long size, OutputStream out) throws IOException {
+        long remaining = size;
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            byte[] buffer = new byte[256 * 1024];
+            while (remaining > 0) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    throw new IOException(file.getName() + " changed while it was being archived");
+                }
+                out.write(buffer, 0, n);
+                remaining -= n;
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, File file) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException(file.getName() + " changed while it was being archived");
+            }
+            position += n;
+        }
+    }
+
+    // ============ ZIP RECORDS ============
+
+    private static void writeLocalHeader(OutputStream out, byte[] name, boolean stored, long dosTime,
+                                         long crc, long size) throws IOException {
+        boolean zip64 = stored && size >= ZIP64_LIMIT;
+        writeInt(out, 0x04034b50L);
+        writeShort(out, zip64 || size >= ZIP64_LIMIT ? 45 : 20);
+        // Bit 11: UTF-8 names. Bit 3: sizes and CRC follow the data (deflated entries only)
+        writeShort(out, stored ? 0x0800 : 0x0808);
+        writeShort(out, stored ? 0 : 8);
+        writeInt(out, dosTime);
+        if (stored) {
+            writeInt(out, crc);
+            writeInt(out, zip64 ? ZIP64_LIMIT : size);
+            writeInt(out, zip64 ? ZIP64_LIMIT : size);
+        } else {
+            writeInt(out, 0);
+            writeInt(out, 0);
+            writeInt(out, 0);
+        }
+        writeShort(out, name.length);
+        writeShort(out, zip64 ? 20 : 0);
+        out.write(name);
+        if (zip64) {
+            writeShort(out, 0x0001);
+            writeShort(out, 16);
+            writeLong(out, size);
+            writeLong(out, size);
+        }
+    }
+
+    private static void writeDataDescriptor(OutputStream out, long crc, long compressedSize, long size) throws IOException {
+        writeInt(out, 0x08074b50L);
+        writeInt(out, crc);
+        if (compressedSize >= ZIP64_LIMIT || size >= ZIP64_LIMIT) {
+            writeLong(out, compressedSize);
+            writeLong(out, size);
+        } else {
+            writeInt(out, compressedSize);
+            writeInt(out, size);
+        }
+    }
+
+    private static void writeCentralDirectory(CountingOutputStream out, List<CentralEntry> entries) throws IOException {
+        long start = out.count;
+        for (CentralEntry e : entries) {
+            boolean bigSize = e.size() >= ZIP64_LIMIT;
+            boolean bigCompressed = e.compressedSize() >= ZIP64_LIMIT;
+            boolean bigOffset = e.offset() >= ZIP64_LIMIT;
+            int extraLength = (bigSize ? 8 : 0) + (bigCompressed ? 8 : 0) + (bigOffset ? 8 : 0);
+            boolean zip64 = extraLength > 0;
+
+            writeInt(out, 0x02014b50L);
+            writeShort(out, zip64 ? 45 : 20);
+            writeShort(out, zip64 ? 45 : 20);
+            writeShort(out, e.stored() ? 0x0800 : 0x0808);
+            writeShort(out, e.stored() ? 0 : 8);
+            writeInt(out, e.dosTime());
+            writeInt(out, e.crc());
+            writeInt(out, bigCompressed ? ZIP64_LIMIT : e.compressedSize());
+            writeInt(out, bigSize ? ZIP64_LIMIT : e.size());
+            writeShort(out, e.name().length);
+            writeShort(out, zip64 ? extraLength + 4 : 0);
+            writeShort(out, 0);
+            writeShort(out, 0);
+            writeShort(out, 0);
+            writeInt(out, 0);
+            writeInt(out, bigOffset ? ZIP64_LIMIT : e.offset());
+            out.write(e.name());
+            if (zip64) {
+                writeShort(out, 0x0001);
+                writeShort(out, extraLength);
+                if (bigSize) writeLong(out, e.size());
+                if (bigCompressed) writeLong(out, e.compressedSize());
+                if (bigOffset) writeLong(out, e.offset());
+            }
+        }
+        long end = out.count;
+        long size = end - start;
+        int count = entries.size();
+
+        if (count >= 0xFFFF || size >= ZIP64_LIMIT || start >= ZIP64_LIMIT) {
+            // ZIP64 end of central directory record and locator
+            writeInt(out, 0x06064b50L);
+            writeLong(out, 44);
+            writeShort(out, 45);
+            writeShort(out, 45);
+            writeInt(out, 0);
+            writeInt(out, 0);
+            writeLong(out, count);
+            writeLong(out, count);
+            writeLong(out, size);
+            writeLong(out, start);
+
+            writeInt(out, 0x07064b50L);
+            writeInt(out, 0);
+            writeLong(out, end);
+            writeInt(out, 1);
+        }
+
+        writeInt(out, 0x06054b50L);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeShort(out, Math.min(count, 0xFFFF));
+        writeShort(out, Math.min(count, 0xFFFF));
+        writeInt(out, Math.min(size, ZIP64_LIMIT));
+        writeInt(out, Math.min(start, ZIP64_LIMIT));
+        writeShort(out, 0);
+    }
+
+    private static long dosTime(long millis) {
+        LocalDateTime t = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if (t.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((long) (t.getYear() - 1980) << 25) | ((long) t.getMonthValue() << 21) | ((long) t.getDayOfMonth() << 16)
+                | ((long) t.getHour() << 11) | ((long) t.getMinute() << 5) | (t.getSecond() >> 1);
+    }
+
+    private static void writeShort(OutputStream out, int v) throws IOException {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+    }
+
+    private static void writeInt(OutputStream out, long v) throws IOException {
+        writeShort(out, (int) (v & 0xffff));
+        writeShort(out, (int) ((v >>> 16) & 0xffff));
+    }
+
+    private static void writeLong(OutputStream out, long v) throws IOException {
+        writeInt(out, v & 0xffffffffL);
+        writeInt(out, v >>> 32);
+    }
+
+    // ============ CRC32 COMBINATION (from zlib's crc32_combine) ============
+
+    static long crc32Combine(long crc1, long crc2, long len2) {
+        if (len2 <= 0) {
+            return crc1;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+
+        // Operator for one zero bit in odd
+        odd[0] = 0xedb88320L;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        gf2MatrixSquare(even, odd); // two zero bits
+        gf2MatrixSquare(odd, even); // four zero bits
+
+        // Apply len2 zero bytes to crc1
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((len2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(even, crc1);
+            }
+            len2 >>= 1;
+            if (len2 == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((len2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(odd, crc1);
+            }
+            len2 >>= 1;
+        } while (len2 != 0);
+
+        return crc1 ^ crc2;
+    }
+
+    private static long gf2MatrixTimes(long[] mat, long vec) {
+        long sum = 0;
+        int i = 0;
+        while (vec != 0) {
+            if ((vec & 1) != 0) {
+                sum ^= mat[i];
+            }
+            vec >>>= 1;
+            i++;
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] mat) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2MatrixTimes(mat, mat[n]);
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("threads", THREADS);
+        stats.put("blockSize", BLOCK_SIZE);
+        Stats last = lastStats;
+        if (last != null) {
+            stats.put("lastEntries", last.entries());
+            stats.put("lastStoredEntries", last.storedEntries());
+            stats.put("lastBytesIn", last.bytesIn());
+            stats.put("lastBytesOut", last.bytesOut());
+            stats.put("lastElapsedMs", last.elapsedMs());
+            stats.put("lastThroughputMBps", Math.round(last.throughputMBps() * 10) / 10.0);
+            stats.put("lastRatio", Math.round(last.ratio() * 1000) / 1000.0);
+        }
+        return stats;
+    }
+}
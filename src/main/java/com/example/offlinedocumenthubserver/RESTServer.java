@@ -1,19 +1,22 @@
 package com.example.offlinedocumenthubserver;
 import com.example.offlinedocumenthubserver.dto.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
-import io.javalin.http.UploadedFile;
+import io.javalin.http.HandlerType;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.sql.*;
 import java.sql.Date;
 import java.text.SimpleDateFormat;
@@ -22,20 +25,15 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class RESTServer {
     private static final int PORT = 8080;
     private static Javalin app;
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
-    // Session management - store active sessions
-    private static final Map<String, UserSession> activeSessions = new ConcurrentHashMap<>();
-//    private static final long SESSION_TIMEOUT = 24 * 60 * 60 * 1000; // 24 hours
-    private static final long SESSION_TIMEOUT = 10 * 60 * 1000; // 10 minutes in milliseconds
-    //A dedicated thread pool for long-running tasks
-    private static final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
 
 
     //A single, shared instance of the Google Drive service
@@ -46,21 +44,25 @@ public class RESTServer {
         objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
     }
     // Add a progress store for active backups
-    private static final Map<String, Map<String, Object>> activeBackupProgress = new ConcurrentHashMap<>();
+    static final Map<String, Map<String, Object>> activeBackupProgress = new ConcurrentHashMap<>();
 
     public static void startRESTServer() {
         app = Javalin.create(config -> {
             config.http.defaultContentType = "application/json";
+            HttpExecution.configure(config);
             config.plugins.enableCors(cors -> {
                 cors.add(it -> {
                     it.anyHost();
+                    it.exposeHeader(SignedTokens.RENEWAL_HEADER);
                 });
             });
-        }).start("0.0.0.0", PORT);
+        });
+        HttpExecution.installMetrics(app);
+        app.start("0.0.0.0", PORT);
 
         //Initialize Google Drive in the background
         System.out.println("🔧 [INIT] Starting Google Drive service initialization in background...");
-        backgroundExecutor.submit(() -> {
+        BackgroundExecutors.submit(BackgroundExecutors.Pool.INIT, () -> {
             try {
                 // This will run the one-time OAuth flow in the console
                 // without blocking the main server.
@@ -72,14 +74,32 @@ public class RESTServer {
         });
 
         setupRoutes();
-        startSessionCleanupTask();
+        ActivityLogWriter.start();
+        UploadSessionManager.start();
+        if (SignedTokens.isEnabled()) {
+            SignedTokens.start();
+        } else {
+            SessionRegistry.start();
+        }
         ServerAutoBackupService.startAutoBackupService();
+        BackupVerifier.start();
         System.out.println("🚀 REST Server started on port " + PORT);
         System.out.println("📡 API available at: http://localhost:" + PORT + "/api");
         System.out.println("🌐 LAN access: http://[YOUR_IP]:" + PORT + "/api");
     }
 
     private static void setupRoutes() {
+        // A restore replaces tables and files underneath the handlers; writes made meanwhile would be
+        // wiped or clash with the replayed rows. Reads, login/logout and backup status stay available.
+        app.before("/api/*", ctx -> {
+            if (RestoreEngine.isWritesBlocked() && ctx.method() != HandlerType.GET && ctx.method() != HandlerType.HEAD
+                    && ctx.method() != HandlerType.OPTIONS && !ctx.path().equals("/api/login") && !ctx.path().equals("/api/logout")) {
+                throw new RestoreInProgressException();
+            }
+        });
+        app.exception(RestoreInProgressException.class, (e, ctx) ->
+                ctx.status(503).json(createErrorResponse(e.getMessage())));
+
         // Health check
         app.get("/api/health", RESTServer::healthCheck);
         app.get("/api/system/health", RESTServer::systemHealth);
@@ -96,6 +116,13 @@ public class RESTServer {
         app.delete("/api/documents/{id}", RESTServer::deleteDocument);
         app.get("/api/documents/{id}/download", RESTServer::downloadDocument);
 
+        // Resumable uploads (require authentication)
+        app.post("/api/uploads", RESTServer::createUploadSession);
+        app.get("/api/uploads/{id}", RESTServer::getUploadStatus);
+        app.put("/api/uploads/{id}/chunks/{index}", RESTServer::uploadChunk);
+        app.post("/api/uploads/{id}/complete", RESTServer::completeUpload);
+        app.delete("/api/uploads/{id}", RESTServer::cancelUpload);
+
         // Users (admin only)
         app.get("/api/users", RESTServer::getAllUsers);
         app.post("/api/users", RESTServer::createUser);
@@ -117,73 +144,35 @@ public class RESTServer {
         app.get("/api/backup/list", RESTServer::listBackups);
         app.get("/api/backup/active", RESTServer::getActiveBackups);
         app.get("/api/backup/history", RESTServer::getBackupHistory);
+        app.post("/api/backup/restore", RESTServer::restoreBackup);
+        app.get("/api/backup/verify", RESTServer::getBackupVerification);
+        app.post("/api/backup/verify", RESTServer::verifyBackup);
 
         // system control:
         app.get("/api/system/status", RESTServer::getSystemStatus);
         app.get("/api/system/sessions", RESTServer::getActiveSessions);
+        app.get("/api/system/cache", RESTServer::getCacheStats);
+        app.get("/api/system/executors", RESTServer::getExecutorStats);
 
         app.get("/api/notifications", RESTServer::getNotifications);
         app.post("/api/notifications/{id}/read", RESTServer::markNotificationRead);
     }
 
-    // ============ SESSION MANAGEMENT ============
-    private static class UserSession {
-        private final int userId;
-        private final String username;
-        private final String role;
-        private final String fullName;
-        private final long createdAt;
-        private long lastAccessed;
-
-        public UserSession(int userId, String username, String role, String fullName) {
-            this.userId = userId;
-            this.username = username;
-            this.role = role;
-            this.fullName = fullName;
-            this.createdAt = System.currentTimeMillis();
-            this.lastAccessed = this.createdAt;
-        }
+    private static class RestoreInProgressException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
 
-        public void updateLastAccessed() {
-            this.lastAccessed = System.currentTimeMillis();
-        }
-
-        public boolean isExpired() {
-            return (System.currentTimeMillis() - lastAccessed) > SESSION_TIMEOUT;
+        RestoreInProgressException() {
+            super("A restore is in progress; changes are not accepted until it has finished.");
         }
     }
 
+    // ============ SESSION MANAGEMENT ============
     private static String generateAuthToken() {
         return UUID.randomUUID().toString();
     }
 
     private static UserSession getSessionFromToken(String authToken) {
-        if (authToken == null || !activeSessions.containsKey(authToken)) {
-            return null;
-        }
-
-        UserSession session = activeSessions.get(authToken);
-        if (session.isExpired()) {
-            activeSessions.remove(authToken);
-            return null;
-        }
-
-        session.updateLastAccessed();
-        return session;
-    }
-
-    private static void startSessionCleanupTask() {
-        Timer timer = new Timer(true);
-        timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                cleanExpiredSessions();
-            }
-        }, 0, 60 * 60 * 1000); // Run every hour
-    }
-
-    private static void cleanExpiredSessions() {
-        activeSessions.entrySet().removeIf(entry -> entry.getValue().isExpired());
+        return SessionRegistry.get(authToken);
     }
 
     // ============ AUTHENTICATION MIDDLEWARE ============
@@ -193,7 +182,9 @@ public class RESTServer {
             authToken = authToken.substring(7);
         }
 
-        UserSession session = getSessionFromToken(authToken);
+        UserSession session = SignedTokens.isEnabled()
+                ? SignedTokens.authenticate(ctx, authToken)
+                : getSessionFromToken(authToken);
         if (session == null) {
             ctx.status(401).json(createErrorResponse("Authentication required"));
             return null;
@@ -230,8 +221,19 @@ public class RESTServer {
                 healthData.put("users_count", getTableCount(conn, "users"));
                 healthData.put("documents_count", getTableCount(conn, "documents"));
                 healthData.put("activity_logs_count", getTableCount(conn, "activity_logs"));
-                healthData.put("active_sessions", activeSessions.size());
+                healthData.put("active_sessions", SessionRegistry.size());
             }
+            healthData.put("db_pool", DatabaseConnection.getPoolStats());
+            healthData.put("activity_log_writer", ActivityLogWriter.getStats());
+            healthData.put("downloads", FileResponder.getStats());
+            healthData.put("uploads", UploadSessionManager.getStats());
+            healthData.put("blobs", BlobStore.getStats());
+            healthData.put("archiver", ParallelArchiver.getStats());
+            healthData.put("driveUploads", DriveResumableUpload.getStats());
+            healthData.put("backupVerify", BackupVerifier.getStats());
+            healthData.put("http", HttpExecution.getStats());
+            healthData.put("sessions", SessionRegistry.getStats());
+            healthData.put("auth", SignedTokens.getStats());
 
             // Check shared folder
             File sharedFolder = new File("shared_documents");
@@ -292,10 +294,14 @@ public class RESTServer {
                     String role = rs.getString("role");
                     String fullName = rs.getString("full_name");
 
-                    // Create session
-                    String authToken = generateAuthToken();
-                    UserSession session = new UserSession(userId, username, role, fullName);
-                    activeSessions.put(authToken, session);
+                    // Create session (or, in token mode, a signed token that needs no server state)
+                    String authToken;
+                    if (SignedTokens.isEnabled()) {
+                        authToken = SignedTokens.issue(userId, username, role, fullName);
+                    } else {
+                        authToken = generateAuthToken();
+                        SessionRegistry.register(authToken, new UserSession(userId, username, role, fullName));
+                    }
 
                     // Log successful login
                     logActivity(userId, "LOGIN", "User logged in successfully");
@@ -325,7 +331,9 @@ public class RESTServer {
             String authToken = ctx.header("Authorization");
             if (authToken != null && authToken.startsWith("Bearer ")) {
                 authToken = authToken.substring(7);
-                UserSession session = activeSessions.remove(authToken);
+                UserSession session = SignedTokens.isEnabled()
+                        ? SignedTokens.revoke(authToken)
+                        : SessionRegistry.remove(authToken);
                 if (session != null) {
                     logActivity(session.userId, "LOGOUT", "User logged out");
                 }
@@ -379,45 +387,153 @@ public class RESTServer {
     }
 
     // ============ DOCUMENT ENDPOINTS ============
+    private static final String DOCUMENT_SELECT = "SELECT d.doc_id, d.title, d.file_path, d.upload_date, " +
+            "d.uploaded_by, d.user_id, d.file_size, " +
+            "u.username as uploaded_by_username, u.full_name as uploaded_by_fullname " +
+            "FROM documents d " +
+            "LEFT JOIN users u ON d.user_id = u.user_id ";
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final long MAX_UPLOAD_BYTES = Long.getLong("odh.upload.maxBytes", 200L * 1024 * 1024);
+
+    // Target type for JSON object request bodies
+    private static final java.lang.reflect.Type JSON_OBJECT = new TypeReference<Map<String, Object>>() {}.getType();
+
+    // Total number of documents, or a negative marker when it needs to be re-counted. Every change
+    // stores a new marker, so a count that was running while documents changed can't be stored.
+    private static final AtomicLong documentCount = new AtomicLong(-1);
+    private static final AtomicLong documentGeneration = new AtomicLong(1);
+
+    // Version of the messages collection, used for conversation ETags
+    private static final AtomicLong messagesVersion = new AtomicLong(1);
+    private static volatile long messagesChangedAt = System.currentTimeMillis();
+
     private static void getAllDocuments(Context ctx) {
         UserSession session = requireAuth(ctx);
         if (session == null) return;
 
+        // Old clients send no query parameters and get the full list
+        boolean paged = ctx.queryParam("limit") != null || ctx.queryParam("after") != null;
+        boolean filtered = ctx.queryParam("owner") != null || ctx.queryParam("titlePrefix") != null
+                || ctx.queryParam("from") != null || ctx.queryParam("to") != null;
+        if (paged || filtered) {
+            getDocumentsPage(ctx, session, paged);
+            return;
+        }
+
         try {
-            List<Document> documents = new ArrayList<>();
-            // FIXED: Use uploaded_by (VARCHAR) for display, user_id for ownership
-            String sql = "SELECT d.doc_id, d.title, d.file_path, d.upload_date, " +
-                    "d.uploaded_by, d.user_id, d.file_size, " +
-                    "u.username as uploaded_by_username, u.full_name as uploaded_by_fullname " +
-                    "FROM documents d " +
-                    "LEFT JOIN users u ON d.user_id = u.user_id " +
-                    "ORDER BY d.upload_date DESC";
+            // Served from DocumentCache: no database round trip or serialization until the list changes
+            DocumentCache.Snapshot snapshot = DocumentCache.get(RESTServer::loadAllDocuments, objectMapper::writeValueAsBytes);
+            if (HttpCaching.checkNotModified(ctx, snapshot.getEtag(), snapshot.getLastModified())) {
+                return;
+            }
+            ctx.contentType("application/json");
+            ctx.result(snapshot.getJson());
+        } catch (Exception e) {
+            logActivity(session.userId, "DOCUMENTS_LOAD_ERROR", "Failed to load documents: " + e.getMessage());
+            ctx.json(createErrorResponse("Failed to load documents: " + e.getMessage()));
+        }
+    }
 
-            try (Connection conn = DatabaseConnection.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql);
-                 ResultSet rs = stmt.executeQuery()) {
+    private static List<Document> loadAllDocuments() throws SQLException {
+        List<Document> documents = new ArrayList<>();
+        // FIXED: Use uploaded_by (VARCHAR) for display, user_id for ownership
+        String sql = DOCUMENT_SELECT + "ORDER BY d.upload_date DESC, d.doc_id DESC";
 
-                while (rs.next()) {
-                    // Use the uploaded_by field directly (it's already a VARCHAR for display name)
-                    String uploadedBy = rs.getString("uploaded_by");
-
-                    Document doc = new Document(
-                            rs.getInt("doc_id"),
-                            rs.getString("title"),
-                            rs.getString("file_path"),
-                            uploadedBy,
-                            rs.getDate("upload_date").toLocalDate(),
-                            rs.getInt("user_id")
-                    );
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
 
-                    // Set file size from database (it's stored as BIGINT)
-                    long fileSize = rs.getLong("file_size");
-                    doc.setFileSize(fileSize); // This will format it properly
+            while (rs.next()) {
+                documents.add(mapDocument(rs));
+            }
+        }
+        return documents;
+    }
 
-                    documents.add(doc);
+    // Keyset pagination: ?after=<upload_date,doc_id>&limit=N plus optional owner/titlePrefix/from/to filters.
+    // The next cursor is returned in X-Next-Cursor and the library size in X-Total-Count.
+    private static void getDocumentsPage(Context ctx, UserSession session, boolean paged) {
+        StringBuilder sql = new StringBuilder(DOCUMENT_SELECT).append("WHERE 1=1 ");
+        List<Object> params = new ArrayList<>();
+        int limit;
+
+        try {
+            limit = paged ? parseLimit(ctx.queryParam("limit")) : Integer.MAX_VALUE;
+
+            String after = ctx.queryParam("after");
+            if (after != null && !after.isBlank()) {
+                String[] parts = after.split(",");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("after must be <upload_date,doc_id>");
                 }
+                Date afterDate = Date.valueOf(LocalDate.parse(parts[0].trim()));
+                int afterId = Integer.parseInt(parts[1].trim());
+                sql.append("AND (d.upload_date < ? OR (d.upload_date = ? AND d.doc_id < ?)) ");
+                params.add(afterDate);
+                params.add(afterDate);
+                params.add(afterId);
+            }
+
+            String owner = ctx.queryParam("owner");
+            if (owner != null && !owner.isBlank()) {
+                sql.append("AND d.user_id = ? ");
+                params.add(Integer.parseInt(owner.trim()));
+            }
+
+            String titlePrefix = ctx.queryParam("titlePrefix");
+            if (titlePrefix != null && !titlePrefix.isEmpty()) {
+                sql.append("AND d.title LIKE ? ");
+                params.add(escapeLike(titlePrefix) + "%");
+            }
+
+            String from = ctx.queryParam("from");
+            if (from != null && !from.isBlank()) {
+                sql.append("AND d.upload_date >= ? ");
+                params.add(Date.valueOf(LocalDate.parse(from.trim())));
+            }
+
+            String to = ctx.queryParam("to");
+            if (to != null && !to.isBlank()) {
+                sql.append("AND d.upload_date <= ? ");
+                params.add(Date.valueOf(LocalDate.parse(to.trim())));
             }
+        } catch (Exception e) {
+            ctx.status(400).json(createErrorResponse("Invalid document query: " + e.getMessage()));
+            return;
+        }
+
+        sql.append("ORDER BY d.upload_date DESC, d.doc_id DESC");
+        if (paged) {
+            // Fetch one extra row to know whether another page exists
+            sql.append(" LIMIT ?");
+            params.add(limit + 1);
+        }
 
+        try {
+            List<Document> documents = new ArrayList<>();
+            long totalCount;
+
+            try (Connection conn = DatabaseConnection.getConnection()) {
+                try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                    for (int i = 0; i < params.size(); i++) {
+                        stmt.setObject(i + 1, params.get(i));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            documents.add(mapDocument(rs));
+                        }
+                    }
+                }
+                totalCount = getDocumentCount(conn);
+            }
+
+            if (paged && documents.size() > limit) {
+                documents = documents.subList(0, limit);
+                Document last = documents.get(documents.size() - 1);
+                ctx.header("X-Next-Cursor", last.getUploadDate() + "," + last.getDocId());
+            }
+            ctx.header("X-Total-Count", String.valueOf(totalCount));
             ctx.json(objectMapper.writeValueAsString(documents));
         } catch (Exception e) {
             logActivity(session.userId, "DOCUMENTS_LOAD_ERROR", "Failed to load documents: " + e.getMessage());
@@ -425,11 +541,66 @@ public class RESTServer {
         }
     }
 
+    private static Document mapDocument(ResultSet rs) throws SQLException {
+        // Use the uploaded_by field directly (it's already a VARCHAR for display name)
+        String uploadedBy = rs.getString("uploaded_by");
+
+        Document doc = new Document(
+                rs.getInt("doc_id"),
+                rs.getString("title"),
+                rs.getString("file_path"),
+                uploadedBy,
+                rs.getDate("upload_date").toLocalDate(),
+                rs.getInt("user_id")
+        );
+
+        // Set file size from database (it's stored as BIGINT)
+        long fileSize = rs.getLong("file_size");
+        doc.setFileSize(fileSize); // This will format it properly
+        return doc;
+    }
+
+    private static int parseLimit(String limitParam) {
+        if (limitParam == null || limitParam.isBlank()) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        int limit = Integer.parseInt(limitParam.trim());
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    // Call after any write that changes what the document list returns (also used by RestoreEngine)
+    static void onDocumentsChanged() {
+        documentCount.set(-documentGeneration.incrementAndGet());
+        DocumentCache.invalidate();
+    }
+
+    static void onMessagesChanged() {
+        messagesChangedAt = System.currentTimeMillis();
+        messagesVersion.incrementAndGet();
+    }
+
+    // Counted once and then kept until a document is added or removed
+    private static long getDocumentCount(Connection conn) throws SQLException {
+        long current = documentCount.get();
+        if (current >= 0) {
+            return current;
+        }
+        long count = getTableCount(conn, "documents");
+        documentCount.compareAndSet(current, count);
+        return count;
+    }
+
     private static void downloadDocument(Context ctx) {
         UserSession session = requireAuth(ctx);
         if (session == null) return;
 
-        InputStream fileStream = null;
         try {
             String docIdParam = ctx.pathParam("id");
             int docId = Integer.parseInt(docIdParam);
@@ -465,64 +636,116 @@ public class RESTServer {
                 return;
             }
 
-            System.out.println("Sending file: " + file.getAbsolutePath() + " (" + file.length() + " bytes)");
+            // The ETag is the file's content hash, so an unchanged file is never sent twice
+            String etag = HttpCaching.fileEtag(file);
+            if (HttpCaching.checkNotModified(ctx, etag, file.lastModified())) {
+                return;
+            }
 
-            // Set headers for file download
-            ctx.header("Content-Disposition", "attachment; filename=\"" + file.getName() + "\"");
-            ctx.header("Content-Type", "application/octet-stream");
-            ctx.header("Content-Length", String.valueOf(file.length()));
+            System.out.println("Sending file: " + file.getAbsolutePath() + " (" + file.length() + " bytes)");
 
-            // CORRECTED: Send the file as InputStream (better for large files)
-            fileStream = new FileInputStream(file);
-            ctx.result(fileStream);
+            // Honors Range/If-Range so interrupted downloads can resume
+            // Blobs are named by hash, so offer the title with the original extension instead
+            String downloadName = BlobStore.isBlob(filePath)
+                    ? makeFileNameSafe(title) + getFileExtension(file.getName())
+                    : file.getName();
+            FileResponder.Result result = FileResponder.serve(ctx, file, etag, downloadName);
 
-            // Log the download activity
-            logActivity(session.userId, "DOWNLOAD", "Downloaded document: " + title);
+            // Log once per download, not for every resumed or parallel segment
+            if (result.status() != 416 && result.firstByte() == 0) {
+                logActivity(session.userId, "DOWNLOAD", "Downloaded document: " + title);
+            }
 
         } catch (Exception e) {
             System.err.println("DOWNLOAD ERROR: " + e.getMessage());
             e.printStackTrace();
             logActivity(session.userId, "DOWNLOAD_ERROR", "Download error: " + e.getMessage());
-            ctx.status(500).json(createErrorResponse("Download failed: " + e.getMessage()));
-
-            // Close stream if open
-            if (fileStream != null) {
-                try {
-                    fileStream.close();
-                } catch (IOException ex) {
-                    System.err.println("Error closing file stream: " + ex.getMessage());
-                }
+            if (!ctx.res().isCommitted()) {
+                ctx.status(500).json(createErrorResponse("Download failed: " + e.getMessage()));
             }
         }
     }
+    // Thrown when an upload passes MAX_UPLOAD_BYTES while it is being received
+    private static class UploadTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        UploadTooLargeException() {
+            super("File exceeds the maximum upload size of " + (MAX_UPLOAD_BYTES / (1024 * 1024)) + " MB");
+        }
+    }
+
     private static void createDocument(Context ctx) {
         UserSession session = requireAuth(ctx);
         if (session == null) return;
 
+        String boundary = MultipartStream.boundaryOf(ctx.header("Content-Type"));
+        if (boundary == null) {
+            ctx.status(400).json(createErrorResponse("Expected a multipart/form-data upload"));
+            return;
+        }
+
+        // Reject obviously oversized uploads before reading anything
+        long contentLength = ctx.req().getContentLengthLong();
+        if (contentLength > MAX_UPLOAD_BYTES + 64 * 1024) {
+            ctx.status(413).json(createErrorResponse(new UploadTooLargeException().getMessage()));
+            return;
+        }
+
+        // The body is parsed as it arrives and the file part is written straight into
+        // shared_documents under a temporary name, then renamed once the title is known
+        Path tempPath = Path.of("shared_documents", ".upload_" + UUID.randomUUID() + ".part");
         try {
-            String title = ctx.formParam("title");
-            UploadedFile uploadedFile = ctx.uploadedFile("file");
+            String title = null;
+            String originalFileName = null;
+            long fileSize = -1;
+            String contentHash = null;
+
+            Files.createDirectories(tempPath.getParent());
+            MultipartStream multipart = new MultipartStream(ctx.req().getInputStream(), boundary);
+            MultipartStream.Part part;
+            while ((part = multipart.nextPart()) != null) {
+                if ("title".equals(part.getName()) && !part.isFile()) {
+                    title = part.readString(1024);
+                } else if ("file".equals(part.getName()) && part.isFile() && originalFileName == null) {
+                    originalFileName = part.getFilename();
+                    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                    fileSize = writeUploadPart(part.getBody(), tempPath, digest);
+                    contentHash = HexFormat.of().formatHex(digest.digest());
+                }
+            }
 
-            if (title == null || title.trim().isEmpty() || uploadedFile == null) {
+            if (title == null || title.trim().isEmpty() || originalFileName == null) {
+                Files.deleteIfExists(tempPath);
                 ctx.json(createErrorResponse("Title and file are required"));
                 return;
             }
 
-            // Copy file to shared folder
-            String originalFileName = uploadedFile.filename();
-            String safeTitle = makeFileNameSafe(title);
-            String timestamp = LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-            String newFileName = safeTitle + "_" + timestamp + getFileExtension(originalFileName);
-
-            Path destinationPath = Path.of("shared_documents", newFileName);
-            Files.createDirectories(destinationPath.getParent());
-
-            try (InputStream inputStream = uploadedFile.content()) {
-                Files.copy(inputStream, destinationPath, StandardCopyOption.REPLACE_EXISTING);
+            if (saveUploadedDocument(session, title, originalFileName, tempPath, fileSize, contentHash)) {
+                ctx.json(createSuccessResponse("Document uploaded successfully"));
+            } else {
+                ctx.json(createErrorResponse("Failed to save document"));
             }
 
-            // Get file size
-            long fileSize = Files.size(destinationPath);
+        } catch (UploadTooLargeException e) {
+            deleteQuietly(tempPath);
+            logActivity(session.userId, "UPLOAD_ERROR", "Upload rejected: " + e.getMessage());
+            ctx.status(413).json(createErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            // Includes clients that disconnect mid-upload: never leave a partial file behind
+            deleteQuietly(tempPath);
+            logActivity(session.userId, "UPLOAD_ERROR", "Upload error: " + e.getMessage());
+            ctx.json(createErrorResponse("Upload failed: " + e.getMessage()));
+        }
+    }
+
+    // Moves a fully received upload into the blob store and records it in the documents table.
+    // Shared by the single-request and the resumable upload paths.
+    private static boolean saveUploadedDocument(UserSession session, String title, String originalFileName,
+                                                Path tempPath, long fileSize, String contentHash) throws Exception {
+        // Identical content is stored once; a second upload only adds a documents row pointing at it
+        int affectedRows = 0;
+        synchronized (BlobStore.lockFor(contentHash)) {
+            Path blobPath = BlobStore.store(tempPath, contentHash, getFileExtension(originalFileName));
 
             // FIXED: Save to database with both uploaded_by and user_id
             String sql = "INSERT INTO documents (title, file_path, uploaded_by, upload_date, user_id, file_size) VALUES (?, ?, ?, ?, ?, ?)";
@@ -530,24 +753,166 @@ public class RESTServer {
                  PreparedStatement stmt = conn.prepareStatement(sql)) {
 
                 stmt.setString(1, title.trim());
-                stmt.setString(2, destinationPath.toString());
+                stmt.setString(2, blobPath.toString());
                 stmt.setString(3, session.fullName != null ? session.fullName : session.username); // uploaded_by (VARCHAR)
                 stmt.setDate(4, Date.valueOf(LocalDate.now()));
                 stmt.setInt(5, session.userId); // user_id (INT)
                 stmt.setLong(6, fileSize); // file_size (BIGINT)
 
-                int affectedRows = stmt.executeUpdate();
-                if (affectedRows > 0) {
-                    logActivity(session.userId, "UPLOAD", "Uploaded document: " + title);
-                    ctx.json(createSuccessResponse("Document uploaded successfully"));
-                } else {
-                    ctx.json(createErrorResponse("Failed to save document"));
+                affectedRows = stmt.executeUpdate();
+            } finally {
+                if (affectedRows == 0) {
+                    // Don't keep a blob nobody references
+                    BlobStore.release(blobPath.toString());
                 }
             }
+        }
+
+        if (affectedRows > 0) {
+            onDocumentsChanged();
+            logActivity(session.userId, "UPLOAD", "Uploaded document: " + title);
+        }
+        return affectedRows > 0;
+    }
+
+    // ============ RESUMABLE UPLOADS ============
+    // POST   /api/uploads                      {title, fileName, fileSize, chunkSize?} -> session
+    // PUT    /api/uploads/{id}/chunks/{index}  raw chunk bytes, X-Chunk-SHA256 header
+    // GET    /api/uploads/{id}                 received / missing chunks
+    // POST   /api/uploads/{id}/complete        {sha256?} -> document
+    // DELETE /api/uploads/{id}                 cancel
+    private static void createUploadSession(Context ctx) {
+        UserSession session = requireAuth(ctx);
+        if (session == null) return;
+
+        try {
+            Map<String, Object> body = ctx.bodyAsClass(JSON_OBJECT);
+            Object fileSize = body.get("fileSize");
+            Object chunkSize = body.get("chunkSize");
+            UploadSessionManager.UploadSession upload = UploadSessionManager.create(session.userId,
+                    (String) body.get("title"),
+                    (String) body.get("fileName"),
+                    fileSize instanceof Number n ? n.longValue() : -1,
+                    chunkSize instanceof Number n ? n.intValue() : null);
+            ctx.status(201).json(createSuccessResponse("Upload session created", upload.describe()));
+        } catch (UploadSessionManager.UploadException e) {
+            ctx.status(e.getStatus()).json(createErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            ctx.json(createErrorResponse("Failed to create upload session: " + e.getMessage()));
+        }
+    }
 
+    private static void uploadChunk(Context ctx) {
+        UserSession session = requireAuth(ctx);
+        if (session == null) return;
+
+        try {
+            UploadSessionManager.UploadSession upload = UploadSessionManager.get(ctx.pathParam("id"), session.userId);
+            int index = Integer.parseInt(ctx.pathParam("index"));
+            UploadSessionManager.writeChunk(upload, index, ctx.req().getInputStream(), ctx.header("X-Chunk-SHA256"));
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("index", index);
+            result.put("received", true);
+            ctx.json(createSuccessResponse("Chunk received", result));
+        } catch (NumberFormatException e) {
+            ctx.status(400).json(createErrorResponse("Invalid chunk index"));
+        } catch (UploadSessionManager.UploadException e) {
+            ctx.status(e.getStatus()).json(createErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            // Usually a dropped connection; the chunk wasn't marked, so the client can resend it
+            ctx.json(createErrorResponse("Chunk upload failed: " + e.getMessage()));
+        }
+    }
+
+    private static void getUploadStatus(Context ctx) {
+        UserSession session = requireAuth(ctx);
+        if (session == null) return;
+
+        try {
+            UploadSessionManager.UploadSession upload = UploadSessionManager.get(ctx.pathParam("id"), session.userId);
+            ctx.json(createSuccessResponse("Upload status", upload.describe()));
+        } catch (UploadSessionManager.UploadException e) {
+            ctx.status(e.getStatus()).json(createErrorResponse(e.getMessage()));
+        }
+    }
+
+    private static void completeUpload(Context ctx) {
+        UserSession session = requireAuth(ctx);
+        if (session == null) return;
+
+        UploadSessionManager.UploadSession upload = null;
+        boolean hashed = false;
+        try {
+            upload = UploadSessionManager.get(ctx.pathParam("id"), session.userId);
+            String expectedHash = null;
+            if (!ctx.body().isBlank()) {
+                Map<String, Object> body = ctx.bodyAsClass(JSON_OBJECT);
+                expectedHash = (String) body.get("sha256");
+            }
+
+            String contentHash = UploadSessionManager.beginComplete(upload, expectedHash);
+            hashed = true;
+            if (saveUploadedDocument(session, upload.getTitle(), upload.getFileName(), upload.getPartPath(),
+                    upload.getFileSize(), contentHash)) {
+                UploadSessionManager.finish(upload);
+                ctx.json(createSuccessResponse("Document uploaded successfully"));
+            } else {
+                UploadSessionManager.abort(upload);
+                ctx.json(createErrorResponse("Failed to save document"));
+            }
+        } catch (UploadSessionManager.UploadException e) {
+            ctx.status(e.getStatus()).json(createErrorResponse(e.getMessage()));
         } catch (Exception e) {
             logActivity(session.userId, "UPLOAD_ERROR", "Upload error: " + e.getMessage());
-            ctx.json(createErrorResponse("Upload failed: " + e.getMessage()));
+            if (hashed) {
+                // beginComplete has closed the part file's channel, so the session can't take chunks or
+                // be completed again; the client has to start over
+                UploadSessionManager.abort(upload);
+                ctx.status(500).json(createErrorResponse("Upload failed: " + e.getMessage() + ". Please restart the upload."));
+            } else {
+                // beginComplete put the session back; completing it can simply be retried
+                ctx.json(createErrorResponse("Upload failed: " + e.getMessage()));
+            }
+        }
+    }
+
+    private static void cancelUpload(Context ctx) {
+        UserSession session = requireAuth(ctx);
+        if (session == null) return;
+
+        try {
+            UploadSessionManager.UploadSession upload = UploadSessionManager.get(ctx.pathParam("id"), session.userId);
+            UploadSessionManager.abort(upload);
+            ctx.json(createSuccessResponse("Upload cancelled"));
+        } catch (UploadSessionManager.UploadException e) {
+            ctx.status(e.getStatus()).json(createErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Copies one file part to disk, hashing and counting as it goes; returns the size in bytes
+    private static long writeUploadPart(InputStream body, Path target, MessageDigest digest) throws IOException {
+        long size = 0;
+        byte[] buffer = new byte[64 * 1024];
+        try (OutputStream out = Files.newOutputStream(target)) {
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                size += read;
+                if (size > MAX_UPLOAD_BYTES) {
+                    throw new UploadTooLargeException();
+                }
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+            }
+        }
+        return size;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Could not delete partial upload " + path + ": " + e.getMessage());
         }
     }
 
@@ -594,12 +959,17 @@ public class RESTServer {
                 int affectedRows = deleteStmt.executeUpdate();
 
                 if (affectedRows > 0) {
-                    // Delete physical file
-                    if (filePath != null) {
+                    onDocumentsChanged();
+                    if (BlobStore.isBlob(filePath)) {
+                        // Shared content: only removed once no other document points at it
+                        BlobStore.release(filePath);
+                    } else if (filePath != null) {
+                        // Delete physical file (uploaded before the blob store existed)
                         File file = new File(filePath);
                         if (file.exists()) {
                             file.delete();
                         }
+                        HttpCaching.forgetFile(file);
                     }
 
                     logActivity(session.userId, "DELETE", "Deleted document ID: " + docId);
@@ -740,6 +1110,8 @@ public class RESTServer {
 
                 int affectedRows = stmt.executeUpdate();
                 if (affectedRows > 0) {
+                    // Usernames appear in conversation listings
+                    onMessagesChanged();
                     logActivity(session.userId, "USER_UPDATE", "Updated user ID: " + userId);
                     ctx.json(createSuccessResponse("User updated successfully"));
                 } else {
@@ -798,6 +1170,7 @@ public class RESTServer {
 
                 int affectedRows = updateStmt.executeUpdate();
                 if (affectedRows > 0) {
+                    onDocumentsChanged();
                     logActivity(session.userId, "EDIT", "Updated document: " + updatedDoc.getTitle());
                     ctx.json(createSuccessResponse("Document updated successfully"));
                 } else {
@@ -833,6 +1206,8 @@ public class RESTServer {
                 int affectedRows = stmt.executeUpdate();
 
                 if (affectedRows > 0) {
+                    // documents.user_id is set to NULL by the foreign key, so cached rows are stale
+                    onDocumentsChanged();
                     logActivity(session.userId, "USER_DELETE", "Deleted user ID: " + userId);
                     ctx.json(createSuccessResponse("User deleted successfully"));
                 } else {
@@ -852,6 +1227,12 @@ public class RESTServer {
         UserSession session = requireAuth(ctx);
         if (session == null) return;
 
+        // Nothing in any conversation changed since the client's copy: skip the query entirely
+        String etag = HttpCaching.versionEtag("conv-" + session.userId, messagesVersion.get());
+        if (HttpCaching.checkNotModified(ctx, etag, messagesChangedAt)) {
+            return;
+        }
+
         try {
             List<com.example.offlinedocumenthubserver.dto.Message> conversations = new ArrayList<>();
 
@@ -898,7 +1279,8 @@ public class RESTServer {
         } catch (Exception e) {
             System.err.println("Error in getConversations: " + e.getMessage());
             e.printStackTrace();
-            // Return empty array on error
+            // Return empty array on error, but not under the version's ETag
+            HttpCaching.clearValidators(ctx);
             ctx.json("[]");
         }
     }
@@ -984,6 +1366,7 @@ public class RESTServer {
 
                 int affectedRows = stmt.executeUpdate();
                 if (affectedRows > 0) {
+                    onMessagesChanged();
                     logActivity(session.userId, "SEND_MESSAGE", "Sent message to user ID: " + receiverId);
                     ctx.json(createSuccessResponse("Message sent successfully"));
                 } else {
@@ -1012,7 +1395,9 @@ public class RESTServer {
 
                 stmt.setInt(1, otherUserId);
                 stmt.setInt(2, session.userId);
-                stmt.executeUpdate();
+                if (stmt.executeUpdate() > 0) {
+                    onMessagesChanged();
+                }
             }
 
             ctx.json(createSuccessResponse("Messages marked as read"));
@@ -1074,23 +1459,9 @@ public class RESTServer {
         return String.valueOf(password.hashCode());
     }
 
-    // In RESTServer.java - fix the logActivity method calls
+    // Audit rows are queued and written in batches by ActivityLogWriter, off the request thread
     private static void logActivity(int userId, String actionType, String details) {
-        String sql = "INSERT INTO activity_logs (user_id, action_type, action_details) VALUES (?, ?, ?)";
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            // Use -1 for system actions, otherwise use actual user ID
-            if (userId <= 0) {
-                ps.setNull(1, Types.INTEGER);
-            } else {
-                ps.setInt(1, userId);
-            }
-            ps.setString(2, actionType);
-            ps.setString(3, details);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Failed to log activity: " + e.getMessage());
-        }
+        ActivityLogWriter.log(userId, actionType, details);
     }
 
     private static Map<String, Object> createSuccessResponse(String message) {
@@ -1128,10 +1499,15 @@ public class RESTServer {
         if (app != null) {
             app.stop();
         }
-        // 👇 ADD THIS: Shut down the background thread pool
-        if (backgroundExecutor != null) {
-            backgroundExecutor.shutdown();
-        }
+        UploadSessionManager.shutdown();
+        SessionRegistry.shutdown();
+        SignedTokens.shutdown();
+        ServerAutoBackupService.stopAutoBackupService();
+        BackupVerifier.shutdown();
+        BackgroundExecutors.shutdown();
+        // Flush queued audit entries before the connection pool goes away
+        ActivityLogWriter.shutdown();
+        DatabaseConnection.shutdown();
     }
 
 private static void triggerBackup(Context ctx) {
@@ -1149,6 +1525,8 @@ private static void triggerBackup(Context ctx) {
         backupSource = "System";
         activityUserId = 1;
     }
+    // Backups are incremental between periodic full snapshots; ?mode=full forces a new full one
+    boolean forceFull = "full".equals(ctx.queryParam("mode"));
 
     if (googleDriveService == null) {
         ctx.status(503);
@@ -1162,6 +1540,12 @@ private static void triggerBackup(Context ctx) {
         return;
     }
 
+    if (RestoreEngine.isRestoreRunning()) {
+        ctx.status(409);
+        ctx.json(createErrorResponse("A restore is in progress."));
+        return;
+    }
+
     try {
         System.out.println("📦 [BACKUP] Backup request received from: " + backupSource + " (" + backupType + ")");
 
@@ -1199,110 +1583,116 @@ private static void triggerBackup(Context ctx) {
         String finalBackupType = backupType;
         String finalBackupFolder = backupFolderName;
 
-        backgroundExecutor.submit(() -> {
-            String finalError = null;
-            try {
-                System.out.println("🚀 [BACKUP] Starting background backup task...");
+        try {
+            BackgroundExecutors.submit(BackgroundExecutors.Pool.BACKUP, () -> {
+                String finalError = null;
+                try {
+                    System.out.println("🚀 [BACKUP] Starting background backup task...");
 
-                logActivity(finalActivityUserId, "BACKUP_START",
-                        (finalBackupType.equals("auto") ? "Auto-backup" : "Manual backup") + " started by: " + finalBackupSource);
+                    logActivity(finalActivityUserId, "BACKUP_START",
+                            (finalBackupType.equals("auto") ? "Auto-backup" : "Manual backup") + " started by: " + finalBackupSource);
 
-                // Send start notification for auto backups
-                if ("auto".equals(finalBackupType)) {
-                    sendAdminNotification("Auto-backup Started",
-                            "Automatic backup process started at " +
-                                    LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) +
-                                    "\nBackup folder: " + finalBackupFolder);
-                }
+                    // Send start notification for auto backups
+                    if ("auto".equals(finalBackupType)) {
+                        sendAdminNotification("Auto-backup Started",
+                                "Automatic backup process started at " +
+                                        LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) +
+                                        "\nBackup folder: " + finalBackupFolder);
+                    }
 
-                Map<String, Object> backupResult = googleDriveService.performBackup(finalBackupType, finalBackupSource);
-
-                // Update final progress and history
-                Map<String, Object> finalProgress = activeBackupProgress.get(backupId);
-                if (finalProgress != null) {
-                    if (Boolean.TRUE.equals(backupResult.get("success"))) {
-                        finalProgress.put("progress", 100);
-                        finalProgress.put("status", "Backup completed successfully!");
-                        finalProgress.put("active", false);
-
-                        // Store successful backup history
-                        storeBackupHistory(finalBackupType, finalBackupSource, finalBackupFolder,
-                                "success", null, 0, 0);
-
-                        System.out.println("✅ [BACKUP] Background backup task completed successfully!");
-                        logActivity(finalActivityUserId, "BACKUP_COMPLETE",
-                                "Cloud backup completed successfully. Folder: " + backupResult.get("folderName"));
-
-                        // Send success notification
-                        if ("auto".equals(finalBackupType)) {
-                            sendAdminNotification("Auto-backup Completed",
-                                    "Automatic backup completed successfully!\n" +
-                                            "Completed at: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) + "\n" +
-                                            "Backup folder: " + backupResult.get("folderName") + "\n" +
-                                            "All data has been securely backed up to Google Drive.");
-                        }
-                    } else {
-                        finalError = (String) backupResult.get("message");
-                        finalProgress.put("progress", 0);
-                        finalProgress.put("status", "Backup failed: " + finalError);
-                        finalProgress.put("active", false);
-
-                        // Store failed backup history
-                        storeBackupHistory(finalBackupType, finalBackupSource, finalBackupFolder,
-                                "failed", finalError, 0, 0);
-
-                        System.err.println("❌ [BACKUP] Background backup task failed!");
-                        logActivity(finalActivityUserId, "BACKUP_ERROR",
-                                "Cloud backup failed: " + finalError);
-
-                        // Send failure notification
-                        if ("auto".equals(finalBackupType)) {
-                            sendAdminNotification("Auto-backup Failed",
-                                    "Automatic backup failed!\n" +
-                                            "Attempted at: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) + "\n" +
-                                            "Error: " + finalError + "\n" +
-                                            "Please check the server logs.");
+                    Map<String, Object> backupResult = googleDriveService.performBackup(finalBackupType, finalBackupSource, forceFull);
+
+                    // Update final progress and history
+                    Map<String, Object> finalProgress = activeBackupProgress.get(backupId);
+                    if (finalProgress != null) {
+                        if (Boolean.TRUE.equals(backupResult.get("success"))) {
+                            finalProgress.put("progress", 100);
+                            finalProgress.put("status", "Backup completed successfully!");
+                            finalProgress.put("active", false);
+
+                            // Store successful backup history
+                            storeBackupHistory(finalBackupType, finalBackupSource, finalBackupFolder,
+                                    "success", null, ((Number) backupResult.get("fileCount")).intValue(),
+                                    ((Number) backupResult.get("totalSize")).longValue());
+                            ServerAutoBackupService.manualBackupSucceeded();
+
+                            System.out.println("✅ [BACKUP] Background backup task completed successfully!");
+                            logActivity(finalActivityUserId, "BACKUP_COMPLETE",
+                                    "Cloud backup completed successfully. Folder: " + backupResult.get("folderName"));
+
+                            // Send success notification
+                            if ("auto".equals(finalBackupType)) {
+                                sendAdminNotification("Auto-backup Completed",
+                                        "Automatic backup completed successfully!\n" +
+                                                "Completed at: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) + "\n" +
+                                                "Backup folder: " + backupResult.get("folderName") + "\n" +
+                                                "All data has been securely backed up to " + googleDriveService.getTarget().getLocation() + ".");
+                            }
+                        } else {
+                            finalError = (String) backupResult.get("message");
+                            finalProgress.put("progress", 0);
+                            finalProgress.put("status", "Backup failed: " + finalError);
+                            finalProgress.put("active", false);
+
+                            // Store failed backup history
+                            storeBackupHistory(finalBackupType, finalBackupSource, finalBackupFolder,
+                                    "failed", finalError, 0, 0);
+
+                            System.err.println("❌ [BACKUP] Background backup task failed!");
+                            logActivity(finalActivityUserId, "BACKUP_ERROR",
+                                    "Cloud backup failed: " + finalError);
+
+                            // Send failure notification
+                            if ("auto".equals(finalBackupType)) {
+                                sendAdminNotification("Auto-backup Failed",
+                                        "Automatic backup failed!\n" +
+                                                "Attempted at: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) + "\n" +
+                                                "Error: " + finalError + "\n" +
+                                                "Please check the server logs.");
+                            }
                         }
                     }
-                }
 
-            } catch (Exception e) {
-                finalError = e.getMessage();
-                System.err.println("❌ [BACKUP] Background backup task failed: " + finalError);
-                e.printStackTrace();
-                logActivity(finalActivityUserId, "BACKUP_ERROR", "Cloud backup failed: " + finalError);
-
-                // Update progress on error
-                Map<String, Object> errorProgress = activeBackupProgress.get(backupId);
-                if (errorProgress != null) {
-                    errorProgress.put("progress", 0);
-                    errorProgress.put("status", "Backup failed: " + finalError);
-                    errorProgress.put("active", false);
-                }
+                } catch (Exception e) {
+                    finalError = e.getMessage();
+                    System.err.println("❌ [BACKUP] Background backup task failed: " + finalError);
+                    e.printStackTrace();
+                    logActivity(finalActivityUserId, "BACKUP_ERROR", "Cloud backup failed: " + finalError);
+
+                    // Update progress on error
+                    Map<String, Object> errorProgress = activeBackupProgress.get(backupId);
+                    if (errorProgress != null) {
+                        errorProgress.put("progress", 0);
+                        errorProgress.put("status", "Backup failed: " + finalError);
+                        errorProgress.put("active", false);
+                    }
 
-                // Store error in backup history
-                storeBackupHistory(finalBackupType, finalBackupSource, finalBackupFolder,
-                        "failed", finalError, 0, 0);
-
-                // Send error notification
-                if ("auto".equals(finalBackupType)) {
-                    sendAdminNotification("Auto-backup Error",
-                            "Automatic backup encountered an error!\n" +
-                                    "Attempted at: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) + "\n" +
-                                    "Error: " + finalError + "\n" +
-                                    "Please check the server connectivity.");
-                }
-            } finally {
-                // Clean up progress after a delay
-                new Timer().schedule(new TimerTask() {
-                    @Override
-                    public void run() {
+                    // Store error in backup history
+                    storeBackupHistory(finalBackupType, finalBackupSource, finalBackupFolder,
+                            "failed", finalError, 0, 0);
+
+                    // Send error notification
+                    if ("auto".equals(finalBackupType)) {
+                        sendAdminNotification("Auto-backup Error",
+                                "Automatic backup encountered an error!\n" +
+                                        "Attempted at: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) + "\n" +
+                                        "Error: " + finalError + "\n" +
+                                        "Please check the server connectivity.");
+                    }
+                } finally {
+                    // Clean up progress after a delay
+                    BackgroundExecutors.schedule(() -> {
                         activeBackupProgress.remove(backupId);
                         System.out.println("🧹 Cleaned up progress for backup: " + backupId);
-                    }
-                }, 5 * 60 * 1000);
-            }
-        });
+                    }, 5, TimeUnit.MINUTES);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            activeBackupProgress.remove(backupId);
+            storeBackupHistory(backupType, backupSource, backupFolderName, "failed", e.getMessage(), 0, 0);
+            ctx.status(503).json(createErrorResponse("Backups are queued up, try again later: " + e.getMessage()));
+            return;
+        }
 
         // Respond with backup info
         Map<String, Object> response = new HashMap<>();
@@ -1323,6 +1713,150 @@ private static void triggerBackup(Context ctx) {
         ctx.status(500).json(createErrorResponse("Failed to start backup task: " + e.getMessage()));
     }
 }
+    // Restores a backup set (with the sets it builds on) from the backup target.
+    // ?backupSet=<name or folder id>&scope=all|documents|database&dryRun=true
+    private static void restoreBackup(Context ctx) {
+        UserSession session = requireAdmin(ctx);
+        if (session == null) return;
+
+        String backupSet = ctx.queryParam("backupSet");
+        if (backupSet == null || backupSet.isBlank()) {
+            ctx.status(400).json(createErrorResponse("backupSet is required"));
+            return;
+        }
+
+        RestoreEngine.Scope scope;
+        try {
+            scope = RestoreEngine.Scope.valueOf(Objects.requireNonNullElse(ctx.queryParam("scope"), "all").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            ctx.status(400).json(createErrorResponse("scope must be all, documents or database"));
+            return;
+        }
+        boolean dryRun = "true".equalsIgnoreCase(ctx.queryParam("dryRun"));
+
+        if (googleDriveService == null) {
+            ctx.status(503).json(createErrorResponse("Backup service is still initializing."));
+            return;
+        }
+        if (googleDriveService.isBackupRunning() || RestoreEngine.isRestoreRunning()) {
+            ctx.status(409).json(createErrorResponse("A backup or restore is already in progress."));
+            return;
+        }
+
+        String restoreId = UUID.randomUUID().toString();
+        Map<String, Object> progress = new HashMap<>();
+        progress.put("progress", 0);
+        progress.put("status", dryRun ? "Starting restore dry run..." : "Starting restore...");
+        progress.put("active", true);
+        progress.put("backupId", restoreId);
+        progress.put("backupFolder", backupSet);
+        progress.put("operation", dryRun ? "restore-dry-run" : "restore");
+        progress.put("scope", scope.name().toLowerCase());
+        progress.put("startTime", System.currentTimeMillis());
+        activeBackupProgress.put(restoreId, progress);
+
+        int userId = session.userId;
+        RestoreEngine engine = new RestoreEngine(googleDriveService.getTarget(), scope, dryRun, (value, status) -> {
+            progress.put("progress", value);
+            progress.put("status", status);
+            progress.put("lastUpdate", System.currentTimeMillis());
+        });
+
+        try {
+            BackgroundExecutors.submit(BackgroundExecutors.Pool.BACKUP, () -> {
+                try {
+                    logActivity(userId, "RESTORE_START", (dryRun ? "Restore dry run" : "Restore") + " of " + backupSet
+                            + " (" + scope.name().toLowerCase() + ") started by: " + session.username);
+                    Map<String, Object> result = engine.restore(backupSet);
+                    progress.put("result", result);
+                    progress.put("progress", 100);
+                    progress.put("active", false);
+                    logActivity(userId, "RESTORE_COMPLETE", (dryRun ? "Restore dry run" : "Restore") + " of " + backupSet + " completed");
+                    if (!dryRun) {
+                        sendAdminNotification("Restore Completed",
+                                "Backup " + backupSet + " (" + scope.name().toLowerCase() + ") was restored at " +
+                                        LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) +
+                                        " by " + session.username + ".");
+                    }
+                } catch (Exception e) {
+                    System.err.println("❌ [RESTORE] Failed: " + e.getMessage());
+                    e.printStackTrace();
+                    progress.put("progress", 0);
+                    progress.put("status", "Restore failed: " + e.getMessage());
+                    progress.put("active", false);
+                    logActivity(userId, "RESTORE_ERROR", "Restore of " + backupSet + " failed: " + e.getMessage());
+                    if (!dryRun) {
+                        sendAdminNotification("Restore Failed",
+                                "Restore of backup " + backupSet + " failed!\n" +
+                                        "Error: " + e.getMessage() + "\n" +
+                                        "Please check the server logs.");
+                    }
+                } finally {
+                    // Keep the outcome readable through /api/backup/progress for a while
+                    BackgroundExecutors.schedule(() -> activeBackupProgress.remove(restoreId), 5, TimeUnit.MINUTES);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            activeBackupProgress.remove(restoreId);
+            ctx.status(503).json(createErrorResponse("Backups are queued up, try again later: " + e.getMessage()));
+            return;
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", dryRun ? "Restore dry run started in the background"
+                : "Restore started in the background; changes are refused until it finishes. If it fails after "
+                + "the database was emptied, run the restore again.");
+        response.put("backupId", restoreId);
+        response.put("backupSet", backupSet);
+        response.put("scope", scope.name().toLowerCase());
+        response.put("dryRun", dryRun);
+        ctx.status(202).json(response);
+    }
+
+    // Starts a verification of a backup set (?backupSet=, default the newest) in the background
+    private static void verifyBackup(Context ctx) {
+        UserSession session = requireAdmin(ctx);
+        if (session == null) return;
+
+        if (googleDriveService == null) {
+            ctx.status(503).json(createErrorResponse("Backup service is still initializing."));
+            return;
+        }
+        if (BackupVerifier.isRunning()) {
+            ctx.status(409).json(createErrorResponse("A verification is already running."));
+            return;
+        }
+
+        String backupSet = ctx.queryParam("backupSet");
+        try {
+            BackgroundExecutors.submit(BackgroundExecutors.Pool.MAINTENANCE, () -> {
+                try {
+                    Map<String, Object> report = BackupVerifier.verify(googleDriveService.getTarget(), backupSet);
+                    logActivity(session.userId, Boolean.TRUE.equals(report.get("ok")) ? "BACKUP_VERIFIED" : "BACKUP_VERIFY_FAILED",
+                            "Verified backup " + report.get("backupSet") + ": " + report.get("verified") + "/" + report.get("sampled")
+                                    + " sampled documents OK");
+                } catch (Exception e) {
+                    System.err.println("❌ [VERIFY] " + e.getMessage());
+                    logActivity(session.userId, "BACKUP_VERIFY_FAILED", "Backup verification failed: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            ctx.status(503).json(createErrorResponse("Maintenance tasks are queued up, try again later: " + e.getMessage()));
+            return;
+        }
+        ctx.status(202).json(createSuccessResponse("Backup verification started; GET /api/backup/verify for the report"));
+    }
+
+    private static void getBackupVerification(Context ctx) {
+        UserSession session = requireAdmin(ctx);
+        if (session == null) return;
+
+        Map<String, Object> data = new HashMap<>(BackupVerifier.getStats());
+        data.put("report", BackupVerifier.getLastReport());
+        ctx.json(createSuccessResponse("Backup verification", data));
+    }
+
     // Add endpoint to get backup history from database
     private static void getBackupHistory(Context ctx) {
         UserSession session = requireAdmin(ctx);
@@ -1472,7 +2006,10 @@ private static void triggerBackup(Context ctx) {
                 }
             }
 
-            ctx.json(createSuccessResponse("Active backups", activeBackups));
+            // The auto-backup scheduler's queue and state ride along with the running backups
+            Map<String, Object> response = createSuccessResponse("Active backups", activeBackups);
+            response.put("scheduler", ServerAutoBackupService.getStatus());
+            ctx.json(response);
 
         } catch (Exception e) {
             ctx.json(createErrorResponse("Failed to get active backups: " + e.getMessage()));
@@ -1537,7 +2074,7 @@ private static void getSystemStatus(Context ctx) {
         }
 
         // Active sessions count
-        status.put("activeSessions", activeSessions.size());
+        status.put("activeSessions", SessionRegistry.size());
 
         // Shared folder status
         File sharedFolder = new File("shared_documents");
@@ -1599,20 +2136,22 @@ private static void getSystemStatus(Context ctx) {
         try {
             List<Map<String, Object>> sessions = new ArrayList<>();
 
-            for (Map.Entry<String, UserSession> entry : activeSessions.entrySet()) {
-                UserSession userSession = entry.getValue();
+            for (UserSession userSession : SessionRegistry.list()) {
                 Map<String, Object> sessionInfo = new HashMap<>();
                 sessionInfo.put("username", userSession.username);
                 sessionInfo.put("fullName", userSession.fullName);
                 sessionInfo.put("role", userSession.role);
                 sessionInfo.put("loginTime", new Timestamp(userSession.createdAt).toString());
-                sessionInfo.put("lastActivity", new Timestamp(userSession.lastAccessed).toString());
+                sessionInfo.put("lastActivity", new Timestamp(userSession.lastAccessed()).toString());
                 sessions.add(sessionInfo);
             }
 
             ctx.json(createSuccessResponse("Active sessions", Map.of(
                     "count", sessions.size(),
-                    "sessions", sessions
+                    "sessions", sessions,
+                    "stats", SessionRegistry.getStats(),
+                    // Token mode keeps no sessions on the server, so the list above stays empty
+                    "authMode", SignedTokens.isEnabled() ? "token" : "session"
             )));
 
         } catch (Exception e) {
@@ -1620,6 +2159,27 @@ private static void getSystemStatus(Context ctx) {
         }
     }
 
+    // Queue depth, active threads and rejections of the background pools
+    private static void getExecutorStats(Context ctx) {
+        UserSession session = requireAdmin(ctx);
+        if (session == null) return;
+
+        ctx.json(createSuccessResponse("Background executors", BackgroundExecutors.getStats()));
+    }
+
+    private static void getCacheStats(Context ctx) {
+        UserSession session = requireAdmin(ctx);
+        if (session == null) return;
+
+        try {
+            ctx.json(createSuccessResponse("Cache statistics", Map.of(
+                    "documents", DocumentCache.getStats()
+            )));
+        } catch (Exception e) {
+            ctx.json(createErrorResponse("Failed to get cache statistics: " + e.getMessage()));
+        }
+    }
+
     private static void getNotifications(Context ctx) {
         UserSession session = requireAdmin(ctx);
         if (session == null) return;
@@ -0,0 +1,582 @@
+package com.example.offlinedocumenthubserver;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Restores a backup set (and the chain of sets it builds on) from a backup target.
+// The backup_manifest.json files of the chain decide which set holds the latest version of each
+// document, so every file is extracted once, from the newest archive that has it. Entries are
+// extracted in parallel from a local copy of each archive, checked against the ZIP CRC-32 and the
+// SHA-256 in the manifest's file inventory, and only moved into place when both match. The SQL files
+// are all downloaded, checked against their manifest checksum and parsed before any table is emptied,
+// then replayed oldest first in batches of statements, one transaction per batch. While a restore that
+// writes is running, the REST layer refuses other writes (isWritesBlocked).
+// A dry run downloads and verifies everything but writes nothing.
+public class RestoreEngine {
+    public enum Scope { ALL, DOCUMENTS, DATABASE }
+
+    private static final int THREADS = Integer.getInteger("odh.restore.threads",
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+    // Each exported INSERT carries up to odh.backup.rowsPerInsert rows, so a batch is thousands of rows
+    private static final int BATCH_STATEMENTS = Integer.getInteger("odh.restore.batchStatements", 20);
+    // Emptied before a full database restore; children first
+    private static final List<String> TABLES = List.of("messages", "activity_logs", "documents", "users");
+    private static final Path DOCUMENTS_DIR = Path.of("shared_documents").toAbsolutePath().normalize();
+    private static final AtomicBoolean running = new AtomicBoolean();
+    private static volatile boolean writesBlocked;
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final BackupTarget target;
+    private final Scope scope;
+    private final boolean dryRun;
+    private final GoogleDriveService.ProgressCallback progress;
+
+    public RestoreEngine(BackupTarget target, Scope scope, boolean dryRun, GoogleDriveService.ProgressCallback progress) {
+        this.target = target;
+        this.scope = scope;
+        this.dryRun = dryRun;
+        this.progress = progress;
+    }
+
+    public static boolean isRestoreRunning() {
+        return running.get();
+    }
+
+    // True while a restore (not a dry run) is replacing data; writes made meanwhile would be lost or
+    // collide with the replayed rows
+    public static boolean isWritesBlocked() {
+        return writesBlocked;
+    }
+
+    // backupSet is a set name (DocumentHub_Backup_...) or a folder id from listBackups()
+    public Map<String, Object> restore(String backupSet) throws Exception {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Another restore is already running");
+        }
+        writesBlocked = !dryRun;
+        try {
+            return run(backupSet);
+        } finally {
+            writesBlocked = false;
+            running.set(false);
+        }
+    }
+
+    private Map<String, Object> run(String backupSet) throws Exception {
+        long started = System.currentTimeMillis();
+        System.out.println("♻️ [RESTORE] " + (dryRun ? "Dry run of" : "Restoring") + " " + backupSet
+                + " (" + scope.name().toLowerCase(Locale.ROOT) + ") from " + target.getName());
+        update(2, "Locating backup set...");
+
+        Map<String, String> folderIds = new LinkedHashMap<>();
+        String requested = null;
+        for (Map<String, String> backup : target.listBackups()) {
+            folderIds.put(backup.get("name"), backup.get("id"));
+            if (backup.get("name").equals(backupSet) || backup.get("id").equals(backupSet)) {
+                requested = backup.get("name");
+            }
+        }
+        if (requested == null) {
+            throw new IllegalArgumentException("Backup set not found on " + target.getName() + ": " + backupSet);
+        }
+
+        // The requested set names every set it depends on, oldest (the full backup) first
+        Map<String, Object> latest = readManifest(folderIds.get(requested));
+        @SuppressWarnings("unchecked")
+        List<String> chain = (List<String>) latest.getOrDefault("restoreChain", List.of(requested));
+        List<Map<String, Object>> manifests = new ArrayList<>();
+        for (int i = 0; i < chain.size(); i++) {
+            String set = chain.get(i);
+            if (!folderIds.containsKey(set)) {
+                throw new IllegalStateException("Restore chain is incomplete, " + set + " is missing on " + target.getName());
+            }
+            update(5 + 5 * i / chain.size(), "Reading manifest of " + set + "...");
+            manifests.add(set.equals(requested) ? latest : readManifest(folderIds.get(set)));
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("backupSet", requested);
+        result.put("restoreChain", chain);
+        result.put("scope", scope.name().toLowerCase(Locale.ROOT));
+        result.put("dryRun", dryRun);
+
+        if (scope != Scope.DOCUMENTS) {
+            try {
+                result.put("database", restoreDatabase(chain, manifests, folderIds));
+            } finally {
+                // Even a failed replay may have changed rows; cached counts, lists and ETags are stale
+                if (!dryRun) {
+                    RESTServer.onDocumentsChanged();
+                    RESTServer.onMessagesChanged();
+                }
+            }
+        }
+        if (scope != Scope.DATABASE) {
+            result.put("documents", restoreDocuments(chain, manifests, folderIds));
+        }
+
+        long elapsedMs = System.currentTimeMillis() - started;
+        result.put("elapsedMs", elapsedMs);
+        update(100, dryRun ? "Dry run finished - backup verified" : "Restore completed");
+        System.out.println("✅ [RESTORE] " + (dryRun ? "Dry run" : "Restore") + " of " + requested + " finished in " + elapsedMs + " ms");
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readManifest(String folderId) throws Exception {
+        try (InputStream in = target.download(folderId, "backup_manifest.json")) {
+            return mapper.readValue(in, Map.class);
+        }
+    }
+
+    // ==================== DATABASE ====================
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> restoreDatabase(List<String> chain, List<Map<String, Object>> manifests,
+                                                Map<String, String> folderIds) throws Exception {
+        long started = System.currentTimeMillis();
+        List<String> files = new ArrayList<>();
+        List<Path> staged = new ArrayList<>();
+        long statements = 0;
+
+        try {
+            // Everything is downloaded, checked and parsed before the first row is touched, so a bad or
+            // truncated file fails the restore while the live tables are still intact
+            for (int i = 0; i < chain.size(); i++) {
+                Map<String, Object> database = (Map<String, Object>) manifests.get(i).get("database");
+                String file = database != null ? (String) database.get("file") : null;
+                if (file == null) {
+                    throw new IllegalStateException("Backup set " + chain.get(i) + " has no database export");
+                }
+                update(10 + 20 * i / chain.size(), "Downloading and checking " + file + "...");
+                Path local = stageSql(folderIds.get(chain.get(i)), file, manifests.get(i));
+                staged.add(local);
+                statements += countStatements(local, file);
+                files.add(file);
+            }
+
+            if (!dryRun) {
+                for (int i = 0; i < chain.size(); i++) {
+                    update(30 + 20 * i / chain.size(), "Replaying " + files.get(i) + "...");
+                    // The first set of the chain is a full export; the tables are emptied before it is loaded
+                    replaySql(staged.get(i), files.get(i), i == 0 && "full".equals(manifests.get(i).get("mode")));
+                }
+            }
+        } finally {
+            for (Path local : staged) {
+                Files.deleteIfExists(local);
+            }
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("files", files);
+        summary.put("statements", statements);
+        summary.put("elapsedMs", System.currentTimeMillis() - started);
+        System.out.println("💾 [RESTORE] " + statements + " SQL statements " + (dryRun ? "checked" : "replayed")
+                + " from " + files.size() + " file(s)");
+        return summary;
+    }
+
+    // Downloads one SQL export to a temp file and checks it against the SHA-256 in the set's manifest.
+    // Sets written before artifacts were recorded have no checksum; for those the full parse has to do.
+    @SuppressWarnings("unchecked")
+    private Path stageSql(String folderId, String fileName, Map<String, Object> manifest) throws Exception {
+        Map<String, Map<String, Object>> artifacts =
+                (Map<String, Map<String, Object>>) manifest.getOrDefault("artifacts", Map.of());
+        Map<String, Object> artifact = artifacts.get(fileName);
+        String expected = artifact != null ? (String) artifact.get("sha256") : null;
+
+        Path local = Files.createTempFile("odh-restore-", fileName.endsWith(".gz") ? ".sql.gz" : ".sql");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new DigestInputStream(target.download(folderId, fileName), digest)) {
+                Files.copy(in, local, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            if (expected != null && !expected.equals(sha256)) {
+                throw new IOException(fileName + ": SHA-256 mismatch (expected " + expected + ", got " + sha256 + ")");
+            }
+            return local;
+        } catch (Exception e) {
+            Files.deleteIfExists(local);
+            throw e;
+        }
+    }
+
+    private static Reader openSql(Path local, String fileName) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(local), 256 * 1024);
+        return new InputStreamReader(fileName.endsWith(".gz")
+                ? new GZIPInputStream(new MemberAwareInputStream(in), 64 * 1024)
+                : in, StandardCharsets.UTF_8);
+    }
+
+    private static long countStatements(Path local, String fileName) throws IOException {
+        try (Reader reader = openSql(local, fileName)) {
+            SqlScript script = new SqlScript(reader);
+            long count = 0;
+            while (script.next() != null) {
+                count++;
+            }
+            return count;
+        } catch (IOException e) {
+            throw new IOException(fileName + " is not a complete SQL export: " + e.getMessage(), e);
+        }
+    }
+
+    private void replaySql(Path local, String fileName, boolean emptyTablesFirst) throws Exception {
+        boolean emptied = false;
+        try (Reader reader = openSql(local, fileName)) {
+            SqlScript script = new SqlScript(reader);
+            Connection conn = DatabaseConnection.getConnection();
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                if (emptyTablesFirst) {
+                    stmt.execute("SET FOREIGN_KEY_CHECKS = 0");
+                    for (String table : TABLES) {
+                        stmt.executeUpdate("DELETE FROM " + table);
+                    }
+                    conn.commit();
+                    emptied = true;
+                }
+
+                int pending = 0;
+                String sql;
+                while ((sql = script.next()) != null) {
+                    // Transactions are ours to manage: the dump's own autocommit/COMMIT lines are skipped
+                    String head = sql.toUpperCase(Locale.ROOT);
+                    if (head.startsWith("SET AUTOCOMMIT") || head.equals("COMMIT")) {
+                        continue;
+                    }
+                    stmt.addBatch(sql);
+                    if (++pending >= BATCH_STATEMENTS) {
+                        stmt.executeBatch();
+                        conn.commit();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    stmt.executeBatch();
+                }
+                conn.commit();
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                try (Statement reset = conn.createStatement()) {
+                    reset.execute("SET FOREIGN_KEY_CHECKS = 1, UNIQUE_CHECKS = 1");
+                } catch (Exception ignored) {
+                }
+                conn.setAutoCommit(autoCommit);
+                conn.close();
+            }
+        } catch (Exception e) {
+            // Batches already committed can't be rolled back; only replaying the whole chain again
+            // brings the tables back to a consistent state
+            boolean partial = emptied || !emptyTablesFirst;
+            throw new IOException("Replaying " + fileName + " failed: " + e.getMessage()
+                    + (partial ? " - the database is only partly restored, run a new restore of this backup set" : ""), e);
+        }
+    }
+
+    // Splits a dump into statements at semicolons outside string literals and skips "--" comment lines
+    private static class SqlScript {
+        private final PushbackReader in;
+        private final StringBuilder statement = new StringBuilder(64 * 1024);
+
+        SqlScript(Reader reader) {
+            this.in = new PushbackReader(reader, 1);
+        }
+
+        String next() throws IOException {
+            statement.setLength(0);
+            boolean quoted = false;
+            int c;
+            while ((c = in.read()) >= 0) {
+                char ch = (char) c;
+                if (quoted) {
+                    statement.append(ch);
+                    if (ch == '\\') {
+                        int escaped = in.read();
+                        if (escaped >= 0) {
+                            statement.append((char) escaped);
+                        }
+                    } else if (ch == '\'') {
+                        int after = in.read();
+                        if (after == '\'') {
+                            statement.append('\'');
+                        } else {
+                            quoted = false;
+                            if (after >= 0) {
+                                in.unread(after);
+                            }
+                        }
+                    }
+                } else if (statement.length() == 0 && Character.isWhitespace(ch)) {
+                    // Leading whitespace between statements
+                } else if (statement.length() == 0 && ch == '-') {
+                    while ((c = in.read()) >= 0 && c != '\n') {
+                        // Rest of the comment line
+                    }
+                } else if (ch == ';') {
+                    return statement.toString().strip();
+                } else {
+                    statement.append(ch);
+                    if (ch == '\'') {
+                        quoted = true;
+                    }
+                }
+            }
+            if (quoted) {
+                throw new IOException("SQL file ends inside a string literal (truncated download?)");
+            }
+            String rest = statement.toString().strip();
+            return rest.isEmpty() ? null : rest;
+        }
+    }
+
+    // The SQL export is several gzip members back to back. GZIPInputStream only looks for the next
+    // member when available() says more bytes are there, which a network stream may deny at a member
+    // boundary; this answers by actually reading ahead one byte.
+    private static class MemberAwareInputStream extends PushbackInputStream {
+        MemberAwareInputStream(InputStream in) {
+            super(in, 1);
+        }
+
+        @Override
+        public int available() throws IOException {
+            int n = super.available();
+            if (n > 0) {
+                return n;
+            }
+            int b = read();
+            if (b < 0) {
+                return 0;
+            }
+            unread(b);
+            return 1;
+        }
+    }
+
+    // ==================== DOCUMENTS ====================
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> restoreDocuments(List<String> chain, List<Map<String, Object>> manifests,
+                                                 Map<String, String> folderIds) throws Exception {
+        long started = System.currentTimeMillis();
+
+        // Which set holds the latest version of each file, and which files the chain deleted
+        Map<String, Integer> newestSet = new LinkedHashMap<>();
+        Map<String, String> checksums = new LinkedHashMap<>();
+        List<String> deleted = new ArrayList<>();
+        for (int i = 0; i < manifests.size(); i++) {
+            Map<String, Object> documents = (Map<String, Object>) manifests.get(i).getOrDefault("documents", Map.of());
+            for (String path : (List<String>) documents.getOrDefault("deletedFiles", List.of())) {
+                newestSet.remove(path);
+                checksums.remove(path);
+                deleted.add(path);
+            }
+            Map<String, Map<String, Object>> inventory = (Map<String, Map<String, Object>>) documents.getOrDefault("files", Map.of());
+            for (String path : (List<String>) documents.getOrDefault("changedFiles", List.of())) {
+                newestSet.put(path, i);
+                deleted.remove(path);
+                Map<String, Object> file = inventory.get(path);
+                if (file != null && file.get("sha256") != null) {
+                    checksums.put(path, (String) file.get("sha256"));
+                } else {
+                    checksums.remove(path);
+                }
+            }
+        }
+
+        int total = newestSet.size();
+        AtomicInteger done = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        AtomicInteger verified = new AtomicInteger();
+        ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS, r -> {
+            Thread thread = new Thread(r, "restore-extract");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            for (int i = 0; i < chain.size(); i++) {
+                int set = i;
+                List<String> wanted = newestSet.entrySet().stream()
+                        .filter(e -> e.getValue() == set).map(Map.Entry::getKey).toList();
+                if (wanted.isEmpty()) {
+                    continue;
+                }
+                Map<String, Object> documents = (Map<String, Object>) manifests.get(i).get("documents");
+                String archive = (String) documents.get("archive");
+                if (archive == null) {
+                    wanted.forEach(path -> failures.add(path + ": no archive in " + chain.get(set)));
+                    continue;
+                }
+
+                // ZipFile needs random access, and reading entries concurrently needs ZipFile
+                update(55 + 40 * done.get() / Math.max(1, total), "Downloading " + archive + "...");
+                Path local = Files.createTempFile("odh-restore-", ".zip");
+                try {
+                    try (InputStream in = target.download(folderIds.get(chain.get(i)), archive)) {
+                        Files.copy(in, local, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    try (ZipFile zip = new ZipFile(local.toFile())) {
+                        List<Future<?>> tasks = new ArrayList<>();
+                        for (String path : wanted) {
+                            ZipEntry entry = zip.getEntry(path);
+                            if (entry == null) {
+                                failures.add(path + ": missing from " + archive);
+                                continue;
+                            }
+                            tasks.add(pool.submit(() -> {
+                                try {
+                                    bytes.addAndGet(extract(zip, entry, checksums.get(path)));
+                                    verified.incrementAndGet();
+                                } catch (Exception e) {
+                                    failures.add(path + ": " + e.getMessage());
+                                }
+                                int n = done.incrementAndGet();
+                                if (n % 10 == 0 || n == total) {
+                                    update(55 + 40 * n / Math.max(1, total),
+                                            (dryRun ? "Verifying" : "Extracting") + " documents (" + n + "/" + total + ")...");
+                                }
+                                return null;
+                            }));
+                        }
+                        for (Future<?> task : tasks) {
+                            task.get();
+                        }
+                    }
+                } finally {
+                    Files.deleteIfExists(local);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        int removed = 0;
+        if (!dryRun) {
+            for (String path : deleted) {
+                if (Files.deleteIfExists(resolve(path))) {
+                    removed++;
+                }
+            }
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("files", total);
+        summary.put("verified", verified.get());
+        summary.put("bytes", bytes.get());
+        summary.put("deleted", dryRun ? deleted.size() : removed);
+        summary.put("failures", new ArrayList<>(failures));
+        summary.put("threads", THREADS);
+        summary.put("elapsedMs", System.currentTimeMillis() - started);
+        System.out.println("📂 [RESTORE] " + verified.get() + "/" + total + " documents " + (dryRun ? "verified" : "restored")
+                + " (" + bytes.get() + " bytes), " + failures.size() + " failed");
+        if (!failures.isEmpty()) {
+            failures.forEach(failure -> System.err.println("❌ [RESTORE] " + failure));
+            throw new IOException(failures.size() + " document(s) failed verification, first: " + failures.peek());
+        }
+        return summary;
+    }
+
+    // Extracts one entry next to its destination and moves it into place only if both checksums match
+    private long extract(ZipFile zip, ZipEntry entry, String expectedSha256) throws Exception {
+        Path destination = resolve(entry.getName());
+        Path part = destination.resolveSibling(destination.getFileName() + ".restore.part");
+        CRC32 crc = new CRC32();
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        long size = 0;
+
+        if (!dryRun) {
+            Files.createDirectories(destination.getParent());
+        }
+        try (InputStream in = zip.getInputStream(entry);
+             OutputStream out = dryRun ? OutputStream.nullOutputStream() : Files.newOutputStream(part)) {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                crc.update(buffer, 0, n);
+                digest.update(buffer, 0, n);
+                out.write(buffer, 0, n);
+                size += n;
+            }
+        } catch (Exception e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+
+        String sha256 = HexFormat.of().formatHex(digest.digest());
+        String problem = null;
+        if (entry.getCrc() != -1 && crc.getValue() != entry.getCrc()) {
+            problem = "CRC-32 mismatch";
+        } else if (expectedSha256 != null && !expectedSha256.equals(sha256)) {
+            problem = "SHA-256 mismatch (expected " + expectedSha256 + ", got " + sha256 + ")";
+        }
+        if (problem != null) {
+            Files.deleteIfExists(part);
+            throw new IOException(problem);
+        }
+
+        if (!dryRun) {
+            Files.move(part, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return size;
+    }
+
+    // Archive paths are relative to shared_documents and must stay inside it
+    private static Path resolve(String relativePath) throws IOException {
+        Path path = DOCUMENTS_DIR.resolve(relativePath).normalize();
+        if (!path.startsWith(DOCUMENTS_DIR) || path.equals(DOCUMENTS_DIR)) {
+            throw new IOException("Path outside shared_documents: " + relativePath);
+        }
+        return path;
+    }
+
+    private void update(int percent, String status) {
+        System.out.println("📊 [RESTORE] " + percent + "% - " + status);
+        if (progress != null) {
+            try {
+                progress.onProgressUpdate(percent, status);
+            } catch (Exception e) {
+                System.err.println("Error in progress callback: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -1,139 +1,283 @@
 package com.example.offlinedocumenthubserver;
 
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
+import static com.example.offlinedocumenthubserver.RESTServer.activeBackupProgress;
 import static com.example.offlinedocumenthubserver.RESTServer.googleDriveService;
 import static com.example.offlinedocumenthubserver.RESTServer.sendAdminNotification;
 import static com.example.offlinedocumenthubserver.RESTServer.storeBackupHistory;
 
+// Schedules automatic backups instead of polling for them. The next run is computed from the last
+// successful backup recorded in backup_history (so a restart doesn't trigger an immediate backup),
+// moved into the allowed window (cron syntax, see BackupWindow) and spread by a random jitter. The
+// scheduler sleeps until then; if the target can't be reached or another backup is running, the run
+// is retried later with backoff. Reachability probes are cached so they never hit the network more
+// than once per probe interval.
 public class ServerAutoBackupService {
-    // Reduced from 4 hours to 1 minute for testing
-    private static final long BACKUP_INTERVAL_MINUTES = 500;
-    private static final long BACKUP_INTERVAL_MS = BACKUP_INTERVAL_MINUTES * 60 * 1000;
-    private static LocalDateTime lastBackupTime = null;
-    private static Timer autoBackupTimer;
-    private static boolean isRunning = false;
-
-    public static void startAutoBackupService() {
+    private static final long BACKUP_INTERVAL_MINUTES = Long.getLong("odh.backup.intervalMinutes", 500);
+    // Off-peak by default: any minute between 01:00 and 05:59
+    private static final String WINDOW_EXPRESSION = System.getProperty("odh.backup.window", "* 1-5 * * *");
+    private static final long JITTER_MINUTES = Long.getLong("odh.backup.jitterMinutes", 20);
+    private static final long RETRY_MINUTES = Long.getLong("odh.backup.retryMinutes", 10);
+    private static final long PROBE_CACHE_SECONDS = Long.getLong("odh.backup.probeCacheSeconds", 60);
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static BackupWindow window;
+    private static volatile ScheduledFuture<?> pendingRun;
+    private static volatile boolean isRunning = false;
+
+    // Scheduler state; written on the backup pool's thread, read by /api/backup/active
+    private static volatile String state = "stopped";
+    private static volatile LocalDateTime nextRunTime = null;
+    private static volatile String nextRunReason = null;
+    private static volatile LocalDateTime lastBackupTime = null;
+    private static volatile LocalDateTime lastAttemptTime = null;
+    private static volatile String lastResult = null;
+    private static volatile String lastError = null;
+    private static volatile int consecutiveFailures = 0;
+    private static volatile int deferrals = 0;
+
+    private static Boolean probeResult = null;
+    private static long probeCheckedAt = 0;
+
+    public static synchronized void startAutoBackupService() {
         if (isRunning) {
             return;
         }
 
-        System.out.println("🔄 Starting server-side auto backup service...");
-        System.out.println("⏰ Backup interval: " + BACKUP_INTERVAL_MINUTES + " minute(s)");
+        try {
+            window = new BackupWindow(WINDOW_EXPRESSION);
+        } catch (IllegalArgumentException e) {
+            System.err.println("❌ [AUTO-BACKUP] " + e.getMessage() + " - using * 1-5 * * *");
+            window = new BackupWindow("* 1-5 * * *");
+        }
+
+        System.out.println("🔄 Starting server-side auto backup scheduler...");
+        System.out.println("⏰ Backup interval: " + BACKUP_INTERVAL_MINUTES + " minute(s), window: " + window
+                + ", jitter: up to " + JITTER_MINUTES + " minute(s)");
         isRunning = true;
 
-        autoBackupTimer = new Timer(true);
-        // Check every 30 seconds for backup conditions (more frequent for testing)
-        autoBackupTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                checkAndTriggerAutoBackup();
+        // Runs on the backup pool like every later step, so scheduler state is only touched by that one
+        // thread and an automatic backup queues behind a manual one instead of overlapping it
+        BackgroundExecutors.submit(BackgroundExecutors.Pool.BACKUP, () -> {
+            loadLastRun();
+            scheduleNext(LocalDateTime.now(), "startup");
+        });
+    }
+
+    // Restores the last successful backup and the run of failed auto backups since then
+    private static void loadLastRun() {
+        String sql = "SELECT backup_type, status, start_time, end_time FROM backup_history " +
+                "WHERE status IN ('success', 'failed') ORDER BY start_time DESC LIMIT 50";
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+
+            int failures = 0;
+            while (rs.next()) {
+                Timestamp end = rs.getTimestamp("end_time");
+                LocalDateTime finished = (end != null ? end : rs.getTimestamp("start_time")).toLocalDateTime();
+                if (lastAttemptTime == null) {
+                    lastAttemptTime = finished;
+                    lastResult = rs.getString("status");
+                }
+                if ("success".equals(rs.getString("status"))) {
+                    lastBackupTime = finished;
+                    break;
+                }
+                if ("auto".equals(rs.getString("backup_type"))) {
+                    failures++;
+                }
             }
-        }, 0, 30 * 1000); // Check every 30 seconds
+            consecutiveFailures = failures;
+            System.out.println("📜 [AUTO-BACKUP] Last successful backup: "
+                    + (lastBackupTime != null ? lastBackupTime.format(TIME_FORMAT) : "never")
+                    + (failures > 0 ? ", " + failures + " failed auto backup(s) since" : ""));
+        } catch (Exception e) {
+            System.err.println("⚠️ [AUTO-BACKUP] Could not read backup history: " + e.getMessage());
+        }
     }
 
-    private static void checkAndTriggerAutoBackup() {
+    // Plans the next run for no earlier than notBefore, and no earlier than one interval after the last backup
+    private static void scheduleNext(LocalDateTime notBefore, String reason) {
+        if (!isRunning) {
+            return;
+        }
+        LocalDateTime due = notBefore;
+        if (lastBackupTime != null && lastBackupTime.plusMinutes(BACKUP_INTERVAL_MINUTES).isAfter(due)) {
+            due = lastBackupTime.plusMinutes(BACKUP_INTERVAL_MINUTES);
+        }
+
+        LocalDateTime start = window.nextAllowed(due);
+        if (start == null) {
+            state = "disabled";
+            nextRunTime = null;
+            nextRunReason = "window " + window + " never opens";
+            System.err.println("❌ [AUTO-BACKUP] Backup window " + window + " never opens - automatic backups disabled");
+            return;
+        }
+
+        // Spread the start inside the window so several servers don't all hit the target at once
+        long open = window.minutesOpenFrom(start, JITTER_MINUTES + 1);
+        if (open > 1) {
+            start = start.plusSeconds(ThreadLocalRandom.current().nextLong((open - 1) * 60));
+        }
+
+        long delayMs = Math.max(0, Duration.between(LocalDateTime.now(), start).toMillis());
+        nextRunTime = start;
+        nextRunReason = reason;
+        state = "scheduled";
+        pendingRun = BackgroundExecutors.schedule(BackgroundExecutors.Pool.BACKUP,
+                ServerAutoBackupService::runDue, delayMs, TimeUnit.MILLISECONDS);
+        System.out.println("⏰ [AUTO-BACKUP] Next backup at " + start.format(TIME_FORMAT) + " (" + reason + ")");
+    }
+
+    private static void runDue() {
         try {
-            System.out.println("🔍 [AUTO-BACKUP] Checking conditions at " +
-                    LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")));
+            // The machine may have slept past the window; start over from now
+            if (!window.matches(LocalDateTime.now())) {
+                scheduleNext(LocalDateTime.now(), "missed window");
+                return;
+            }
 
-            // Check 1: Internet connection available
-            if (!isInternetAvailable()) {
-                System.out.println("🌐 [AUTO-BACKUP] No internet - skipping");
+            // A manual backup finished since this run was planned; the interval counts from that one
+            if (lastBackupTime != null && lastBackupTime.plusMinutes(BACKUP_INTERVAL_MINUTES).isAfter(LocalDateTime.now())) {
+                scheduleNext(LocalDateTime.now(), "interval after manual backup");
                 return;
             }
 
-            // Check 2: Google Drive service ready
             if (googleDriveService == null) {
-                System.out.println("❌ [AUTO-BACKUP] Google Drive not ready - skipping");
+                defer("backup service not ready");
                 return;
             }
 
-            // Check 3: Backup not already running
-            if (googleDriveService.isBackupRunning()) {
-                System.out.println("⏳ [AUTO-BACKUP] Backup already in progress - skipping");
+            BackupTarget target = googleDriveService.getTarget();
+            state = "probing";
+            if (!isTargetReachable(target)) {
+                defer("backup target " + target.getName() + " not reachable");
                 return;
             }
 
-            // Check 4: Enough time passed since last backup
-            if (lastBackupTime != null) {
-                long timeSinceLastBackup = Duration.between(lastBackupTime, LocalDateTime.now()).toMillis();
-                if (timeSinceLastBackup < BACKUP_INTERVAL_MS) {
-                    long secondsLeft = (BACKUP_INTERVAL_MS - timeSinceLastBackup) / 1000;
-                    System.out.println("⏰ [AUTO-BACKUP] Too soon - " + secondsLeft + " seconds remaining");
-                    return;
-                }
+            if (googleDriveService.isBackupRunning() || RestoreEngine.isRestoreRunning()) {
+                defer("another backup is in progress");
+                return;
             }
 
-            // All conditions met - trigger auto-backup
+            deferrals = 0;
+            state = "running";
+            nextRunTime = null;
+            nextRunReason = null;
             System.out.println("✅ [AUTO-BACKUP] All conditions met - triggering backup");
-            triggerServerAutoBackup();
 
+            if (triggerServerAutoBackup()) {
+                consecutiveFailures = 0;
+                scheduleNext(LocalDateTime.now(), "interval");
+            } else {
+                consecutiveFailures++;
+                // Back off 10, 20, 40... minutes, never longer than the normal interval
+                long backoff = Math.min(RETRY_MINUTES << Math.min(consecutiveFailures - 1, 10), BACKUP_INTERVAL_MINUTES);
+                scheduleNext(LocalDateTime.now().plusMinutes(backoff), "retry after failure #" + consecutiveFailures);
+            }
         } catch (Exception e) {
-            System.err.println("❌ [AUTO-BACKUP] Check error: " + e.getMessage());
+            System.err.println("❌ [AUTO-BACKUP] Scheduler error: " + e.getMessage());
+            scheduleNext(LocalDateTime.now().plusMinutes(RETRY_MINUTES), "retry after scheduler error");
         }
     }
 
-    private static boolean isInternetAvailable() {
-        try {
-            URL url = new URL("https://www.google.com");
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setConnectTimeout(5000);
-            connection.setReadTimeout(5000);
-            connection.setRequestMethod("HEAD");
-            int responseCode = connection.getResponseCode();
-            return (responseCode == 200);
-        } catch (Exception e) {
-            return false;
+    private static void defer(String why) {
+        deferrals++;
+        System.out.println("⏳ [AUTO-BACKUP] Deferred: " + why);
+        scheduleNext(LocalDateTime.now().plusMinutes(RETRY_MINUTES), why);
+    }
+
+    // Answers from the cache while it is fresh, so the target is probed at most once per interval
+    private static synchronized boolean isTargetReachable(BackupTarget target) {
+        long now = System.currentTimeMillis();
+        if (probeResult == null || now - probeCheckedAt >= PROBE_CACHE_SECONDS * 1000) {
+            probeResult = target.isReachable();
+            probeCheckedAt = now;
         }
+        return probeResult;
     }
 
-    private static void triggerServerAutoBackup() {
+    private static boolean triggerServerAutoBackup() {
+        // Generate backup folder name
+        String timestamp = new java.text.SimpleDateFormat("yyyyMMdd_HHmmss").format(new java.util.Date());
+        String backupFolderName = "DocumentHub_Backup_" + timestamp;
+        String backupId = UUID.randomUUID().toString();
+        lastAttemptTime = LocalDateTime.now();
+
+        // Visible in /api/backup/active like a manual backup
+        Map<String, Object> progress = new HashMap<>();
+        progress.put("progress", 0);
+        progress.put("status", "Starting automatic backup...");
+        progress.put("active", true);
+        progress.put("backupId", backupId);
+        progress.put("backupFolder", backupFolderName);
+        progress.put("backupType", "auto");
+        progress.put("startTime", System.currentTimeMillis());
+        activeBackupProgress.put(backupId, progress);
+
         try {
             System.out.println("🚀 [AUTO-BACKUP] Starting automatic backup...");
 
-            // Generate backup folder name
-            String timestamp = new java.text.SimpleDateFormat("yyyyMMdd_HHmmss").format(new java.util.Date());
-            String backupFolderName = "DocumentHub_Backup_" + timestamp;
-
             // Store initial backup history
             storeBackupHistory("auto", "System", backupFolderName, "in_progress", null, 0, 0);
 
             // Send start notification
             sendAdminNotification("Auto-backup Started",
                     "Automatic backup process started at " +
-                            LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) +
+                            LocalDateTime.now().format(TIME_FORMAT) +
                             "\nBackup folder: " + backupFolderName);
 
+            googleDriveService.setProgressCallback((progressValue, status) -> {
+                progress.put("progress", progressValue);
+                progress.put("status", status);
+                progress.put("lastUpdate", System.currentTimeMillis());
+            });
+
             // Use the existing GoogleDriveService instance directly
             Map<String, Object> backupResult = googleDriveService.performBackup("auto", "System");
 
             if (Boolean.TRUE.equals(backupResult.get("success"))) {
                 lastBackupTime = LocalDateTime.now();
+                lastResult = "success";
+                lastError = null;
 
                 // Update backup history with success
-                storeBackupHistory("auto", "System", backupFolderName, "success", null, 0, 0);
+                storeBackupHistory("auto", "System", backupFolderName, "success", null,
+                        ((Number) backupResult.get("fileCount")).intValue(), ((Number) backupResult.get("totalSize")).longValue());
 
                 System.out.println("✅ [AUTO-BACKUP] Completed successfully at " + lastBackupTime);
 
                 // Send success notification
                 sendAdminNotification("Auto-backup Completed",
                         "Automatic backup completed successfully!\n" +
-                                "Completed at: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) + "\n" +
+                                "Completed at: " + LocalDateTime.now().format(TIME_FORMAT) + "\n" +
                                 "Backup folder: " + backupResult.get("folderName") + "\n" +
-                                "All data has been securely backed up to Google Drive.");
+                                "All data has been securely backed up to " + googleDriveService.getTarget().getLocation() + ".");
+                return true;
 
             } else {
                 String errorMessage = (String) backupResult.get("message");
                 System.err.println("❌ [AUTO-BACKUP] Failed: " + errorMessage);
+                lastResult = "failed";
+                lastError = errorMessage;
 
                 // Update backup history with failure
                 storeBackupHistory("auto", "System", backupFolderName, "failed", errorMessage, 0, 0);
@@ -141,35 +285,51 @@ public class ServerAutoBackupService {
                 // Send failure notification
                 sendAdminNotification("Auto-backup Failed",
                         "Automatic backup failed!\n" +
-                                "Attempted at: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) + "\n" +
+                                "Attempted at: " + LocalDateTime.now().format(TIME_FORMAT) + "\n" +
                                 "Error: " + errorMessage + "\n" +
                                 "Please check the server logs.");
+                return false;
             }
 
         } catch (Exception e) {
             String errorMessage = e.getMessage();
             System.err.println("❌ [AUTO-BACKUP] Error: " + errorMessage);
+            lastResult = "failed";
+            lastError = errorMessage;
 
             // Store error in backup history
-            String timestamp = new java.text.SimpleDateFormat("yyyyMMdd_HHmmss").format(new java.util.Date());
-            String backupFolderName = "DocumentHub_Backup_" + timestamp;
             storeBackupHistory("auto", "System", backupFolderName, "failed", errorMessage, 0, 0);
 
             // Send error notification
             sendAdminNotification("Auto-backup Error",
                     "Automatic backup encountered an error!\n" +
-                            "Attempted at: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) + "\n" +
+                            "Attempted at: " + LocalDateTime.now().format(TIME_FORMAT) + "\n" +
                             "Error: " + errorMessage + "\n" +
                             "Please check the server connectivity.");
+            return false;
+        } finally {
+            // Keep the outcome readable through /api/backup/progress for a while, as for manual backups
+            BackgroundExecutors.schedule(() -> activeBackupProgress.remove(backupId), 5, TimeUnit.MINUTES);
         }
     }
 
-    public static void stopAutoBackupService() {
-        if (autoBackupTimer != null) {
-            autoBackupTimer.cancel();
-            autoBackupTimer = null;
-        }
+    // Called when a manual backup succeeds (on the backup pool, like the scheduler), so the next
+    // automatic one is one interval after it rather than after the last automatic run
+    static void manualBackupSucceeded() {
+        lastBackupTime = LocalDateTime.now();
+        lastAttemptTime = lastBackupTime;
+        lastResult = "success";
+        lastError = null;
+    }
+
+    public static synchronized void stopAutoBackupService() {
         isRunning = false;
+        if (pendingRun != null) {
+            pendingRun.cancel(false);
+            pendingRun = null;
+        }
+        state = "stopped";
+        nextRunTime = null;
         System.out.println("🛑 Server auto backup service stopped");
     }
 
@@ -181,4 +341,40 @@ public class ServerAutoBackupService {
     public static LocalDateTime getLastBackupTime() {
         return lastBackupTime;
     }
-}
\ No newline at end of file
+
+    // Scheduler state and queued runs for /api/backup/active
+    public static Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", state);
+        status.put("window", window != null ? window.toString() : WINDOW_EXPRESSION);
+        status.put("intervalMinutes", BACKUP_INTERVAL_MINUTES);
+        status.put("jitterMinutes", JITTER_MINUTES);
+
+        List<Map<String, Object>> queue = new ArrayList<>();
+        LocalDateTime next = nextRunTime;
+        ScheduledFuture<?> pending = pendingRun;
+        if (next != null && pending != null && !pending.isDone()) {
+            Map<String, Object> run = new LinkedHashMap<>();
+            run.put("backupType", "auto");
+            run.put("scheduledFor", next.format(TIME_FORMAT));
+            run.put("inSeconds", Math.max(0, pending.getDelay(TimeUnit.SECONDS)));
+            run.put("reason", nextRunReason);
+            queue.add(run);
+        }
+        status.put("queue", queue);
+
+        status.put("lastBackup", lastBackupTime != null ? lastBackupTime.format(TIME_FORMAT) : null);
+        status.put("lastAttempt", lastAttemptTime != null ? lastAttemptTime.format(TIME_FORMAT) : null);
+        status.put("lastResult", lastResult);
+        status.put("lastError", lastError);
+        status.put("consecutiveFailures", consecutiveFailures);
+        status.put("deferrals", deferrals);
+        synchronized (ServerAutoBackupService.class) {
+            if (probeResult != null) {
+                status.put("targetReachable", probeResult);
+                status.put("probeAgeSeconds", (System.currentTimeMillis() - probeCheckedAt) / 1000);
+            }
+        }
+        return status;
+    }
+}
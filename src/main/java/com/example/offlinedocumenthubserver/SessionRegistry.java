@@ -0,0 +1,244 @@
+package com.example.offlinedocumenthubserver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Live login sessions, keyed by auth token.
+//
+// Expiry uses a timing wheel: each session is filed under the tick at which it would expire if it
+// were never used again. The sweeper only looks at the slots whose time has come. A session found
+// there that was used in the meantime is filed again under its new deadline; one that wasn't is
+// removed. A sweep therefore costs the sessions that are due, not every session, and a request
+// only writes a timestamp. Deadlines are never more than one timeout ahead, so one wheel spanning
+// the timeout is enough and no hierarchy of wheels is needed.
+public class SessionRegistry {
+    private static final long TIMEOUT_MS = Long.getLong("odh.sessions.timeoutMinutes", 10) * 60 * 1000;
+    private static final long TICK_MS = Math.max(1000, Long.getLong("odh.sessions.tickSeconds", 10) * 1000);
+    // Logging in again beyond this ends the user's least recently used session; 0 = no limit
+    private static final int MAX_PER_USER = Integer.getInteger("odh.sessions.maxPerUser", 10);
+
+    private static final ConcurrentHashMap<String, UserSession> sessions = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Integer, Set<String>> tokensByUser = new ConcurrentHashMap<>();
+
+    // Slot i holds the tokens due at ticks congruent to i; +2 keeps the newest deadline from
+    // landing in the slot being swept
+    private static final int SLOTS = (int) ((TIMEOUT_MS + TICK_MS - 1) / TICK_MS) + 2;
+    private static final List<Queue<String>> wheel = new ArrayList<>(SLOTS);
+    private static volatile long sweptTick = System.currentTimeMillis() / TICK_MS;
+    private static ScheduledFuture<?> sweeper;
+
+    // Metrics
+    private static final AtomicInteger peakLive = new AtomicInteger();
+    private static final AtomicLong created = new AtomicLong();
+    private static final AtomicLong expired = new AtomicLong();
+    private static final AtomicLong loggedOut = new AtomicLong();
+    private static final AtomicLong evictedByCap = new AtomicLong();
+    private static final AtomicLong refiled = new AtomicLong();
+    private static final AtomicLong sweeps = new AtomicLong();
+
+    static {
+        for (int i = 0; i < SLOTS; i++) {
+            wheel.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    public static synchronized void start() {
+        if (sweeper != null) {
+            return;
+        }
+        sweeper = BackgroundExecutors.scheduleWithFixedDelay(BackgroundExecutors.Pool.MAINTENANCE,
+                SessionRegistry::sweep, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+        System.out.println("🔑 [SESSIONS] Session timeout " + TIMEOUT_MS / 60000 + " min, checked every "
+                + TICK_MS / 1000 + " s" + (MAX_PER_USER > 0 ? ", max " + MAX_PER_USER + " per user" : ""));
+        SessionStore.start(TIMEOUT_MS);
+    }
+
+    public static synchronized void shutdown() {
+        if (sweeper != null) {
+            sweeper.cancel(false);
+            sweeper = null;
+        }
+        SessionStore.shutdown();
+    }
+
+    public static void register(String token, UserSession session) {
+        sessions.put(token, session);
+        created.incrementAndGet();
+        index(token, session);
+        SessionStore.saved(token, session);
+    }
+
+    // After a restart a token may only be known to the persistent store
+    private static UserSession reload(String token) {
+        UserSession stored = SessionStore.load(token);
+        if (stored == null) {
+            return null;
+        }
+        UserSession existing = sessions.putIfAbsent(token, stored);
+        if (existing != null) {
+            return existing;
+        }
+        index(token, stored);
+        return stored;
+    }
+
+    private static void index(String token, UserSession session) {
+        peakLive.accumulateAndGet(sessions.size(), Math::max);
+        file(token, session);
+
+        if (MAX_PER_USER > 0) {
+            List<String> over = new ArrayList<>();
+            tokensByUser.compute(session.userId, (id, tokens) -> {
+                Set<String> updated = tokens != null ? tokens : new LinkedHashSet<>();
+                updated.add(token);
+                while (updated.size() > MAX_PER_USER) {
+                    String oldest = leastRecentlyUsed(updated);
+                    updated.remove(oldest);
+                    over.add(oldest);
+                }
+                return updated;
+            });
+            for (String old : over) {
+                if (sessions.remove(old) != null) {
+                    evictedByCap.incrementAndGet();
+                    SessionStore.removed(old);
+                }
+            }
+        }
+    }
+
+    private static String leastRecentlyUsed(Set<String> tokens) {
+        String oldest = null;
+        long oldestAccess = Long.MAX_VALUE;
+        for (String token : tokens) {
+            UserSession session = sessions.get(token);
+            // A token whose session is already gone is the first to drop
+            long access = session != null ? session.lastAccessed() : Long.MIN_VALUE;
+            if (oldest == null || access < oldestAccess) {
+                oldest = token;
+                oldestAccess = access;
+            }
+        }
+        return oldest;
+    }
+
+    // The session for token, or null when there is none or it has timed out. Counts as activity.
+    public static UserSession get(String token) {
+        if (token == null) {
+            return null;
+        }
+        UserSession session = sessions.get(token);
+        if (session == null && (session = reload(token)) == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (session.isExpired(now, TIMEOUT_MS)) {
+            if (sessions.remove(token, session)) {
+                expired.incrementAndGet();
+                forget(token, session);
+            }
+            return null;
+        }
+        if (session.touch(now)) {
+            SessionStore.touched(token, now);
+        }
+        return session;
+    }
+
+    public static UserSession remove(String token) {
+        if (token == null) {
+            return null;
+        }
+        UserSession session = sessions.remove(token);
+        if (session != null) {
+            loggedOut.incrementAndGet();
+            forget(token, session);
+        }
+        return session;
+    }
+
+    public static int size() {
+        return sessions.size();
+    }
+
+    public static Collection<UserSession> list() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    private static void file(String token, UserSession session) {
+        // Never behind the sweeper, or the token would wait a whole lap
+        long dueTick = Math.max((session.lastAccessed() + TIMEOUT_MS + TICK_MS - 1) / TICK_MS, sweptTick + 1);
+        wheel.get((int) (dueTick % SLOTS)).add(token);
+    }
+
+    private static void forget(String token, UserSession session) {
+        SessionStore.removed(token);
+        if (MAX_PER_USER > 0) {
+            tokensByUser.computeIfPresent(session.userId, (id, tokens) -> {
+                tokens.remove(token);
+                return tokens.isEmpty() ? null : tokens;
+            });
+        }
+    }
+
+    private static void sweep() {
+        long now = System.currentTimeMillis();
+        long nowTick = now / TICK_MS;
+        // After a long pause (suspended machine) one lap covers every slot
+        long from = Math.max(sweptTick + 1, nowTick - SLOTS + 1);
+        for (long tick = from; tick <= nowTick; tick++) {
+            Queue<String> slot = wheel.get((int) (tick % SLOTS));
+            // Only drain what was due; tokens filed during this pass belong to a later lap
+            for (int n = slot.size(); n > 0; n--) {
+                String token = slot.poll();
+                if (token == null) {
+                    break;
+                }
+                UserSession session = sessions.get(token);
+                if (session == null) {
+                    continue;
+                }
+                if (session.isExpired(now, TIMEOUT_MS)) {
+                    if (sessions.remove(token, session)) {
+                        expired.incrementAndGet();
+                        forget(token, session);
+                    }
+                } else {
+                    refiled.incrementAndGet();
+                    file(token, session);
+                }
+            }
+        }
+        sweptTick = nowTick;
+        sweeps.incrementAndGet();
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("live", sessions.size());
+        stats.put("peakLive", peakLive.get());
+        stats.put("usersWithSessions", tokensByUser.size());
+        stats.put("created", created.get());
+        stats.put("expired", expired.get());
+        stats.put("loggedOut", loggedOut.get());
+        stats.put("evictedByCap", evictedByCap.get());
+        stats.put("refiled", refiled.get());
+        stats.put("sweeps", sweeps.get());
+        stats.put("timeoutMinutes", TIMEOUT_MS / 60000);
+        stats.put("maxPerUser", MAX_PER_USER);
+        stats.put("store", SessionStore.getStats());
+        return stats;
+    }
+}
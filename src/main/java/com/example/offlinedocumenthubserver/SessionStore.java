@@ -0,0 +1,273 @@
+package com.example.offlinedocumenthubserver;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Optional database copy of the login sessions (-Dodh.sessions.store=database), so a restart or
+// redeploy doesn't log every client out at once.
+//
+// SessionRegistry stays the source of truth while the server runs; this class only mirrors it.
+// Logins are written straight away (the login request is hitting the database anyway). Last-access
+// times and removals are collected in memory and written in batches every odh.sessions.flushSeconds,
+// so ordinary requests never wait for a write. After a restart a token the registry doesn't know is
+// looked up here once and adopted. That is only needed until one timeout after start-up: by then
+// every session from before the restart has either been picked up or has expired.
+//
+// Rows are keyed by a SHA-256 of the token, so the table never contains usable bearer tokens.
+public class SessionStore {
+    private static final boolean ENABLED = "database".equalsIgnoreCase(System.getProperty("odh.sessions.store", "memory"));
+    private static final long FLUSH_MS = Math.max(1, Long.getLong("odh.sessions.flushSeconds", 30)) * 1000;
+    // Unknown tokens remembered as unknown, so a client retrying a dead token doesn't query every time
+    private static final int MISSING_CACHE_MAX = 10_000;
+
+    private static final ConcurrentHashMap<String, Long> pendingTouches = new ConcurrentHashMap<>();
+    private static final ConcurrentLinkedQueue<String> pendingDeletes = new ConcurrentLinkedQueue<>();
+    private static final ConcurrentHashMap<String, Boolean> knownMissing = new ConcurrentHashMap<>();
+    // Logged out or evicted while the row may still exist (delete not flushed yet); load() must not
+    // bring these back
+    private static final Set<String> removedUnflushed = ConcurrentHashMap.newKeySet();
+    private static volatile long reloadUntil = 0;
+    private static volatile long timeoutMs;
+    private static ScheduledFuture<?> flusher;
+
+    // Metrics
+    private static final AtomicLong inserted = new AtomicLong();
+    private static final AtomicLong touchesWritten = new AtomicLong();
+    private static final AtomicLong deletesWritten = new AtomicLong();
+    private static final AtomicLong purged = new AtomicLong();
+    private static final AtomicLong reloaded = new AtomicLong();
+    private static final AtomicLong lookups = new AtomicLong();
+    private static final AtomicLong flushes = new AtomicLong();
+    private static final AtomicLong failures = new AtomicLong();
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public static synchronized void start(long sessionTimeoutMs) {
+        if (!ENABLED || flusher != null) {
+            return;
+        }
+        timeoutMs = sessionTimeoutMs;
+        try {
+            ensureTable();
+        } catch (SQLException e) {
+            System.err.println("⚠️ [SESSIONS] Could not prepare user_sessions: " + e.getMessage());
+        }
+        reloadUntil = System.currentTimeMillis() + sessionTimeoutMs;
+        flusher = BackgroundExecutors.scheduleWithFixedDelay(BackgroundExecutors.Pool.MAINTENANCE,
+                SessionStore::flush, FLUSH_MS, FLUSH_MS, TimeUnit.MILLISECONDS);
+        System.out.println("💾 [SESSIONS] Sessions persisted to the database (flush every " + FLUSH_MS / 1000 + " s)");
+    }
+
+    // Writes whatever is still pending; called before the connection pool shuts down
+    public static synchronized void shutdown() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.cancel(false);
+        flusher = null;
+        flush();
+    }
+
+    private static void ensureTable() throws SQLException {
+        String sql = "CREATE TABLE IF NOT EXISTS user_sessions (" +
+                "token_hash CHAR(64) NOT NULL PRIMARY KEY, " +
+                "user_id INT NOT NULL, " +
+                "username VARCHAR(50) NOT NULL, " +
+                "role VARCHAR(20) DEFAULT NULL, " +
+                "full_name VARCHAR(100) DEFAULT NULL, " +
+                "created_at BIGINT NOT NULL, " +
+                "last_accessed BIGINT NOT NULL, " +
+                "KEY idx_user_sessions_last_accessed (last_accessed))";
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    static void saved(String token, UserSession session) {
+        if (!ENABLED) {
+            return;
+        }
+        String sql = "INSERT INTO user_sessions (token_hash, user_id, username, role, full_name, created_at, last_accessed) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)";
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, hash(token));
+            stmt.setInt(2, session.userId);
+            stmt.setString(3, session.username);
+            stmt.setString(4, session.role);
+            stmt.setString(5, session.fullName);
+            stmt.setLong(6, session.createdAt);
+            stmt.setLong(7, session.lastAccessed());
+            stmt.executeUpdate();
+            inserted.incrementAndGet();
+        } catch (SQLException e) {
+            // The login still works, it just won't survive a restart
+            failures.incrementAndGet();
+            System.err.println("⚠️ [SESSIONS] Could not persist session: " + e.getMessage());
+        }
+    }
+
+    static void touched(String token, long at) {
+        if (ENABLED) {
+            pendingTouches.put(hash(token), at);
+        }
+    }
+
+    static void removed(String token) {
+        if (ENABLED) {
+            String tokenHash = hash(token);
+            pendingTouches.remove(tokenHash);
+            if (System.currentTimeMillis() <= reloadUntil) {
+                removedUnflushed.add(tokenHash);
+            }
+            pendingDeletes.add(tokenHash);
+        }
+    }
+
+    // The persisted session for a token the registry doesn't hold, or null
+    static UserSession load(String token) {
+        if (!ENABLED || System.currentTimeMillis() > reloadUntil) {
+            return null;
+        }
+        String tokenHash = hash(token);
+        if (knownMissing.containsKey(tokenHash) || removedUnflushed.contains(tokenHash)) {
+            return null;
+        }
+        lookups.incrementAndGet();
+        String sql = "SELECT user_id, username, role, full_name, created_at, last_accessed FROM user_sessions WHERE token_hash = ?";
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, tokenHash);
+            try (ResultSet rs = stmt.executeQuery()) {
+                // Checked again after the query: a logout may have happened while it ran
+                if (rs.next() && System.currentTimeMillis() - rs.getLong("last_accessed") <= timeoutMs
+                        && !removedUnflushed.contains(tokenHash)) {
+                    reloaded.incrementAndGet();
+                    return new UserSession(rs.getInt("user_id"), rs.getString("username"), rs.getString("role"),
+                            rs.getString("full_name"), rs.getLong("created_at"), rs.getLong("last_accessed"));
+                }
+            }
+        } catch (SQLException e) {
+            failures.incrementAndGet();
+            System.err.println("⚠️ [SESSIONS] Session lookup failed: " + e.getMessage());
+            return null;
+        }
+        if (knownMissing.size() >= MISSING_CACHE_MAX) {
+            knownMissing.clear();
+        }
+        knownMissing.put(tokenHash, Boolean.TRUE);
+        return null;
+    }
+
+    private static synchronized void flush() {
+        Map<String, Long> touches = new HashMap<>();
+        for (Map.Entry<String, Long> entry : pendingTouches.entrySet()) {
+            // Conditional remove keeps a newer time that arrived meanwhile for the next flush
+            if (pendingTouches.remove(entry.getKey(), entry.getValue())) {
+                touches.put(entry.getKey(), entry.getValue());
+            }
+        }
+        List<String> deletes = new ArrayList<>();
+        String tokenHash;
+        while ((tokenHash = pendingDeletes.poll()) != null) {
+            deletes.add(tokenHash);
+        }
+
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                if (!touches.isEmpty()) {
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            "UPDATE user_sessions SET last_accessed = ? WHERE token_hash = ? AND last_accessed < ?")) {
+                        for (Map.Entry<String, Long> entry : touches.entrySet()) {
+                            stmt.setLong(1, entry.getValue());
+                            stmt.setString(2, entry.getKey());
+                            stmt.setLong(3, entry.getValue());
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                    }
+                }
+                if (!deletes.isEmpty()) {
+                    try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM user_sessions WHERE token_hash = ?")) {
+                        for (String hash : deletes) {
+                            stmt.setString(1, hash);
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                    }
+                }
+                // Sessions that timed out while the server was down never get an explicit delete
+                int stale;
+                try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM user_sessions WHERE last_accessed < ?")) {
+                    stmt.setLong(1, System.currentTimeMillis() - timeoutMs);
+                    stale = stmt.executeUpdate();
+                }
+                conn.commit();
+                // The rows are gone now, so a lookup can no longer find them
+                deletes.forEach(removedUnflushed::remove);
+                touchesWritten.addAndGet(touches.size());
+                deletesWritten.addAndGet(deletes.size());
+                purged.addAndGet(stale);
+                flushes.incrementAndGet();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            failures.incrementAndGet();
+            System.err.println("⚠️ [SESSIONS] Session flush failed, retrying next round: " + e.getMessage());
+            touches.forEach(pendingTouches::putIfAbsent);
+            pendingDeletes.addAll(deletes);
+        }
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", ENABLED);
+        if (!ENABLED) {
+            return stats;
+        }
+        stats.put("pendingTouches", pendingTouches.size());
+        stats.put("pendingDeletes", pendingDeletes.size());
+        stats.put("inserted", inserted.get());
+        stats.put("touchesWritten", touchesWritten.get());
+        stats.put("deletesWritten", deletesWritten.get());
+        stats.put("purged", purged.get());
+        stats.put("lookups", lookups.get());
+        stats.put("reloaded", reloaded.get());
+        stats.put("reloadWindowOpen", System.currentTimeMillis() <= reloadUntil);
+        stats.put("flushes", flushes.get());
+        stats.put("failures", failures.get());
+        return stats;
+    }
+}
@@ -0,0 +1,356 @@
+package com.example.offlinedocumenthubserver;
+
+import io.javalin.http.Context;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Stateless auth tokens (-Dodh.auth.mode=token), an alternative to the server-side session registry.
+//
+// A token carries the user's id, name, role and full name plus its expiry, and is signed with
+// HMAC-SHA256. Checking one costs a Base64 decode and one HMAC, with no map lookup and nothing
+// written per request. Any server holding the same key (odh.auth.tokenSecret, or the key file)
+// accepts it, so several instances can sit behind a load balancer.
+//
+// Tokens can't be extended in place, so a token past half its lifetime gets a fresh one in the
+// X-Auth-Token response header; clients that pick it up stay logged in while active. A renewed token
+// keeps the id of the login it came from, so logout revokes the whole chain by putting that id in a
+// revocation set for one lifetime, after which no token of the chain can still be valid. Revocations
+// are also written to the revoked_tokens table; every server reloads that table on start-up and every
+// odh.auth.revocationSyncSeconds, so a logout holds across restarts and on the other instances too
+// (there after at most one sync interval). Checking a token still never touches the database.
+//
+// Format: base64url(payload) "." base64url(HMAC-SHA256(payload)), payload as written by encode().
+public class SignedTokens {
+    public static final String RENEWAL_HEADER = "X-Auth-Token";
+
+    private static final boolean ENABLED = "token".equalsIgnoreCase(System.getProperty("odh.auth.mode", "session"));
+    private static final long TTL_MS = Long.getLong("odh.auth.tokenTtlMinutes", 60) * 60 * 1000;
+    private static final String SECRET_FILE = System.getProperty("odh.auth.tokenSecretFile", "tokens/auth_signing.key");
+    private static final long REVOCATION_SYNC_MS = Math.max(1, Long.getLong("odh.auth.revocationSyncSeconds", 10)) * 1000;
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final byte VERSION = 1;
+    private static final int TOKEN_ID_BYTES = 16;
+    // Anything longer can't be one of ours; refuse before decoding
+    private static final int MAX_TOKEN_LENGTH = 1024;
+
+    private static final SecureRandom random = new SecureRandom();
+    private static final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder decoder = Base64.getUrlDecoder();
+
+    private static volatile SecretKeySpec key;
+    private static volatile Mac prototype;
+    // Login token id -> time after which no token of that login can be valid any more
+    private static final ConcurrentHashMap<String, Long> revoked = new ConcurrentHashMap<>();
+    private static ScheduledFuture<?> syncer;
+
+    // Metrics
+    private static final AtomicLong issued = new AtomicLong();
+    private static final AtomicLong renewed = new AtomicLong();
+    private static final AtomicLong accepted = new AtomicLong();
+    private static final AtomicLong badSignature = new AtomicLong();
+    private static final AtomicLong expired = new AtomicLong();
+    private static final AtomicLong rejectedRevoked = new AtomicLong();
+    private static final AtomicLong revocationSyncs = new AtomicLong();
+    private static final AtomicLong revocationFailures = new AtomicLong();
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public static synchronized void start() {
+        if (!ENABLED || syncer != null) {
+            return;
+        }
+        try {
+            key = new SecretKeySpec(loadSecret(), ALGORITHM);
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            prototype = mac;
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("Cannot set up token signing: " + e.getMessage(), e);
+        }
+        try {
+            ensureTable();
+        } catch (SQLException e) {
+            System.err.println("⚠️ [AUTH] Could not prepare revoked_tokens: " + e.getMessage());
+        }
+        // Logouts from before a restart must hold from the first request on
+        syncRevoked();
+        syncer = BackgroundExecutors.scheduleWithFixedDelay(BackgroundExecutors.Pool.MAINTENANCE,
+                SignedTokens::syncRevoked, REVOCATION_SYNC_MS, REVOCATION_SYNC_MS, TimeUnit.MILLISECONDS);
+        System.out.println("🔏 [AUTH] Signed tokens enabled (lifetime " + TTL_MS / 60000 + " min, revocations synced every "
+                + REVOCATION_SYNC_MS / 1000 + " s)");
+    }
+
+    public static synchronized void shutdown() {
+        if (syncer != null) {
+            syncer.cancel(false);
+            syncer = null;
+        }
+    }
+
+    // The shared key from odh.auth.tokenSecret, else from the key file, which is created on first use
+    private static byte[] loadSecret() throws IOException {
+        String configured = System.getProperty("odh.auth.tokenSecret");
+        if (configured != null && !configured.isBlank()) {
+            byte[] secret = configured.getBytes(StandardCharsets.UTF_8);
+            if (secret.length < 32) {
+                throw new IOException("odh.auth.tokenSecret must be at least 32 bytes");
+            }
+            return secret;
+        }
+        Path file = Path.of(SECRET_FILE);
+        if (Files.exists(file)) {
+            return Files.readAllBytes(file);
+        }
+        byte[] secret = new byte[32];
+        random.nextBytes(secret);
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        // Owner-only from the moment the file exists, so the key is never readable by others
+        try {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system (Windows); the directory's ACLs apply
+            Files.createFile(file);
+        }
+        Files.write(file, secret);
+        System.out.println("🔑 [AUTH] Created token signing key " + file.toAbsolutePath()
+                + " - copy it to every server that should accept the same tokens");
+        return secret;
+    }
+
+    public static String issue(int userId, String username, String role, String fullName) {
+        long now = System.currentTimeMillis();
+        byte[] tokenId = new byte[TOKEN_ID_BYTES];
+        random.nextBytes(tokenId);
+        issued.incrementAndGet();
+        return sign(encode(tokenId, userId, username, role, fullName, now, now + TTL_MS));
+    }
+
+    // Same login, same token id, new expiry
+    private static String renew(Claims claims) {
+        UserSession session = claims.session;
+        renewed.incrementAndGet();
+        return sign(encode(decoder.decode(claims.tokenId), session.userId, session.username, session.role,
+                session.fullName, session.createdAt, System.currentTimeMillis() + TTL_MS));
+    }
+
+    // The session a request's token stands for, or null. Sets the renewal header on aging tokens.
+    public static UserSession authenticate(Context ctx, String token) {
+        Claims claims = verify(token);
+        if (claims == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (claims.expiresAt - now < TTL_MS / 2) {
+            ctx.header(RENEWAL_HEADER, renew(claims));
+        }
+        accepted.incrementAndGet();
+        return claims.session;
+    }
+
+    // Logout: this token and every renewal of the same login stop working, here at once and on the
+    // other servers at their next sync
+    public static UserSession revoke(String token) {
+        Claims claims = verify(token);
+        if (claims == null) {
+            return null;
+        }
+        // No token of the chain was issued after now, so none outlives now + TTL
+        long until = System.currentTimeMillis() + TTL_MS;
+        revoked.put(claims.tokenId, until);
+        persistRevocation(claims.tokenId, until);
+        return claims.session;
+    }
+
+    private static void ensureTable() throws SQLException {
+        String sql = "CREATE TABLE IF NOT EXISTS revoked_tokens (" +
+                "token_id VARCHAR(32) NOT NULL PRIMARY KEY, " +
+                "expires_at BIGINT NOT NULL, " +
+                "KEY idx_revoked_tokens_expires_at (expires_at))";
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private static void persistRevocation(String tokenId, long until) {
+        String sql = "INSERT INTO revoked_tokens (token_id, expires_at) VALUES (?, ?) " +
+                "ON DUPLICATE KEY UPDATE expires_at = GREATEST(expires_at, VALUES(expires_at))";
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, tokenId);
+            stmt.setLong(2, until);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            // The logout still holds on this server, just not on the others or after a restart
+            revocationFailures.incrementAndGet();
+            System.err.println("⚠️ [AUTH] Could not persist token revocation: " + e.getMessage());
+        }
+    }
+
+    private record Claims(String tokenId, long expiresAt, UserSession session) {
+    }
+
+    private static Claims verify(String token) {
+        if (token == null || token.length() > MAX_TOKEN_LENGTH || prototype == null) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0 || dot != token.lastIndexOf('.')) {
+            return null;
+        }
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = decoder.decode(token.substring(0, dot));
+            signature = decoder.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            badSignature.incrementAndGet();
+            return null;
+        }
+        // Constant-time compare, so response timing says nothing about how much of a forgery matched
+        if (!MessageDigest.isEqual(mac(payload), signature)) {
+            badSignature.incrementAndGet();
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            if (in.readByte() != VERSION) {
+                return null;
+            }
+            byte[] tokenId = new byte[TOKEN_ID_BYTES];
+            in.readFully(tokenId);
+            int userId = in.readInt();
+            long issuedAt = in.readLong();
+            long expiresAt = in.readLong();
+            String username = in.readUTF();
+            String role = in.readUTF();
+            String fullName = in.readUTF();
+
+            long now = System.currentTimeMillis();
+            if (now >= expiresAt) {
+                expired.incrementAndGet();
+                return null;
+            }
+            String id = encoder.encodeToString(tokenId);
+            if (revoked.containsKey(id)) {
+                rejectedRevoked.incrementAndGet();
+                return null;
+            }
+            return new Claims(id, expiresAt, new UserSession(userId, username, role,
+                    fullName.isEmpty() ? null : fullName, issuedAt, now));
+        } catch (IOException e) {
+            // Signed by us but unreadable: only possible across incompatible versions
+            return null;
+        }
+    }
+
+    private static byte[] encode(byte[] tokenId, int userId, String username, String role, String fullName,
+                                 long issuedAt, long expiresAt) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.write(tokenId);
+            out.writeInt(userId);
+            out.writeLong(issuedAt);
+            out.writeLong(expiresAt);
+            out.writeUTF(username);
+            out.writeUTF(role != null ? role : "");
+            out.writeUTF(fullName != null ? fullName : "");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String sign(byte[] payload) {
+        return encoder.encodeToString(payload) + "." + encoder.encodeToString(mac(payload));
+    }
+
+    // Mac isn't thread-safe; a clone of the keyed prototype skips the key setup
+    private static byte[] mac(byte[] payload) {
+        try {
+            return ((Mac) prototype.clone()).doFinal(payload);
+        } catch (CloneNotSupportedException e) {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac.doFinal(payload);
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("Token signing unavailable", ex);
+            }
+        }
+    }
+
+    // Drops expired revocations and picks up the ones written by other servers (or before a restart)
+    private static void syncRevoked() {
+        long now = System.currentTimeMillis();
+        revoked.values().removeIf(expiresAt -> expiresAt <= now);
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM revoked_tokens WHERE expires_at <= ?")) {
+                stmt.setLong(1, now);
+                stmt.executeUpdate();
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT token_id, expires_at FROM revoked_tokens WHERE expires_at > ?")) {
+                stmt.setLong(1, now);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        revoked.merge(rs.getString("token_id"), rs.getLong("expires_at"), Math::max);
+                    }
+                }
+            }
+            revocationSyncs.incrementAndGet();
+        } catch (SQLException e) {
+            revocationFailures.incrementAndGet();
+            System.err.println("⚠️ [AUTH] Could not sync token revocations: " + e.getMessage());
+        }
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("mode", ENABLED ? "token" : "session");
+        if (!ENABLED) {
+            return stats;
+        }
+        stats.put("tokenTtlMinutes", TTL_MS / 60000);
+        stats.put("issued", issued.get());
+        stats.put("renewed", renewed.get());
+        stats.put("accepted", accepted.get());
+        stats.put("badSignature", badSignature.get());
+        stats.put("expired", expired.get());
+        stats.put("rejectedRevoked", rejectedRevoked.get());
+        stats.put("revokedLive", revoked.size());
+        stats.put("revocationSyncs", revocationSyncs.get());
+        stats.put("revocationFailures", revocationFailures.get());
+        stats.put("revocationSyncSeconds", REVOCATION_SYNC_MS / 1000);
+        return stats;
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.offlinedocumenthubserver;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HexFormat;
+import java.util.List;
+
+// Writes table rows as SQL for the database backup.
+// Rows are read from a forward-only, read-only result set with a streaming fetch size, so the driver
+// never holds a whole table in memory, and they are grouped into multi-row INSERTs which are both
+// smaller and much faster to replay than one statement per row. How each column is rendered is
+// decided once per query from the result set metadata.
+public class SqlExporter {
+    // Integer.MIN_VALUE makes MySQL Connector/J stream rows one by one; a positive value needs useCursorFetch=true
+    private static final int FETCH_SIZE = Integer.getInteger("odh.backup.fetchSize", Integer.MIN_VALUE);
+    private static final int ROWS_PER_INSERT = Integer.getInteger("odh.backup.rowsPerInsert", 500);
+    // Keeps each statement well under the server's max_allowed_packet
+    private static final int MAX_STATEMENT_CHARS = Integer.getInteger("odh.backup.maxStatementChars", 1024 * 1024);
+
+    private enum ColumnKind { NUMBER, BOOLEAN, BINARY, TEXT }
+
+    public interface RowListener {
+        void onRow(ResultSet rs) throws SQLException;
+    }
+
+    private final Writer out;
+    private final StringBuilder row = new StringBuilder(256);
+    private long totalRows = 0;
+    private long exportNanos = 0;
+
+    public SqlExporter(Writer out) {
+        this.out = out;
+    }
+
+    // Session settings that make a replay fast; pair with writeFooter()
+    public void writeHeader(String... comments) throws IOException {
+        for (String comment : comments) {
+            comment(comment);
+        }
+        out.write("SET NAMES utf8mb4;\n");
+        out.write("SET @OLD_FOREIGN_KEY_CHECKS = @@FOREIGN_KEY_CHECKS, FOREIGN_KEY_CHECKS = 0;\n");
+        out.write("SET @OLD_UNIQUE_CHECKS = @@UNIQUE_CHECKS, UNIQUE_CHECKS = 0;\n");
+        out.write("SET autocommit = 0;\n\n");
+    }
+
+    public void writeFooter() throws IOException {
+        out.write("\nCOMMIT;\n");
+        out.write("SET UNIQUE_CHECKS = @OLD_UNIQUE_CHECKS;\n");
+        out.write("SET FOREIGN_KEY_CHECKS = @OLD_FOREIGN_KEY_CHECKS;\n");
+    }
+
+    public void comment(String text) throws IOException {
+        out.write("-- ");
+        out.write(text);
+        out.write('\n');
+    }
+
+    public void statement(String sql) throws IOException {
+        out.write(sql);
+        out.write(";\n");
+    }
+
+    // Deletes every row of table whose id isn't in ids (sorted ascending), i.e. the gaps between them.
+    // A single NOT IN (...) over a whole table could outgrow max_allowed_packet; the gap ranges are
+    // split over statements of at most MAX_STATEMENT_CHARS instead.
+    public void deleteOutside(String table, String idColumn, List<Long> ids) throws IOException {
+        if (ids.isEmpty()) {
+            statement("DELETE FROM " + table);
+            return;
+        }
+        String prefix = "DELETE FROM " + table + " WHERE ";
+        StringBuilder delete = new StringBuilder(prefix);
+        delete.append(idColumn).append(" < ").append(ids.get(0)).append(" OR ")
+                .append(idColumn).append(" > ").append(ids.get(ids.size() - 1));
+        for (int i = 1; i < ids.size(); i++) {
+            long low = ids.get(i - 1);
+            long high = ids.get(i);
+            if (high - low <= 1) {
+                continue;
+            }
+            if (delete.length() >= MAX_STATEMENT_CHARS) {
+                statement(delete.toString());
+                delete.setLength(0);
+                delete.append(prefix);
+            } else {
+                delete.append(" OR ");
+            }
+            delete.append('(').append(idColumn).append(" > ").append(low).append(" AND ")
+                    .append(idColumn).append(" < ").append(high).append(')');
+        }
+        statement(delete.toString());
+    }
+
+    public static PreparedStatement streamingStatement(Connection conn, String sql) throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        stmt.setFetchSize(FETCH_SIZE);
+        return stmt;
+    }
+
+    // Runs the query and writes its rows as INSERT INTO table (columns) VALUES (...), (...)...
+    // suffix (e.g. an ON DUPLICATE KEY UPDATE clause) is appended to every statement. The listener sees
+    // each row after it is written. Returns the number of rows.
+    public long export(Connection conn, String table, String columns, String query, long param,
+                       String suffix, RowListener listener) throws SQLException, IOException {
+        long started = System.nanoTime();
+        String prefix = "INSERT INTO " + table + " (" + columns + ") VALUES\n";
+        long rows = 0;
+
+        try (PreparedStatement stmt = streamingStatement(conn, query)) {
+            if (query.indexOf('?') >= 0) {
+                stmt.setLong(1, param);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                int columnCount = meta.getColumnCount();
+                ColumnKind[] kinds = new ColumnKind[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    kinds[i] = kindOf(meta.getColumnType(i + 1));
+                }
+
+                int rowsInStatement = 0;
+                long statementChars = 0;
+                while (rs.next()) {
+                    row.setLength(0);
+                    row.append('(');
+                    for (int i = 1; i <= columnCount; i++) {
+                        if (i > 1) row.append(", ");
+                        appendValue(rs, i, kinds[i - 1]);
+                    }
+                    row.append(')');
+
+                    if (rowsInStatement == 0) {
+                        out.write(prefix);
+                    } else {
+                        out.write(",\n");
+                    }
+                    out.append(row);
+                    rowsInStatement++;
+                    statementChars += row.length();
+
+                    if (rowsInStatement >= ROWS_PER_INSERT || statementChars >= MAX_STATEMENT_CHARS) {
+                        endStatement(suffix);
+                        rowsInStatement = 0;
+                        statementChars = 0;
+                    }
+                    if (listener != null) {
+                        listener.onRow(rs);
+                    }
+                    rows++;
+                }
+                if (rowsInStatement > 0) {
+                    endStatement(suffix);
+                }
+            }
+        }
+
+        totalRows += rows;
+        exportNanos += System.nanoTime() - started;
+        return rows;
+    }
+
+    private void endStatement(String suffix) throws IOException {
+        if (suffix != null) {
+            out.write(suffix);
+        }
+        out.write(";\n");
+    }
+
+    private static ColumnKind kindOf(int sqlType) {
+        return switch (sqlType) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT,
+                 Types.DECIMAL, Types.NUMERIC, Types.FLOAT, Types.REAL, Types.DOUBLE -> ColumnKind.NUMBER;
+            case Types.BIT, Types.BOOLEAN -> ColumnKind.BOOLEAN;
+            case Types.BINARY, Types.VARBINARY, Types.LONGVARBINARY, Types.BLOB -> ColumnKind.BINARY;
+            default -> ColumnKind.TEXT;
+        };
+    }
+
+    private void appendValue(ResultSet rs, int column, ColumnKind kind) throws SQLException {
+        switch (kind) {
+            case NUMBER -> {
+                String value = rs.getString(column);
+                row.append(value == null ? "NULL" : value);
+            }
+            case BOOLEAN -> {
+                boolean value = rs.getBoolean(column);
+                row.append(rs.wasNull() ? "NULL" : value ? "1" : "0");
+            }
+            case BINARY -> {
+                byte[] value = rs.getBytes(column);
+                if (value == null) {
+                    row.append("NULL");
+                } else {
+                    row.append("X'").append(HexFormat.of().formatHex(value)).append('\'');
+                }
+            }
+            default -> {
+                // Dates and timestamps come back as the server's own text, so no time zone conversion happens
+                String value = rs.getString(column);
+                if (value == null) {
+                    row.append("NULL");
+                } else {
+                    row.append('\'');
+                    appendEscaped(value);
+                    row.append('\'');
+                }
+            }
+        }
+    }
+
+    private void appendEscaped(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\'' -> row.append("''");
+                case '\\' -> row.append("\\\\");
+                case '\0' -> row.append("\\0");
+                default -> row.append(c);
+            }
+        }
+    }
+
+    public long getTotalRows() {
+        return totalRows;
+    }
+
+    public long getExportMillis() {
+        return exportNanos / 1_000_000;
+    }
+
+    public long getRowsPerSecond() {
+        return exportNanos == 0 ? 0 : totalRows * 1_000_000_000L / exportNanos;
+    }
+}
@@ -0,0 +1,491 @@
+package com.example.offlinedocumenthubserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Resumable uploads: a client opens a session, sends numbered chunks (in any order, in parallel
+// if it likes), asks which chunks arrived, and finally completes the session into a document.
+// Chunks are written at their offset into one preallocated file under shared_documents/.uploads,
+// so completing a session is a hash pass and a rename, never a concatenation.
+// Sessions live in memory; a background sweeper expires idle ones and removes their files.
+public class UploadSessionManager {
+    public static final Path UPLOAD_DIR = Path.of("shared_documents", ".uploads");
+
+    private static final long MAX_FILE_BYTES = Long.getLong("odh.upload.resumableMaxBytes", 2L * 1024 * 1024 * 1024);
+    private static final int DEFAULT_CHUNK_SIZE = Integer.getInteger("odh.upload.chunkSize", 8 * 1024 * 1024);
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+    private static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+    private static final int MAX_SESSIONS_PER_USER = Integer.getInteger("odh.upload.maxSessionsPerUser", 5);
+    private static final long SESSION_TTL_MS = Long.getLong("odh.upload.sessionTtlMs", 6 * 60 * 60 * 1000L);
+    private static final long SWEEP_INTERVAL_MS = Long.getLong("odh.upload.sweepIntervalMs", 5 * 60 * 1000L);
+
+    private static final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+    // Open sessions per user; a slot is reserved before the session exists so concurrent creates
+    // can't both pass the limit, and released when the session leaves the map
+    private static final ConcurrentHashMap<Integer, Integer> openPerUser = new ConcurrentHashMap<>();
+    private static ScheduledFuture<?> sweeper;
+
+    private static final AtomicLong createdCount = new AtomicLong();
+    private static final AtomicLong completedCount = new AtomicLong();
+    private static final AtomicLong expiredCount = new AtomicLong();
+    private static final AtomicLong abortedCount = new AtomicLong();
+    private static final AtomicLong chunksReceived = new AtomicLong();
+    private static final AtomicLong checksumFailures = new AtomicLong();
+    private static final AtomicLong bytesReceived = new AtomicLong();
+
+    // Raised for anything the client did wrong; the message is safe to return
+    public static class UploadException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        public UploadException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        public int getStatus() { return status; }
+    }
+
+    private enum State { OPEN, COMPLETING, CLOSED }
+
+    public static class UploadSession {
+        private final String id;
+        private final int userId;
+        private final String title;
+        private final String fileName;
+        private final long fileSize;
+        private final int chunkSize;
+        private final int chunkCount;
+        private final Path partPath;
+        private final FileChannel channel;
+        private final BitSet received;
+        // Chunks currently being written; a chunk is never written by two requests at once
+        private final BitSet writing;
+        private final long createdAt;
+        private volatile long lastActivity;
+        private State state = State.OPEN;
+        private int writesInFlight = 0;
+
+        private UploadSession(String id, int userId, String title, String fileName, long fileSize,
+                              int chunkSize, Path partPath, FileChannel channel) {
+            this.id = id;
+            this.userId = userId;
+            this.title = title;
+            this.fileName = fileName;
+            this.fileSize = fileSize;
+            this.chunkSize = chunkSize;
+            this.chunkCount = (int) Math.max(1, (fileSize + chunkSize - 1) / chunkSize);
+            this.partPath = partPath;
+            this.channel = channel;
+            this.received = new BitSet(chunkCount);
+            this.writing = new BitSet(chunkCount);
+            this.createdAt = System.currentTimeMillis();
+            this.lastActivity = createdAt;
+        }
+
+        public String getId() { return id; }
+        public int getUserId() { return userId; }
+        public String getTitle() { return title; }
+        public String getFileName() { return fileName; }
+        public long getFileSize() { return fileSize; }
+        public Path getPartPath() { return partPath; }
+
+        long chunkLength(int index) {
+            long start = (long) index * chunkSize;
+            return Math.min(chunkSize, fileSize - start);
+        }
+
+        public synchronized Map<String, Object> describe() {
+            int receivedChunks = received.cardinality();
+            long receivedBytes = 0;
+            List<Integer> missing = new ArrayList<>();
+            for (int i = 0; i < chunkCount; i++) {
+                if (received.get(i)) {
+                    receivedBytes += chunkLength(i);
+                } else {
+                    missing.add(i);
+                }
+            }
+
+            Map<String, Object> info = new HashMap<>();
+            info.put("uploadId", id);
+            info.put("title", title);
+            info.put("fileName", fileName);
+            info.put("fileSize", fileSize);
+            info.put("chunkSize", chunkSize);
+            info.put("chunkCount", chunkCount);
+            info.put("receivedChunks", receivedChunks);
+            info.put("receivedBytes", receivedBytes);
+            info.put("missingChunks", missing);
+            info.put("complete", receivedChunks == chunkCount);
+            info.put("state", state.name());
+            info.put("createdAt", createdAt);
+            info.put("expiresAt", lastActivity + SESSION_TTL_MS);
+            return info;
+        }
+    }
+
+    public static synchronized void start() {
+        if (sweeper != null) {
+            return;
+        }
+        sweeper = BackgroundExecutors.scheduleWithFixedDelay(BackgroundExecutors.Pool.MAINTENANCE,
+                UploadSessionManager::sweep, 0, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        System.out.println("📦 [UPLOADS] Resumable uploads enabled (chunk=" + DEFAULT_CHUNK_SIZE / 1024 + "KB, ttl=" + SESSION_TTL_MS / 60000 + "min)");
+    }
+
+    public static UploadSession create(int userId, String title, String fileName, long fileSize, Integer requestedChunkSize)
+            throws UploadException, IOException {
+        if (title == null || title.trim().isEmpty() || fileName == null || fileName.trim().isEmpty()) {
+            throw new UploadException(400, "Title and fileName are required");
+        }
+        if (fileSize <= 0) {
+            throw new UploadException(400, "fileSize must be greater than zero");
+        }
+        if (fileSize > MAX_FILE_BYTES) {
+            throw new UploadException(413, "File exceeds the maximum upload size of " + (MAX_FILE_BYTES / (1024 * 1024)) + " MB");
+        }
+        if (!reserveSlot(userId)) {
+            throw new UploadException(429, "Too many unfinished uploads; complete or cancel one first");
+        }
+        try {
+            UploadSession session = open(userId, title, fileName, fileSize, requestedChunkSize);
+            createdCount.incrementAndGet();
+            return session;
+        } catch (IOException | RuntimeException e) {
+            releaseSlot(userId);
+            throw e;
+        }
+    }
+
+    private static UploadSession open(int userId, String title, String fileName, long fileSize, Integer requestedChunkSize)
+            throws IOException {
+        int chunkSize = requestedChunkSize != null ? requestedChunkSize : DEFAULT_CHUNK_SIZE;
+        chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, chunkSize));
+
+        Files.createDirectories(UPLOAD_DIR);
+        String id = UUID.randomUUID().toString().replace("-", "");
+        Path partPath = UPLOAD_DIR.resolve(id + ".part");
+        FileChannel channel = FileChannel.open(partPath, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // Reserve the full length up front so chunks can land at any offset
+            channel.write(ByteBuffer.wrap(new byte[1]), fileSize - 1);
+        } catch (IOException e) {
+            channel.close();
+            Files.deleteIfExists(partPath);
+            throw e;
+        }
+
+        UploadSession session = new UploadSession(id, userId, title.trim(), fileName.trim(), fileSize, chunkSize, partPath, channel);
+        sessions.put(id, session);
+        return session;
+    }
+
+    private static boolean reserveSlot(int userId) {
+        boolean[] reserved = {false};
+        openPerUser.compute(userId, (id, open) -> {
+            int count = open != null ? open : 0;
+            if (count >= MAX_SESSIONS_PER_USER) {
+                return open;
+            }
+            reserved[0] = true;
+            return count + 1;
+        });
+        return reserved[0];
+    }
+
+    // Only the call that actually takes the session out of the map releases its slot
+    private static void remove(UploadSession session) {
+        if (sessions.remove(session.id) != null) {
+            releaseSlot(session.userId);
+        }
+    }
+
+    private static void releaseSlot(int userId) {
+        openPerUser.computeIfPresent(userId, (id, open) -> open > 1 ? open - 1 : null);
+    }
+
+    // Looks up a session owned by the given user
+    public static UploadSession get(String id, int userId) throws UploadException {
+        UploadSession session = id != null ? sessions.get(id) : null;
+        if (session == null || session.userId != userId) {
+            throw new UploadException(404, "Upload session not found or expired");
+        }
+        return session;
+    }
+
+    // Writes one chunk at its offset. expectedSha256 is the hex SHA-256 of the chunk body.
+    public static void writeChunk(UploadSession session, int index, InputStream body, String expectedSha256)
+            throws UploadException, IOException {
+        if (index < 0 || index >= session.chunkCount) {
+            throw new UploadException(400, "Chunk index out of range (0-" + (session.chunkCount - 1) + ")");
+        }
+        if (expectedSha256 == null || expectedSha256.isBlank()) {
+            throw new UploadException(400, "X-Chunk-SHA256 header is required");
+        }
+        boolean alreadyReceived;
+        synchronized (session) {
+            if (session.state != State.OPEN) {
+                throw new UploadException(409, "Upload session is no longer accepting chunks");
+            }
+            if (session.writing.get(index)) {
+                throw new UploadException(409, "Chunk " + index + " is already being uploaded");
+            }
+            alreadyReceived = session.received.get(index);
+            session.writing.set(index);
+            session.writesInFlight++;
+            session.lastActivity = System.currentTimeMillis();
+        }
+
+        boolean ok = false;
+        try {
+            long expectedLength = session.chunkLength(index);
+            long position = (long) index * session.chunkSize;
+            MessageDigest digest = sha256();
+            byte[] buffer = new byte[64 * 1024];
+            long written = 0;
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                if (written + read > expectedLength) {
+                    throw new UploadException(400, "Chunk " + index + " is larger than " + expectedLength + " bytes");
+                }
+                digest.update(buffer, 0, read);
+                // A resent chunk that already arrived is only checked, so a bad retry can't damage good data
+                if (!alreadyReceived) {
+                    ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                    while (data.hasRemaining()) {
+                        position += session.channel.write(data, position);
+                    }
+                }
+                written += read;
+            }
+            if (written != expectedLength) {
+                throw new UploadException(400, "Chunk " + index + " has " + written + " bytes, expected " + expectedLength);
+            }
+            String actual = HexFormat.of().formatHex(digest.digest());
+            if (!actual.equalsIgnoreCase(expectedSha256.trim())) {
+                // Nothing is marked, so the client simply sends the chunk again
+                checksumFailures.incrementAndGet();
+                throw new UploadException(422, "Checksum mismatch for chunk " + index);
+            }
+            if (!alreadyReceived) {
+                chunksReceived.incrementAndGet();
+                bytesReceived.addAndGet(written);
+            }
+            ok = true;
+        } finally {
+            synchronized (session) {
+                session.writing.clear(index);
+                session.writesInFlight--;
+                if (ok) {
+                    session.received.set(index);
+                }
+                session.lastActivity = System.currentTimeMillis();
+                session.notifyAll();
+            }
+        }
+    }
+
+    // Stops accepting chunks and hashes the assembled file. If that fails the session is open again.
+    // On success the part file is closed; the caller moves it into place and must call finish(), or
+    // abort() if that fails, since a session past this point can't be continued.
+    public static String beginComplete(UploadSession session, String expectedSha256) throws UploadException, IOException {
+        synchronized (session) {
+            if (session.state != State.OPEN) {
+                throw new UploadException(409, "Upload session is already being completed");
+            }
+            if (session.received.cardinality() != session.chunkCount) {
+                throw new UploadException(409, "Upload is missing " + (session.chunkCount - session.received.cardinality()) + " chunk(s)");
+            }
+            session.state = State.COMPLETING;
+            // A resent chunk may still be in flight; let it finish
+            while (session.writesInFlight > 0) {
+                try {
+                    session.wait(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    session.state = State.OPEN;
+                    throw new IOException("Interrupted while completing upload");
+                }
+            }
+        }
+
+        try {
+            session.channel.force(false);
+            MessageDigest digest = sha256();
+            ByteBuffer buffer = ByteBuffer.allocate(256 * 1024);
+            long position = 0;
+            while (position < session.fileSize) {
+                buffer.clear();
+                int read = session.channel.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                buffer.flip();
+                digest.update(buffer);
+                position += read;
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            if (expectedSha256 != null && !expectedSha256.isBlank() && !hash.equalsIgnoreCase(expectedSha256.trim())) {
+                checksumFailures.incrementAndGet();
+                // Every chunk passed its own check, so there is no telling which one is wrong. Resent
+                // chunks that are marked received are only checked, never rewritten, so unmark them all.
+                synchronized (session) {
+                    session.received.clear();
+                }
+                throw new UploadException(422, "Checksum mismatch for the assembled file; send all chunks again");
+            }
+            session.channel.close();
+            return hash;
+        } catch (UploadException | IOException e) {
+            reopen(session);
+            throw e;
+        }
+    }
+
+    // Puts a session back into the accepting state after a failed completion
+    private static void reopen(UploadSession session) {
+        synchronized (session) {
+            if (session.state == State.COMPLETING && session.channel.isOpen()) {
+                session.state = State.OPEN;
+                session.lastActivity = System.currentTimeMillis();
+            } else if (session.state == State.COMPLETING) {
+                // The channel is gone, so the session can't continue
+                discard(session);
+                abortedCount.incrementAndGet();
+            }
+        }
+    }
+
+    public static void finish(UploadSession session) {
+        synchronized (session) {
+            session.state = State.CLOSED;
+        }
+        remove(session);
+        completedCount.incrementAndGet();
+    }
+
+    public static void abort(UploadSession session) {
+        discard(session);
+        abortedCount.incrementAndGet();
+    }
+
+    private static void discard(UploadSession session) {
+        synchronized (session) {
+            session.state = State.CLOSED;
+        }
+        remove(session);
+        try {
+            session.channel.close();
+        } catch (IOException ignored) {
+        }
+        try {
+            Files.deleteIfExists(session.partPath);
+        } catch (IOException e) {
+            System.err.println("❌ [UPLOADS] Could not delete " + session.partPath + ": " + e.getMessage());
+        }
+    }
+
+    private static void sweep() {
+        try {
+            long now = System.currentTimeMillis();
+            for (UploadSession session : sessions.values()) {
+                boolean idle;
+                synchronized (session) {
+                    idle = session.state == State.OPEN && session.writesInFlight == 0
+                            && now - session.lastActivity > SESSION_TTL_MS;
+                }
+                if (idle) {
+                    discard(session);
+                    expiredCount.incrementAndGet();
+                    System.out.println("🧹 [UPLOADS] Expired upload " + session.id + " (" + session.fileName + ")");
+                }
+            }
+
+            // Part files with no session behind them (server restarted, or single-request uploads that crashed)
+            removeOrphans(UPLOAD_DIR.toFile(), "", now);
+            removeOrphans(new File("shared_documents"), ".upload_", now);
+        } catch (Exception e) {
+            System.err.println("❌ [UPLOADS] Sweep failed: " + e.getMessage());
+        }
+    }
+
+    private static void removeOrphans(File dir, String prefix, long now) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(prefix) && name.endsWith(".part"));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String id = file.getName().substring(0, file.getName().length() - ".part".length());
+            if (!file.isFile() || sessions.containsKey(id) || now - file.lastModified() < SESSION_TTL_MS) {
+                continue;
+            }
+            if (file.delete()) {
+                System.out.println("🧹 [UPLOADS] Removed stale partial upload " + file.getPath());
+            }
+        }
+    }
+
+    public static void shutdown() {
+        synchronized (UploadSessionManager.class) {
+            if (sweeper != null) {
+                sweeper.cancel(false);
+                sweeper = null;
+            }
+        }
+        // Part files stay on disk; the sweeper cleans them up after the TTL on the next run
+        for (UploadSession session : sessions.values()) {
+            try {
+                session.channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public static Map<String, Object> getStats() {
+        long pendingBytes = 0;
+        for (UploadSession session : sessions.values()) {
+            pendingBytes += session.fileSize;
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("openSessions", sessions.size());
+        stats.put("pendingBytes", pendingBytes);
+        stats.put("created", createdCount.get());
+        stats.put("completed", completedCount.get());
+        stats.put("expired", expiredCount.get());
+        stats.put("aborted", abortedCount.get());
+        stats.put("chunksReceived", chunksReceived.get());
+        stats.put("bytesReceived", bytesReceived.get());
+        stats.put("checksumFailures", checksumFailures.get());
+        return stats;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.offlinedocumenthubserver;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// A logged-in user, as seen by the request handlers. Identity fields never change; only the
+// last-access time moves, and it is shared by every request thread using the same token.
+class UserSession {
+    // Touches closer together than this don't write the timestamp again; the expiry check is
+    // measured in minutes, so this only saves every request from bouncing the same cache line
+    private static final long TOUCH_GRANULARITY_MS = 1000;
+
+    final int userId;
+    final String username;
+    final String role;
+    final String fullName;
+    final long createdAt;
+    private final AtomicLong lastAccessed;
+
+    UserSession(int userId, String username, String role, String fullName) {
+        this(userId, username, role, fullName, System.currentTimeMillis(), System.currentTimeMillis());
+    }
+
+    UserSession(int userId, String username, String role, String fullName, long createdAt, long lastAccessed) {
+        this.userId = userId;
+        this.username = username;
+        this.role = role;
+        this.fullName = fullName;
+        this.createdAt = createdAt;
+        this.lastAccessed = new AtomicLong(lastAccessed);
+    }
+
+    long lastAccessed() {
+        return lastAccessed.get();
+    }
+
+    // True when this call moved the timestamp
+    boolean touch(long now) {
+        long last = lastAccessed.get();
+        // One attempt is enough: if it fails, another request just stored an equally fresh time
+        return now - last >= TOUCH_GRANULARITY_MS && lastAccessed.compareAndSet(last, now);
+    }
+
+    boolean isExpired(long now, long timeoutMs) {
+        return now - lastAccessed.get() > timeoutMs;
+    }
+}
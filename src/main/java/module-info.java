@@ -5,6 +5,8 @@ module com.example.offlinedocumenthubserver {
     requires com.fasterxml.jackson.databind;
     requires com.fasterxml.jackson.datatype.jsr310;
     requires io.javalin;
+    requires org.eclipse.jetty.server;
+    requires java.management;
     requires com.google.api.client.auth;
     requires com.google.api.client.extensions.java6.auth;
     requires google.api.client;